@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Color conversions using the scalar against the vector kernels, every scaled image gets converted from premultiplied
+ * into non-premultiplied pixels for the encoders. The vector kernels are only available when running on java 16+ (see
+ * "vectorJdkHome" inside the build-script), otherwise their setup fails.
+ *
+ * @author Danny Althoff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ColorConversionBenchmark {
+
+    @Param({"SCALAR", "VECTOR"})
+    public PixelKernelMode pixelKernels;
+
+    @Param({"1024"})
+    public int size;
+
+    private Resampler resampler;
+    private int[] pixels;
+
+    @Setup
+    public void prepare() {
+        resampler = new Resampler(pixelKernels);
+        pixels = PixelImage.takeOver(SyntheticImages.create(size, size), resampler).getPixels();
+    }
+
+    @Benchmark
+    public int[] convert() {
+        resampler.unpremultiply(pixels);
+        resampler.premultiply(pixels);
+        return pixels;
+    }
+}
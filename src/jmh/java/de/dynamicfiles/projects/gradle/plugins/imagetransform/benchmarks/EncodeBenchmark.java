@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodecRegistry;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of a scaled image into every supported target format, without touching the disk.
+ *
+ * @author Danny Althoff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EncodeBenchmark {
+
+    @Param({"PNG", "ICO", "BMP", "ICNS", "JPEG", "GIF", "TIFF"})
+    public String format;
+
+    // ICNS only supports some sizes when written by commons-imaging
+    @Param({"128"})
+    public int size;
+
+    private ImageFormat imageFormat;
+    private BufferedImage scaledImage;
+    private ImageCodec writer;
+
+    @Setup
+    public void prepare() throws IOException {
+        imageFormat = ImageFormats.valueOf(format);
+        scaledImage = SyntheticImages.create(size, size);
+        writer = new ImageCodecRegistry().getWriter(imageFormat);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.write(scaledImage, imageFormat, outputStream);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling using the scalar against the vector kernels for typical icon downscales. The vector kernels are only
+ * available when running on java 16+ (see "vectorJdkHome" inside the build-script), otherwise their setup fails.
+ *
+ * @author Danny Althoff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PixelKernelsBenchmark {
+
+    @Param({"SCALAR", "VECTOR"})
+    public PixelKernelMode pixelKernels;
+
+    @Param({"BILINEAR", "LANCZOS3"})
+    public ScalingFilter scalingFilter;
+
+    @Param({"1024"})
+    public int sourceSize;
+
+    @Param({"256", "64", "16"})
+    public int targetSize;
+
+    private Resampler resampler;
+    private PixelImage sourceImage;
+
+    @Setup
+    public void prepare() {
+        resampler = new Resampler(pixelKernels);
+        sourceImage = PixelImage.takeOver(SyntheticImages.create(sourceSize, sourceSize), resampler);
+    }
+
+    @Benchmark
+    public PixelImage scale() {
+        PixelImage scaledImage = resampler.resample(sourceImage, targetSize, targetSize, scalingFilter);
+        scaledImage.release();
+        return scaledImage;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngEncoder;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngFilterStrategy;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding with the own PNG-encoder using different settings, compare with the PNG-results of
+ * {@link EncodeBenchmark}.
+ *
+ * @author Danny Althoff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PngEncodeBenchmark {
+
+    @Param({"1", "6", "9"})
+    public int compressionLevel;
+
+    @Param({"NONE", "ADAPTIVE"})
+    public PngFilterStrategy filterStrategy;
+
+    @Param({"128", "2048"})
+    public int size;
+
+    private BufferedImage scaledImage;
+    private PngEncoder pngEncoder;
+
+    @Setup
+    public void prepare() {
+        scaledImage = SyntheticImages.create(size, size);
+        pngEncoder = new PngEncoder(compressionLevel, filterStrategy, true);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        pngEncoder.encode(scaledImage, outputStream);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of an already decoded image with every available filter and different downscaling ratios.
+ *
+ * @author Danny Althoff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ScalingBenchmark {
+
+    @Param({"PROGRESSIVE_BILINEAR", "BILINEAR", "BICUBIC", "LANCZOS3", "AREA_AVERAGE"})
+    public ScalingFilter scalingFilter;
+
+    @Param({"1024"})
+    public int sourceSize;
+
+    // source size divided by target size
+    @Param({"2", "8", "32"})
+    public int ratio;
+
+    private Resampler resampler;
+    private PixelImage sourceImage;
+
+    @Setup
+    public void prepare() {
+        resampler = new Resampler(PixelKernelMode.SCALAR);
+        sourceImage = PixelImage.takeOver(SyntheticImages.create(sourceSize, sourceSize), resampler);
+    }
+
+    @Benchmark
+    public PixelImage scale() {
+        PixelImage scaledImage = resampler.resample(sourceImage, sourceSize / ratio, sourceSize / ratio, scalingFilter);
+        // give buffers back like the task does, otherwise every invocation would allocate new ones
+        scaledImage.release();
+        return scaledImage;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodecRegistry;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Generates reproducible images for the benchmarks, so no image files have to be downloaded or checked in.
+ *
+ * @author Danny Althoff
+ */
+public final class SyntheticImages {
+
+    private SyntheticImages() {
+        // utility class
+    }
+
+    /**
+     * Creates an image with gradients, some shapes and noise, which is more realistic for encoders and filters than
+     * a single colored image.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     *
+     * @return new image having an alpha-channel
+     */
+    public static BufferedImage create(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        try{
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setPaint(new GradientPaint(0, 0, new Color(200, 40, 40), width, height, new Color(20, 60, 220, 160)));
+            graphics.fillRect(0, 0, width, height);
+            Random random = new Random(42);
+            for( int shape = 0; shape < 32; shape++ ){
+                graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 64 + random.nextInt(192)));
+                graphics.fillOval(random.nextInt(width), random.nextInt(height), 1 + random.nextInt(Math.max(1, width / 3)), 1 + random.nextInt(Math.max(1, height / 3)));
+            }
+            // some noise to avoid unrealistic compression ratios
+            for( int pixel = 0; pixel < width * height / 16; pixel++ ){
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                image.setRGB(x, y, image.getRGB(x, y) ^ (random.nextInt() & 0x000F0F0F));
+            }
+        } finally{
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Writes a synthetic image into a temporary file, which gets deleted when the JVM exits.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     * @param format format of the written file
+     *
+     * @return the written file
+     *
+     * @throws IOException when the file could not be written
+     */
+    public static File createFile(int width, int height, ImageFormat format) throws IOException {
+        File imageFile = File.createTempFile("imagetransform-benchmark-", "." + format.getExtension().toLowerCase());
+        imageFile.deleteOnExit();
+        try(OutputStream outputStream = new FileOutputStream(imageFile)){
+            new ImageCodecRegistry().getWriter(format).write(create(width, height), format, outputStream);
+        }
+        return imageFile;
+    }
+}
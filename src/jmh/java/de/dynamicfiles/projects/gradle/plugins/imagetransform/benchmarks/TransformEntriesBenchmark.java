@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.benchmarks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.ImageTransformGradlePluginExtension;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.ImageFormats;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving and validating the configured entries (existence, format detection, resolutions and destination names),
+ * which happens for every build before any image gets transformed.
+ *
+ * @author Danny Althoff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TransformEntriesBenchmark {
+
+    private static final String[] RESOLUTIONS = {"16x16", "24x24", "32x32", "48x48", "64x64", "128x128", "256x256", "512x512", "1024x1024", "2048x2048"};
+
+    @Param({"1000", "5000"})
+    public int entryCount;
+
+    private Project project;
+    private ImageTransformGradlePluginExtension extension;
+
+    @Setup
+    public void prepare() throws IOException {
+        File projectDir = Files.createTempDirectory("imagetransform-benchmark-").toFile();
+        projectDir.deleteOnExit();
+        project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+
+        // every source gets requested in all resolutions
+        int sourceCount = Math.max(1, entryCount / RESOLUTIONS.length);
+        File[] sourceFiles = new File[sourceCount];
+        for( int sourceIndex = 0; sourceIndex < sourceCount; sourceIndex++ ){
+            sourceFiles[sourceIndex] = SyntheticImages.createFile(32, 32, ImageFormats.PNG);
+        }
+
+        extension = new ImageTransformGradlePluginExtension();
+        List<ImageTransformEntry> transformEntries = extension.getTransformEntries();
+        for( int entryIndex = 0; entryIndex < entryCount; entryIndex++ ){
+            ImageTransformEntry transformEntry = new ImageTransformEntry();
+            transformEntry.source = sourceFiles[entryIndex % sourceCount].getAbsolutePath();
+            transformEntry.resolution = RESOLUTIONS[entryIndex / sourceCount % RESOLUTIONS.length];
+            transformEntry.destination = "build/benchmark/*";
+            transformEntry.appendResolution = true;
+            transformEntry.format = ImageFormats.PNG;
+            transformEntries.add(transformEntry);
+        }
+    }
+
+    @Benchmark
+    public List<ImageTransformEntry> processTransformEntries() {
+        // invalidates the already processed entries
+        extension.getTransformEntries();
+        return extension.getProcessedTransformEntries(project);
+    }
+}
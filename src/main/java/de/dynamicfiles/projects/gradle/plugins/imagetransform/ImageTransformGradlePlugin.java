@@ -15,15 +15,11 @@
  */
 package de.dynamicfiles.projects.gradle.plugins.imagetransform;
 
-import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
 import de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks.TransformTask;
-import java.io.File;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks.TransformWatchTask;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import org.gradle.api.DefaultTask;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 
@@ -43,21 +39,15 @@ public class ImageTransformGradlePlugin implements Plugin<Project> {
 
         transformTask.setDescription("Convert images into different formats");
 
+        TransformWatchTask transformWatchTask = project.getTasks().replace("watchTransformImages", TransformWatchTask.class);
+        transformWatchTask.setDescription("Convert images again whenever their sources are changed, until cancelled");
+        transformWatchTask.setTransformTask(transformTask);
+
         // as this plugin was requested for the javafx-gradle-plugin, we do auto-plumbing here ;)
         project.afterEvaluate(evaluatedProject -> {
             // get current configuration
             ImageTransformGradlePluginExtension ext = project.getExtensions().getByType(ImageTransformGradlePluginExtension.class);
 
-            // set global registered entries as output-files
-            List<ImageTransformEntry> globalTransformEntries = ext.getProcessedTransformEntries(evaluatedProject);
-            evaluatedProject.getLogger().info(String.format("Found %s global entries", globalTransformEntries.size()));
-            registerTransformEntryOutputs(evaluatedProject, transformTask, globalTransformEntries);
-
-            // set task specific registered entries as output-files
-            List<ImageTransformEntry> taskTransformEntries = transformTask.getTaskSpecificExt().getProcessedTransformEntries(evaluatedProject);
-            evaluatedProject.getLogger().info(String.format("Found %s task entries", taskTransformEntries.size()));
-            registerTransformEntryOutputs(evaluatedProject, transformTask, taskTransformEntries);
-
             // but only when wanted, it's possible to opt-out this feature
             if( !ext.isNoAutoBinding() ){
                 Optional.ofNullable(evaluatedProject.getTasks().findByName("jfxNative")).ifPresent(jfxNativeTask -> {
@@ -87,19 +77,4 @@ public class ImageTransformGradlePlugin implements Plugin<Project> {
         });
     }
 
-    private void registerTransformEntryOutputs(Project project, DefaultTask task, List<ImageTransformEntry> transformEntries) {
-        if( transformEntries == null || transformEntries.isEmpty() ){
-            return;
-        }
-        // register all generated files as task-output for "up-to-date"-checking
-        task.getOutputs().upToDateWhen(upToDateTask -> {
-            List<File> possibleDestinationFiles = transformEntries.stream().parallel().map(transformEntry -> {
-                return new File(transformEntry.destination);
-            }).collect(Collectors.toList());
-            long existingDestinationFilesCount = possibleDestinationFiles.stream().parallel().filter(File::exists).count();
-            // if existing files are equal to possible files, this task is up2date
-            return possibleDestinationFiles.size() == existingDestinationFilesCount;
-        });
-    }
-
 }
@@ -15,18 +15,20 @@
  */
 package de.dynamicfiles.projects.gradle.plugins.imagetransform;
 
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageFormatSniffer;
 import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
 import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageFormatRequest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.Resolution;
 import groovy.lang.Closure;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.commons.imaging.ImageFormat;
-import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.Imaging;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.api.file.FileCollection;
@@ -38,8 +40,18 @@ import org.gradle.api.file.FileCollection;
 public class ImageTransformGradlePluginExtension {
 
     private List<ImageTransformEntry> transformEntries = new ArrayList<>();
+    // file collections are resolved when entries are needed, not while the build script gets evaluated
+    private List<PendingFileCollectionSource> pendingFileCollectionSources = new ArrayList<>();
+    // kept for picking up files added afterwards
+    private List<PendingFileCollectionSource> resolvedFileCollectionSources = new ArrayList<>();
+    // resolving entries checks all source files, so only do this once
+    private List<ImageTransformEntry> processedTransformEntries = null;
 
     public void from(String singleSourcePath, Closure closure) {
+        addTransformEntries(createTransformEntries(singleSourcePath, closure));
+    }
+
+    private List<ImageTransformEntry> createTransformEntries(String singleSourcePath, Closure closure) {
         if( singleSourcePath.contains("*") ){
             // NOPE, has to be done via files("something/*.ext")
             throw new GradleException("You transformImages-configuration is faulty! Please make sure to specify multiple source-files via \"fileTree('someFolder').include('*.ext')\".");
@@ -54,29 +66,110 @@ public class ImageTransformGradlePluginExtension {
         closure.setResolveStrategy(Closure.DELEGATE_FIRST);
         closure.call();
 
-        transformEntries.addAll(imageFormatTarget.getTransformEntries());
+        return imageFormatTarget.getTransformEntries();
     }
 
     public void from(File singleFileSources, Closure closure) {
         from(singleFileSources.getAbsolutePath(), closure);
     }
 
-    public void from(FileCollection multipleSources, Closure closure) {
-        Set<File> files = multipleSources.getFiles();
-        if( files.isEmpty() ){
+    public synchronized void from(FileCollection multipleSources, Closure closure) {
+        pendingFileCollectionSources.add(new PendingFileCollectionSource(multipleSources, closure, transformEntries.size()));
+        processedTransformEntries = null;
+    }
+
+    public synchronized List<ImageTransformEntry> getTransformEntries() {
+        resolvePendingFileCollectionSources();
+        // might get modified from outside
+        processedTransformEntries = null;
+        return transformEntries;
+    }
+
+    private synchronized void addTransformEntries(List<ImageTransformEntry> newTransformEntries) {
+        transformEntries.addAll(newTransformEntries);
+        processedTransformEntries = null;
+    }
+
+    private synchronized void resolvePendingFileCollectionSources() {
+        if( pendingFileCollectionSources.isEmpty() ){
             return;
         }
-
-        files.forEach(file -> {
-            from(file.getAbsolutePath(), closure);
+        List<PendingFileCollectionSource> fileCollectionSources = new ArrayList<>(pendingFileCollectionSources);
+        pendingFileCollectionSources.clear();
+        // keep configured order, inserting from the back does not move positions of the other pending sources
+        Collections.reverse(fileCollectionSources);
+        fileCollectionSources.forEach(fileCollectionSource -> {
+            fileCollectionSource.sources.getFiles().forEach(file -> {
+                fileCollectionSource.resolvedFiles.add(file.getAbsoluteFile());
+                fileCollectionSource.resolvedTransformEntries.addAll(createTransformEntries(file.getAbsolutePath(), fileCollectionSource.closure));
+            });
+            transformEntries.addAll(fileCollectionSource.insertPosition, fileCollectionSource.resolvedTransformEntries);
         });
+        Collections.reverse(fileCollectionSources);
+        resolvedFileCollectionSources.addAll(fileCollectionSources);
+        processedTransformEntries = null;
     }
 
-    public List<ImageTransformEntry> getTransformEntries() {
-        return transformEntries;
+    /**
+     * Checks all sources again, used when sources got added or removed while the build is running (like when
+     * watching the sources). Files added to already resolved file collections are getting their entries, placed
+     * after the other entries of the same file collection.
+     *
+     * @return true when new files of file collections were found
+     */
+    public synchronized boolean refreshSources() {
+        resolvePendingFileCollectionSources();
+        boolean foundNewFiles = false;
+        for( PendingFileCollectionSource fileCollectionSource : resolvedFileCollectionSources ){
+            List<ImageTransformEntry> newTransformEntries = new ArrayList<>();
+            fileCollectionSource.sources.getFiles().stream()
+                    .map(File::getAbsoluteFile)
+                    .filter(fileCollectionSource.resolvedFiles::add)
+                    .forEach(file -> newTransformEntries.addAll(createTransformEntries(file.getAbsolutePath(), fileCollectionSource.closure)));
+            if( newTransformEntries.isEmpty() ){
+                continue;
+            }
+            foundNewFiles = true;
+            transformEntries.addAll(getInsertPosition(fileCollectionSource), newTransformEntries);
+            fileCollectionSource.resolvedTransformEntries.addAll(newTransformEntries);
+        }
+        // sources of single entries might exist now (or not anymore)
+        processedTransformEntries = null;
+        return foundNewFiles;
+    }
+
+    /**
+     * The entries might got modified from outside, so the position is searched by the last remaining entry.
+     */
+    private int getInsertPosition(PendingFileCollectionSource fileCollectionSource) {
+        for( int index = fileCollectionSource.resolvedTransformEntries.size() - 1; index >= 0; index-- ){
+            int position = transformEntries.indexOf(fileCollectionSource.resolvedTransformEntries.get(index));
+            if( position >= 0 ){
+                return position + 1;
+            }
+        }
+        return Math.min(fileCollectionSource.insertPosition, transformEntries.size());
     }
 
-    public List<ImageTransformEntry> getProcessedTransformEntries(Project project) {
+    /**
+     * Resolves all configured entries to existing source files with known image format and valid resolution, and
+     * sets up the final destination filenames. The result gets remembered until the configuration changes, so
+     * calling this multiple times (e.g. for task inputs, task outputs and the task action) does not check all source
+     * files again.
+     *
+     * @param project the project all relative paths are resolved against
+     *
+     * @return all valid entries
+     */
+    public synchronized List<ImageTransformEntry> getProcessedTransformEntries(Project project) {
+        resolvePendingFileCollectionSources();
+        if( processedTransformEntries == null ){
+            processedTransformEntries = Collections.unmodifiableList(processTransformEntries(project));
+        }
+        return processedTransformEntries;
+    }
+
+    private List<ImageTransformEntry> processTransformEntries(Project project) {
         return transformEntries.stream().parallel()
                 .map(transformEntry -> {
                     return transformEntry.getCopy();
@@ -87,7 +180,8 @@ public class ImageTransformGradlePluginExtension {
                         sourceFile = new File(project.getProjectDir(), transformEntry.source);
                     }
                     if( sourceFile.exists() ){
-                        transformEntry.source = sourceFile.getAbsolutePath();
+                        // gradle reports changed inputs normalized, paths like "../shared/icon.png" have to match these
+                        transformEntry.source = sourceFile.toPath().toAbsolutePath().normalize().toString();
                         return transformEntry;
                     }
                     project.getLogger().warn("Input file for transformation does not exist: " + sourceFile.getAbsolutePath());
@@ -98,11 +192,13 @@ public class ImageTransformGradlePluginExtension {
                 .filter(existingTransformEntry -> {
                     File sourceFile = new File(existingTransformEntry.source);
                     try{
-                        ImageFormat guessedFormat = Imaging.guessFormat(sourceFile);
+                        // every source is checked only once, even when having multiple entries
+                        ImageFormat guessedFormat = ImageFormatSniffer.guessFormat(sourceFile);
                         if( guessedFormat != org.apache.commons.imaging.ImageFormats.UNKNOWN ){
+                            existingTransformEntry.sourceFormat = guessedFormat;
                             return true;
                         }
-                    } catch(ImageReadException | IOException ex){
+                    } catch(IOException ex){
                         project.getLogger().warn(null, ex);
                     }
                     project.getLogger().warn("Could not determine file-format from: " + sourceFile.getAbsolutePath());
@@ -114,30 +210,17 @@ public class ImageTransformGradlePluginExtension {
                     if( existingTransformEntry.resolution == null || existingTransformEntry.resolution.trim().isEmpty() ){
                         return false;
                     }
-                    // check if "x" is somewhere
-                    String[] splitResolution = existingTransformEntry.resolution.split("x");
-
-                    // NOTE: split makes it possible to remove dangling empty entry like this:
-                    // "64x64x" -> it results in ["64","64"] instead of ["64","64",""])
-                    if( splitResolution.length != 2 ){
-                        project.getLogger().warn("Found invalid resolution: " + existingTransformEntry.resolution);
-                        return false;
-                    }
-                    String leftPart = splitResolution[0].trim();
-                    String rightPart = splitResolution[1].trim();
-                    // contains at least two parts, but at least one might be empty
-                    if( leftPart.isEmpty() || rightPart.isEmpty() ){
-                        project.getLogger().warn("Found invalid resolution: " + existingTransformEntry.resolution);
-                        return false;
-                    }
-                    // only valid if both parts are numbers only
-                    boolean bothPartsContainingNumbersOnly = leftPart.replaceAll("[0-9]+", "").isEmpty() && rightPart.replaceAll("[0-9]+", "").isEmpty();
-                    if( bothPartsContainingNumbersOnly == false ){
-                        project.getLogger().warn("Found invalid resolution: " + existingTransformEntry.resolution);
-                    } else {
-                        project.getLogger().info("Found valid resolution: " + leftPart + "x" + rightPart);
+                    // entries created outside of the DSL are not parsed yet
+                    if( existingTransformEntry.parsedResolution == null ){
+                        try{
+                            existingTransformEntry.parsedResolution = Resolution.parse(existingTransformEntry.resolution);
+                        } catch(IllegalArgumentException ex){
+                            project.getLogger().warn("Found invalid resolution: " + existingTransformEntry.resolution);
+                            return false;
+                        }
                     }
-                    return bothPartsContainingNumbersOnly;
+                    project.getLogger().info("Found valid resolution: " + existingTransformEntry.parsedResolution);
+                    return true;
                 })
                 .map(validTransformEntry -> {
                     // set up the destination filename
@@ -152,14 +235,14 @@ public class ImageTransformGradlePluginExtension {
                         if( lastIndexOfDot < 0 ){
                             // no dot inside source filename
                             if( validTransformEntry.appendResolution ){
-                                validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(sourceFileName + resolutionFilenameDelimiter + validTransformEntry.resolution).toFile().getAbsolutePath();
+                                validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(sourceFileName + resolutionFilenameDelimiter + validTransformEntry.parsedResolution.toFilenameToken()).toFile().getAbsolutePath();
                             } else {
                                 validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(sourceFileName).toFile().getAbsolutePath();
                             }
                         } else {
                             String sourceFileNameFirstPart = sourceFileName.substring(0, lastIndexOfDot);
                             if( validTransformEntry.appendResolution ){
-                                validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(sourceFileNameFirstPart + resolutionFilenameDelimiter + validTransformEntry.resolution + "." + validTransformEntry.format.getExtension().toLowerCase()).toFile().getAbsolutePath();
+                                validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(sourceFileNameFirstPart + resolutionFilenameDelimiter + validTransformEntry.parsedResolution.toFilenameToken() + "." + validTransformEntry.format.getExtension().toLowerCase()).toFile().getAbsolutePath();
                             } else {
                                 validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(sourceFileNameFirstPart + "." + validTransformEntry.format.getExtension().toLowerCase()).toFile().getAbsolutePath();
                             }
@@ -170,7 +253,7 @@ public class ImageTransformGradlePluginExtension {
                             String destinationFileName = destinationFile.getName();
                             int lastIndexOfDot = destinationFileName.lastIndexOf('.');
                             String destinationFileNameFirstPart = destinationFileName.substring(0, lastIndexOfDot);
-                            validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(destinationFileNameFirstPart + resolutionFilenameDelimiter + validTransformEntry.resolution + "." + validTransformEntry.format.getExtension().toLowerCase()).toFile().getAbsolutePath();
+                            validTransformEntry.destination = destinationFile.getParentFile().toPath().resolve(destinationFileNameFirstPart + resolutionFilenameDelimiter + validTransformEntry.parsedResolution.toFilenameToken() + "." + validTransformEntry.format.getExtension().toLowerCase()).toFile().getAbsolutePath();
                         }
                     }
                     return validTransformEntry;
@@ -205,16 +288,33 @@ public class ImageTransformGradlePluginExtension {
         return appendResolution;
     }
 
-    public void setAppendResolution(boolean appendResolution) {
+    public synchronized void setAppendResolution(boolean appendResolution) {
         this.appendResolution = appendResolution;
+        processedTransformEntries = null;
     }
 
     public String getResolutionFilenameDelimiter() {
         return resolutionFilenameDelimiter;
     }
 
-    public void setResolutionFilenameDelimiter(String resolutionFilenameDelimiter) {
+    public synchronized void setResolutionFilenameDelimiter(String resolutionFilenameDelimiter) {
         this.resolutionFilenameDelimiter = resolutionFilenameDelimiter;
+        processedTransformEntries = null;
+    }
+
+    private static class PendingFileCollectionSource {
+
+        private final FileCollection sources;
+        private final Closure closure;
+        private final int insertPosition;
+        private final Set<File> resolvedFiles = new LinkedHashSet<>();
+        private final List<ImageTransformEntry> resolvedTransformEntries = new ArrayList<>();
+
+        PendingFileCollectionSource(FileCollection sources, Closure closure, int insertPosition) {
+            this.sources = sources;
+            this.closure = closure;
+            this.insertPosition = insertPosition;
+        }
     }
 
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.cache;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps decoded source images of the last builds, so transforming the same unchanged sources again (like on every
+ * build having other changed sources) skips decoding them. The least recently used images are evicted first, all
+ * images are only softly referenced.
+ *
+ * Cached images are shared, they must neither be modified nor released into the pixel-buffer pool.
+ *
+ * @author Danny Althoff
+ */
+public final class DecodedImageCache {
+
+    // access-ordered, the first entry is the least recently used one
+    private static final Map<String, CachedImage> CACHED_IMAGES = new LinkedHashMap<>(16, 0.75f, true);
+    private static final List<Configuration> RUNNING_CONFIGURATIONS = new ArrayList<>();
+    private static long cachedBytes = 0;
+    private static long maxCachedBytes = Runtime.getRuntime().maxMemory() / 8;
+
+    private DecodedImageCache() {
+        // utility class
+    }
+
+    /**
+     * The cache is shared by all tasks inside the same JVM. While tasks are running, it is bounded by the biggest size
+     * any of them configured, so a task disabling the cache does not disable it for the tasks running in parallel. The
+     * configuration of the last running task stays until the next task starts.
+     *
+     * @param maxCachedBytes maximum size of all cached images, 0 disables caching
+     *
+     * @return configuration of the calling task, has to be closed when the task is done
+     */
+    public static synchronized Configuration configure(long maxCachedBytes) {
+        Configuration configuration = new Configuration(maxCachedBytes);
+        RUNNING_CONFIGURATIONS.add(configuration);
+        applyRunningConfigurations();
+        return configuration;
+    }
+
+    private static synchronized void finish(Configuration configuration) {
+        if( RUNNING_CONFIGURATIONS.remove(configuration) ){
+            applyRunningConfigurations();
+        }
+    }
+
+    private static void applyRunningConfigurations() {
+        if( RUNNING_CONFIGURATIONS.isEmpty() ){
+            return;
+        }
+        maxCachedBytes = RUNNING_CONFIGURATIONS.stream().mapToLong(configuration -> configuration.maxCachedBytes).max().getAsLong();
+        evictUntilFitting(maxCachedBytes);
+    }
+
+    public static synchronized long getMaxCachedBytes() {
+        return maxCachedBytes;
+    }
+
+    /**
+     * Sources are identified by path, last modification and size. As large sources are decoded subsampled, the
+     * requested decode-size is part of the key too.
+     *
+     * @param sourceFile the source image
+     * @param requiredWidth requested minimum width of the decoded image
+     * @param requiredHeight requested minimum height of the decoded image
+     *
+     * @return key for the decoded image
+     */
+    public static String createKey(File sourceFile, int requiredWidth, int requiredHeight) {
+        return sourceFile.getAbsolutePath() + "|" + sourceFile.lastModified() + "|" + sourceFile.length() + "|" + requiredWidth + "x" + requiredHeight;
+    }
+
+    /**
+     * @param key key created by {@link #createKey(File, int, int)}
+     *
+     * @return the cached image, or null when not cached
+     */
+    public static synchronized PixelImage get(String key) {
+        CachedImage cachedImage = CACHED_IMAGES.get(key);
+        if( cachedImage == null ){
+            return null;
+        }
+        PixelImage image = cachedImage.image.get();
+        if( image == null ){
+            CACHED_IMAGES.remove(key);
+            cachedBytes -= cachedImage.bytes;
+        }
+        return image;
+    }
+
+    /**
+     * Caches the decoded image, older versions of the same source are removed.
+     *
+     * @param key key created by {@link #createKey(File, int, int)}
+     * @param sourcePath absolute path of the source image
+     * @param image the decoded image
+     *
+     * @return true when the image got cached, false when it is too big for this cache
+     */
+    public static synchronized boolean put(String key, String sourcePath, PixelImage image) {
+        long bytes = (long) image.getWidth() * image.getHeight() * 4;
+        if( bytes > maxCachedBytes ){
+            return false;
+        }
+        Iterator<CachedImage> cachedImageIterator = CACHED_IMAGES.values().iterator();
+        while( cachedImageIterator.hasNext() ){
+            CachedImage cachedImage = cachedImageIterator.next();
+            if( cachedImage.sourcePath.equals(sourcePath) ){
+                cachedImageIterator.remove();
+                cachedBytes -= cachedImage.bytes;
+            }
+        }
+        evictUntilFitting(maxCachedBytes - bytes);
+        CACHED_IMAGES.put(key, new CachedImage(sourcePath, image, bytes));
+        cachedBytes += bytes;
+        return true;
+    }
+
+    public static synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    private static void evictUntilFitting(long maxBytes) {
+        Iterator<CachedImage> cachedImageIterator = CACHED_IMAGES.values().iterator();
+        while( cachedBytes > Math.max(0, maxBytes) && cachedImageIterator.hasNext() ){
+            cachedBytes -= cachedImageIterator.next().bytes;
+            cachedImageIterator.remove();
+        }
+    }
+
+    /**
+     * Cache settings of one running task.
+     */
+    public static final class Configuration implements AutoCloseable {
+
+        private final long maxCachedBytes;
+
+        private Configuration(long maxCachedBytes) {
+            this.maxCachedBytes = maxCachedBytes;
+        }
+
+        /**
+         * The settings of this task are not considered anymore, unless it was the last running one.
+         */
+        @Override
+        public void close() {
+            finish(this);
+        }
+    }
+
+    private static final class CachedImage {
+
+        private final String sourcePath;
+        private final SoftReference<PixelImage> image;
+        private final long bytes;
+
+        CachedImage(String sourcePath, PixelImage image, long bytes) {
+            this.sourcePath = sourcePath;
+            this.image = new SoftReference<>(image);
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
+
+/**
+ * Work shared between all transform-tasks of the same build (like all projects of a multi-project build): source
+ * hashes, and the files already rendered for an output. Every identical output (same source content, resolution,
+ * format and settings) gets rendered only once, all other tasks are getting a link (or copy) of that file.
+ *
+ * The shared state is kept inside the extra properties of the root project, using JDK types only. This way projects
+ * loading this plugin by their own buildscript-block (having their own classloader) are sharing it too, and everything
+ * gets forgotten together with the build.
+ *
+ * @author Danny Althoff
+ */
+public final class SharedTransformService {
+
+    private static final String SHARED_STATE_PREFIX = "imagetransformShared";
+
+    // source path -> "length:lastModified:sha256"
+    private final Map<String, String> sourceHashes;
+    // output key -> rendered file, completed with null when rendering failed, or exceptionally when aborted
+    private final Map<String, CompletableFuture<File>> renderedOutputs;
+    // output key -> "length:lastModified" of the rendered file when it got completed
+    private final Map<String, String> renderedFileStates;
+
+    private SharedTransformService(ExtraPropertiesExtension sharedState) {
+        this.sourceHashes = getSharedMap(sharedState, "SourceHashes");
+        this.renderedOutputs = getSharedMap(sharedState, "RenderedOutputs");
+        this.renderedFileStates = getSharedMap(sharedState, "RenderedFileStates");
+    }
+
+    /**
+     * @param gradle the build
+     *
+     * @return the service of that build
+     */
+    public static SharedTransformService forBuild(Gradle gradle) {
+        return new SharedTransformService(gradle.getRootProject().getExtensions().getExtraProperties());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> getSharedMap(ExtraPropertiesExtension sharedState, String name) {
+        String propertyName = SHARED_STATE_PREFIX + name;
+        // the extra properties are the same instance for every classloader, other than the class of this service
+        synchronized(sharedState){
+            if( !sharedState.has(propertyName) ){
+                sharedState.set(propertyName, new ConcurrentHashMap<String, V>());
+            }
+            return (Map<String, V>) sharedState.get(propertyName);
+        }
+    }
+
+    /**
+     * Hashes every source only once per build, as long as it does not change its size and modification time.
+     *
+     * @param sourceFile the file to hash
+     *
+     * @return hex-encoded SHA-256 of the file content
+     *
+     * @throws IOException when the source could not be read
+     */
+    public String getContentHash(File sourceFile) throws IOException {
+        String sourcePath = sourceFile.getAbsolutePath();
+        String fileState = sourceFile.length() + ":" + sourceFile.lastModified() + ":";
+        String recordedHash = sourceHashes.get(sourcePath);
+        if( recordedHash != null && recordedHash.startsWith(fileState) ){
+            return recordedHash.substring(fileState.length());
+        }
+        String contentHash = TransformManifest.hashFileContent(sourceFile);
+        sourceHashes.put(sourcePath, fileState + contentHash);
+        return contentHash;
+    }
+
+    /**
+     * Claims the rendering of an output. The first task claiming it has to render it and call
+     * {@link #completeRendering(String, File)} afterwards, even when failed, or {@link #abortRendering(String, Throwable)}
+     * when not able to finish the rendering.
+     *
+     * @param outputKey describes the output completely
+     *
+     * @return null when the caller has to render the output, otherwise the rendering of another task
+     */
+    public CompletableFuture<File> claimRendering(String outputKey) {
+        CompletableFuture<File> claimedRendering = new CompletableFuture<>();
+        CompletableFuture<File> existingRendering = renderedOutputs.putIfAbsent(outputKey, claimedRendering);
+        if( existingRendering == null || !existingRendering.isDone() ){
+            return existingRendering;
+        }
+        // the rendered file might have been changed afterwards (like by another run inside the same build), which
+        // requires a new rendering
+        File renderedFile = existingRendering.isCompletedExceptionally() ? null : existingRendering.getNow(null);
+        String renderedFileState = renderedFileStates.get(outputKey);
+        if( renderedFile == null || getFileState(renderedFile).equals(renderedFileState) ){
+            return existingRendering;
+        }
+        if( renderedOutputs.replace(outputKey, existingRendering, claimedRendering) ){
+            renderedFileStates.remove(outputKey, renderedFileState);
+            return null;
+        }
+        return claimRendering(outputKey);
+    }
+
+    /**
+     * @param outputKey key of a claimed output
+     * @param renderedFile the rendered file, or null when rendering failed (the next task claiming it renders it
+     * itself)
+     */
+    public void completeRendering(String outputKey, File renderedFile) {
+        CompletableFuture<File> claimedRendering = renderedOutputs.get(outputKey);
+        if( claimedRendering == null ){
+            return;
+        }
+        if( renderedFile == null ){
+            renderedOutputs.remove(outputKey, claimedRendering);
+        } else {
+            renderedFileStates.put(outputKey, getFileState(renderedFile));
+        }
+        claimedRendering.complete(renderedFile);
+    }
+
+    /**
+     * Aborts a claimed rendering, all tasks waiting for it are failing with the given cause (and render the output
+     * themselves). The next task claiming it renders it itself.
+     *
+     * @param outputKey key of a claimed output
+     * @param cause the reason for aborting
+     */
+    public void abortRendering(String outputKey, Throwable cause) {
+        CompletableFuture<File> claimedRendering = renderedOutputs.get(outputKey);
+        if( claimedRendering == null || claimedRendering.isDone() ){
+            return;
+        }
+        renderedOutputs.remove(outputKey, claimedRendering);
+        claimedRendering.completeExceptionally(cause);
+    }
+
+    private static String getFileState(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.cache;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.output.DestinationWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent record of all generated destination files and what they were generated from. Each destination is stored
+ * together with the content hash of its source and the parameters it was transformed with, so only changed entries
+ * need to be transformed again.
+ *
+ * @author Danny Althoff
+ */
+public class TransformManifest {
+
+    private static final String SOURCE_PREFIX = "source.";
+    private static final String DESTINATION_PREFIX = "destination.";
+    private static final String ORIGIN_PREFIX = "origin.";
+
+    private final File manifestFile;
+    // source path -> "length:lastModified:sha256"
+    private final Map<String, String> sourceHashes = new ConcurrentHashMap<>();
+    // destination path -> fingerprint
+    private final Map<String, String> destinationFingerprints = new ConcurrentHashMap<>();
+    // destination path -> source path, source paths may contain any character so they can't be part of the fingerprint
+    private final Map<String, String> destinationOrigins = new ConcurrentHashMap<>();
+    // settings of the task having influence on all destinations (like encoder-settings)
+    private String taskSettingsFingerprint = "";
+    private ContentHasher contentHasher = TransformManifest::hashFileContent;
+
+    public TransformManifest(File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    public static TransformManifest load(File manifestFile) throws IOException {
+        TransformManifest manifest = new TransformManifest(manifestFile);
+        if( !manifestFile.exists() ){
+            return manifest;
+        }
+        Properties manifestContent = new Properties();
+        try(InputStream manifestInputStream = Files.newInputStream(manifestFile.toPath())){
+            manifestContent.load(manifestInputStream);
+        }
+        manifestContent.stringPropertyNames().forEach(key -> {
+            if( key.startsWith(SOURCE_PREFIX) ){
+                manifest.sourceHashes.put(key.substring(SOURCE_PREFIX.length()), manifestContent.getProperty(key));
+            }
+            if( key.startsWith(DESTINATION_PREFIX) ){
+                manifest.destinationFingerprints.put(key.substring(DESTINATION_PREFIX.length()), manifestContent.getProperty(key));
+            }
+            if( key.startsWith(ORIGIN_PREFIX) ){
+                manifest.destinationOrigins.put(key.substring(ORIGIN_PREFIX.length()), manifestContent.getProperty(key));
+            }
+        });
+        return manifest;
+    }
+
+    public void save() throws IOException {
+        Properties manifestContent = new Properties();
+        // only sources still in use are worth remembering
+        Set<String> usedSources = new HashSet<>(destinationOrigins.values());
+        sourceHashes.forEach((source, hash) -> {
+            if( usedSources.contains(source) ){
+                manifestContent.setProperty(SOURCE_PREFIX + source, hash);
+            }
+        });
+        destinationFingerprints.forEach((destination, fingerprint) -> {
+            manifestContent.setProperty(DESTINATION_PREFIX + destination, fingerprint);
+        });
+        destinationOrigins.forEach((destination, source) -> {
+            manifestContent.setProperty(ORIGIN_PREFIX + destination, source);
+        });
+        ByteArrayOutputStream manifestOutputStream = new ByteArrayOutputStream();
+        manifestContent.store(manifestOutputStream, "imagetransform-gradle-plugin manifest, do not edit");
+        // replaced instead of overwritten, an interrupted build must not leave a truncated manifest behind
+        DestinationWriter.write(ByteBuffer.wrap(manifestOutputStream.toByteArray()), manifestFile.toPath());
+    }
+
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    public void setTaskSettingsFingerprint(String taskSettingsFingerprint) {
+        this.taskSettingsFingerprint = taskSettingsFingerprint;
+    }
+
+    /**
+     * Sources not recorded by this manifest are hashed using this hasher, like one shared between multiple tasks.
+     *
+     * @param contentHasher hashes the content of a file
+     */
+    public void setContentHasher(ContentHasher contentHasher) {
+        this.contentHasher = contentHasher;
+    }
+
+    public ContentHasher getContentHasher() {
+        return contentHasher;
+    }
+
+    /**
+     * Checks if the destination of this entry exists and was generated from the same source content using the same
+     * parameters.
+     *
+     * @param transformEntry processed entry
+     *
+     * @return true if this entry does not need to be transformed again
+     *
+     * @throws IOException when the source could not be hashed
+     */
+    public boolean isUpToDate(ImageTransformEntry transformEntry) throws IOException {
+        String recordedFingerprint = destinationFingerprints.get(transformEntry.destination);
+        if( recordedFingerprint == null || !new File(transformEntry.destination).exists() ){
+            return false;
+        }
+        return recordedFingerprint.equals(getFingerprint(transformEntry));
+    }
+
+    public void markTransformed(ImageTransformEntry transformEntry) throws IOException {
+        destinationFingerprints.put(transformEntry.destination, getFingerprint(transformEntry));
+        destinationOrigins.put(transformEntry.destination, new File(transformEntry.source).getAbsolutePath());
+    }
+
+    public void forget(ImageTransformEntry transformEntry) {
+        forgetDestination(transformEntry.destination);
+    }
+
+    /**
+     * Returns all destinations recorded by a previous run which are not part of the current entries anymore.
+     *
+     * @param transformEntries all current processed entries
+     *
+     * @return destination paths that got generated before, but are not wanted anymore
+     */
+    public Set<String> getOrphanedDestinations(Collection<ImageTransformEntry> transformEntries) {
+        Set<String> currentDestinations = transformEntries.stream()
+                .map(transformEntry -> transformEntry.destination)
+                .collect(Collectors.toSet());
+        return destinationFingerprints.keySet().stream()
+                .filter(destination -> !currentDestinations.contains(destination))
+                .collect(Collectors.toSet());
+    }
+
+    public void forgetDestination(String destination) {
+        destinationFingerprints.remove(destination);
+        destinationOrigins.remove(destination);
+    }
+
+    private String getFingerprint(ImageTransformEntry transformEntry) throws IOException {
+        return transformEntry.source + "|" + getSourceHash(new File(transformEntry.source)) + "|" + transformEntry.getParameterFingerprint() + "|" + taskSettingsFingerprint;
+    }
+
+    /**
+     * Returns the content hash of the source file. Hashing gets skipped when the file did not change its size and
+     * modification time since it was hashed last time.
+     *
+     * @param sourceFile the file to hash
+     *
+     * @return hex-encoded SHA-256 of the file content
+     *
+     * @throws IOException when the source could not be read
+     */
+    public String getSourceHash(File sourceFile) throws IOException {
+        String sourcePath = sourceFile.getAbsolutePath();
+        String fileState = sourceFile.length() + ":" + sourceFile.lastModified() + ":";
+        String recordedHash = sourceHashes.get(sourcePath);
+        if( recordedHash != null && recordedHash.startsWith(fileState) ){
+            return recordedHash.substring(fileState.length());
+        }
+        String contentHash = contentHasher.hash(sourceFile);
+        sourceHashes.put(sourcePath, fileState + contentHash);
+        return contentHash;
+    }
+
+    /**
+     * @param file the file to hash
+     *
+     * @return hex-encoded SHA-256 of the file content
+     *
+     * @throws IOException when the file could not be read
+     */
+    public static String hashFileContent(File file) throws IOException {
+        MessageDigest messageDigest;
+        try{
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException ex){
+            throw new IOException(ex);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try(InputStream fileInputStream = Files.newInputStream(file.toPath())){
+            int readBytes = fileInputStream.read(buffer);
+            while( readBytes >= 0 ){
+                messageDigest.update(buffer, 0, readBytes);
+                readBytes = fileInputStream.read(buffer);
+            }
+        }
+        return String.format("%064x", new BigInteger(1, messageDigest.digest()));
+    }
+
+    /**
+     * Calculates the content hash of a file.
+     */
+    public interface ContentHasher {
+
+        /**
+         * @param file the file to hash
+         *
+         * @return hex-encoded SHA-256 of the file content
+         *
+         * @throws IOException when the file could not be read
+         */
+        String hash(File file) throws IOException;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+
+/**
+ * Fallback for all formats ImageIO does not support (like ICO and ICNS).
+ *
+ * @author Danny Althoff
+ */
+public class CommonsImagingCodec implements ImageCodec {
+
+    public static final int PRIORITY = -100;
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public String getName() {
+        return "commons-imaging";
+    }
+
+    @Override
+    public boolean canRead(ImageFormat format) {
+        // formats of other codecs (like vector formats) are unknown to commons-imaging
+        return format instanceof ImageFormats && format != ImageFormats.UNKNOWN;
+    }
+
+    @Override
+    public boolean canWrite(ImageFormat format) {
+        return format instanceof ImageFormats && format != ImageFormats.UNKNOWN;
+    }
+
+    @Override
+    public BufferedImage read(File source) throws IOException {
+        try{
+            return Imaging.getBufferedImage(source);
+        } catch(ImageReadException ex){
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public Dimension readSize(File source) throws IOException {
+        try{
+            Dimension size = Imaging.getImageSize(source);
+            if( size != null ){
+                return size;
+            }
+            // some parsers (like the one for ICO) are not able to read the size without decoding
+            BufferedImage image = Imaging.getBufferedImage(source);
+            return new Dimension(image.getWidth(), image.getHeight());
+        } catch(ImageReadException ex){
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException {
+        try{
+            // TODO handle incomplete Imaging-library
+            // https://issues.apache.org/jira/browse/IMAGING-188
+            Imaging.writeImage(image, outputStream, format, new HashMap<>());
+        } catch(ImageWriteException ex){
+            throw new IOException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Reads and/or writes images of some formats. Additional codecs can be provided by registering them via
+ * "META-INF/services/de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodec" inside a jar being
+ * part of the buildscript-classpath.
+ *
+ * @author Danny Althoff
+ */
+public interface ImageCodec {
+
+    /**
+     * When multiple codecs are supporting the same format, the one with the highest priority is used. Built-in codecs
+     * are using {@link ImageIOCodec#PRIORITY} and {@link CommonsImagingCodec#PRIORITY}.
+     *
+     * @return priority of this codec
+     */
+    default int getPriority() {
+        return 0;
+    }
+
+    String getName();
+
+    boolean canRead(ImageFormat format);
+
+    boolean canWrite(ImageFormat format);
+
+    BufferedImage read(File source) throws IOException;
+
+    /**
+     * Reads the source image, but may decode it at a smaller size (without loading the full raster) as long as the
+     * result is still at least as big as the required size in one of both dimensions. Codecs not supporting this are
+     * decoding the full image.
+     *
+     * @param source the image file to read
+     * @param requiredWidth minimal width the decoded image should have
+     * @param requiredHeight minimal height the decoded image should have
+     *
+     * @return decoded image
+     *
+     * @throws IOException when the image could not be read
+     */
+    default BufferedImage read(File source, int requiredWidth, int requiredHeight) throws IOException {
+        return read(source);
+    }
+
+    /**
+     * Reads only the header of the image, used to estimate the required memory before decoding.
+     *
+     * @param source the image file to inspect
+     *
+     * @return size of the full image
+     *
+     * @throws IOException when the image could not be read
+     */
+    Dimension readSize(File source) throws IOException;
+
+    void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException;
+
+    /**
+     * Calculates the subsampling-factor (same for both axis) for decoding an image, which still results in at least
+     * the required size.
+     *
+     * @param sourceWidth width of the full image
+     * @param sourceHeight height of the full image
+     * @param requiredWidth minimal width the decoded image should have
+     * @param requiredHeight minimal height the decoded image should have
+     *
+     * @return factor of 1 or bigger, 1 means no subsampling
+     */
+    static int getSubsampling(int sourceWidth, int sourceHeight, int requiredWidth, int requiredHeight) {
+        if( requiredWidth <= 0 || requiredHeight <= 0 ){
+            return 1;
+        }
+        return Math.max(1, Math.min(sourceWidth / requiredWidth, sourceHeight / requiredHeight));
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Selects the codec with the highest priority for reading or writing some format. Besides the built-in codecs, all
+ * codecs registered via {@link ServiceLoader} are available.
+ *
+ * @author Danny Althoff
+ */
+public class ImageCodecRegistry {
+
+    private final List<ImageCodec> codecs = new ArrayList<>();
+    private final Map<ImageFormat, ImageCodec> readers = new ConcurrentHashMap<>();
+    private final Map<ImageFormat, ImageCodec> writers = new ConcurrentHashMap<>();
+
+    public ImageCodecRegistry() {
+        codecs.add(new ImageIOCodec());
+        codecs.add(new CommonsImagingCodec());
+        codecs.add(new SvgCodec());
+        ServiceLoader.load(ImageCodec.class, ImageCodec.class.getClassLoader()).forEach(codecs::add);
+        // stable sort, built-in codecs are preferred on same priority
+        codecs.sort(Comparator.comparingInt(ImageCodec::getPriority).reversed());
+    }
+
+    public void register(ImageCodec codec) {
+        codecs.add(codec);
+        codecs.sort(Comparator.comparingInt(ImageCodec::getPriority).reversed());
+        readers.clear();
+        writers.clear();
+    }
+
+    public List<ImageCodec> getCodecs() {
+        return codecs;
+    }
+
+    public ImageCodec getReader(ImageFormat format) throws IOException {
+        ImageCodec reader = readers.computeIfAbsent(format, formatToRead -> {
+            return codecs.stream().filter(codec -> codec.canRead(formatToRead)).findFirst().orElse(null);
+        });
+        if( reader == null ){
+            throw new IOException("No codec found for reading format: " + format.getName());
+        }
+        return reader;
+    }
+
+    public ImageCodec getWriter(ImageFormat format) throws IOException {
+        ImageCodec writer = writers.computeIfAbsent(format, formatToWrite -> {
+            return codecs.stream().filter(codec -> codec.canWrite(formatToWrite)).findFirst().orElse(null);
+        });
+        if( writer == null ){
+            throw new IOException("No codec found for writing format: " + format.getName());
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+/**
+ * Detects the format of image files by their first bytes only. Results are remembered per file (until its size or
+ * last modification changes), so checking the same source for multiple entries or multiple builds does not read it
+ * again. Only the most recently checked files are remembered. Text files are checked for being SVG-documents, all other files having an unknown signature are checked via
+ * commons-imaging.
+ *
+ * @author Danny Althoff
+ */
+public final class ImageFormatSniffer {
+
+    private static final int HEADER_SIZE = 16;
+    // the svg-element follows the XML-declaration, doctype and comments, which are rarely longer than this
+    private static final int TEXT_HEADER_SIZE = 4096;
+    private static final Pattern SVG_ELEMENT = Pattern.compile("<(\\w+:)?svg[\\s>]");
+
+    // only signatures commons-imaging would detect the same way
+    private static final List<Signature> SIGNATURES = Arrays.asList(
+            new Signature(ImageFormats.PNG, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A),
+            new Signature(ImageFormats.JPEG, 0xFF, 0xD8, 0xFF),
+            new Signature(ImageFormats.GIF, "GIF87a"),
+            new Signature(ImageFormats.GIF, "GIF89a"),
+            new Signature(ImageFormats.BMP, "BM"),
+            new Signature(ImageFormats.ICNS, "icns"),
+            new Signature(ImageFormats.TIFF, 'I', 'I', 0x2A, 0x00),
+            new Signature(ImageFormats.TIFF, 'M', 'M', 0x00, 0x2A),
+            new Signature(ImageFormats.PSD, "8BPS")
+    );
+
+    /**
+     * Maximum count of remembered files, the daemon may run builds of many projects.
+     */
+    public static final int MAX_SNIFFED_FORMATS = 4096;
+
+    // access-ordered, the first entry is the least recently used one
+    private static final Map<String, SniffedFormat> SNIFFED_FORMATS = new LinkedHashMap<String, SniffedFormat>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SniffedFormat> eldest) {
+            return size() > MAX_SNIFFED_FORMATS;
+        }
+    };
+
+    private ImageFormatSniffer() {
+        // utility class
+    }
+
+    /**
+     * @param file the image file
+     *
+     * @return detected format, or ImageFormats.UNKNOWN
+     *
+     * @throws IOException when the file could not be read or checked
+     */
+    public static ImageFormat guessFormat(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        SniffedFormat sniffedFormat;
+        synchronized(SNIFFED_FORMATS){
+            sniffedFormat = SNIFFED_FORMATS.get(path);
+        }
+        if( sniffedFormat != null && sniffedFormat.size == size && sniffedFormat.lastModified == lastModified ){
+            return sniffedFormat.format;
+        }
+
+        ImageFormat format = guessFormatBySignature(file);
+        if( format == ImageFormats.UNKNOWN ){
+            try{
+                format = Imaging.guessFormat(file);
+            } catch(ImageReadException ex){
+                throw new IOException(ex);
+            }
+        }
+        synchronized(SNIFFED_FORMATS){
+            SNIFFED_FORMATS.put(path, new SniffedFormat(size, lastModified, format));
+        }
+        return format;
+    }
+
+    /**
+     * @return count of remembered files
+     */
+    public static int getSniffedFormatCount() {
+        synchronized(SNIFFED_FORMATS){
+            return SNIFFED_FORMATS.size();
+        }
+    }
+
+    private static ImageFormat guessFormatBySignature(File file) throws IOException {
+        ByteBuffer header = readHeader(file, HEADER_SIZE);
+        ImageFormat format = SIGNATURES.stream()
+                .filter(signature -> signature.matches(header))
+                .map(signature -> signature.format)
+                .findFirst()
+                .orElse(ImageFormats.UNKNOWN);
+        if( format == ImageFormats.UNKNOWN && startsWithMarkup(header) ){
+            ByteBuffer textHeader = readHeader(file, TEXT_HEADER_SIZE);
+            // every byte maps to one char, enough for finding ASCII-tags inside UTF-8
+            String text = new String(textHeader.array(), 0, textHeader.limit(), StandardCharsets.ISO_8859_1);
+            if( SVG_ELEMENT.matcher(text).find() ){
+                return VectorImageFormats.SVG;
+            }
+        }
+        return format;
+    }
+
+    private static ByteBuffer readHeader(File file, int headerSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        try(FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            while( header.hasRemaining() && fileChannel.read(header) >= 0 ){
+                // read until header is complete or file has ended
+            }
+        }
+        header.flip();
+        return header;
+    }
+
+    /**
+     * @return true when the first char (after an UTF-8 byte order mark and whitespaces) starts a tag
+     */
+    private static boolean startsWithMarkup(ByteBuffer header) {
+        int index = 0;
+        if( header.remaining() >= 3 && (header.get(0) & 0xFF) == 0xEF && (header.get(1) & 0xFF) == 0xBB && (header.get(2) & 0xFF) == 0xBF ){
+            index = 3;
+        }
+        while( index < header.remaining() && Character.isWhitespace(header.get(index)) ){
+            index++;
+        }
+        return index < header.remaining() && header.get(index) == '<';
+    }
+
+    private static final class Signature {
+
+        private final ImageFormat format;
+        private final byte[] magicBytes;
+
+        Signature(ImageFormat format, String magicText) {
+            this.format = format;
+            this.magicBytes = magicText.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        Signature(ImageFormat format, int... magicBytes) {
+            this.format = format;
+            this.magicBytes = new byte[magicBytes.length];
+            for( int index = 0; index < magicBytes.length; index++ ){
+                this.magicBytes[index] = (byte) magicBytes[index];
+            }
+        }
+
+        boolean matches(ByteBuffer header) {
+            if( header.remaining() < magicBytes.length ){
+                return false;
+            }
+            for( int index = 0; index < magicBytes.length; index++ ){
+                if( header.get(index) != magicBytes[index] ){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class SniffedFormat {
+
+        private final long size;
+        private final long lastModified;
+        private final ImageFormat format;
+
+        SniffedFormat(long size, long lastModified, ImageFormat format) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.format = format;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+
+/**
+ * Uses the ImageIO-implementations of the JDK, which are faster than commons-imaging and are streaming the encoded
+ * data instead of buffering the whole file.
+ *
+ * @author Danny Althoff
+ */
+public class ImageIOCodec implements ImageCodec {
+
+    public static final int PRIORITY = 100;
+
+    private static final Map<ImageFormat, String> IMAGEIO_FORMAT_NAMES = new HashMap<>();
+
+    static {
+        IMAGEIO_FORMAT_NAMES.put(ImageFormats.PNG, "png");
+        IMAGEIO_FORMAT_NAMES.put(ImageFormats.BMP, "bmp");
+        IMAGEIO_FORMAT_NAMES.put(ImageFormats.JPEG, "jpeg");
+        IMAGEIO_FORMAT_NAMES.put(ImageFormats.GIF, "gif");
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public String getName() {
+        return "ImageIO";
+    }
+
+    @Override
+    public boolean canRead(ImageFormat format) {
+        String formatName = IMAGEIO_FORMAT_NAMES.get(format);
+        return formatName != null && ImageIO.getImageReadersByFormatName(formatName).hasNext();
+    }
+
+    @Override
+    public boolean canWrite(ImageFormat format) {
+        String formatName = IMAGEIO_FORMAT_NAMES.get(format);
+        return formatName != null && ImageIO.getImageWritersByFormatName(formatName).hasNext();
+    }
+
+    @Override
+    public BufferedImage read(File source) throws IOException {
+        BufferedImage image = ImageIO.read(source);
+        if( image == null ){
+            throw new IOException("No ImageIO-reader found for: " + source.getAbsolutePath());
+        }
+        return image;
+    }
+
+    @Override
+    public BufferedImage read(File source, int requiredWidth, int requiredHeight) throws IOException {
+        try(ImageInputStream imageInputStream = ImageIO.createImageInputStream(source)){
+            ImageReader reader = getReader(source, imageInputStream);
+            try{
+                reader.setInput(imageInputStream, true, true);
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                // subsampling is applied while decoding the rows, so the full raster never gets allocated
+                int subsampling = ImageCodec.getSubsampling(reader.getWidth(0), reader.getHeight(0), requiredWidth, requiredHeight);
+                if( subsampling > 1 ){
+                    readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, readParam);
+            } finally{
+                reader.dispose();
+            }
+        }
+    }
+
+    @Override
+    public Dimension readSize(File source) throws IOException {
+        try(ImageInputStream imageInputStream = ImageIO.createImageInputStream(source)){
+            ImageReader reader = getReader(source, imageInputStream);
+            try{
+                reader.setInput(imageInputStream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally{
+                reader.dispose();
+            }
+        }
+    }
+
+    private ImageReader getReader(File source, ImageInputStream imageInputStream) throws IOException {
+        if( imageInputStream == null ){
+            throw new IOException("Could not open source image: " + source.getAbsolutePath());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+        if( !readers.hasNext() ){
+            throw new IOException("No ImageIO-reader found for: " + source.getAbsolutePath());
+        }
+        return readers.next();
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException {
+        BufferedImage imageToWrite = image;
+        // these writers do not support any alpha-channel
+        if( (format == ImageFormats.BMP || format == ImageFormats.JPEG) && image.getColorModel().hasAlpha() ){
+            imageToWrite = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = imageToWrite.createGraphics();
+            try{
+                graphics.drawImage(image, 0, 0, null);
+            } finally{
+                graphics.dispose();
+            }
+        }
+        if( !ImageIO.write(imageToWrite, IMAGEIO_FORMAT_NAMES.get(format), outputStream) ){
+            throw new IOException("No ImageIO-writer found for format " + format.getName() + " and image-type " + imageToWrite.getType());
+        }
+    }
+
+}
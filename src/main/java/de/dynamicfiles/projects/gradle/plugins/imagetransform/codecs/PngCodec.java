@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+
+/**
+ * Writes PNG-files using the own deterministic {@link PngEncoder}, reading is left to the other codecs.
+ *
+ * @author Danny Althoff
+ */
+public class PngCodec implements ImageCodec {
+
+    public static final int PRIORITY = 200;
+
+    private final PngEncoder pngEncoder;
+
+    public PngCodec(PngEncoder pngEncoder) {
+        this.pngEncoder = pngEncoder;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public String getName() {
+        return "imagetransform-png";
+    }
+
+    @Override
+    public boolean canRead(ImageFormat format) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(ImageFormat format) {
+        return format == ImageFormats.PNG;
+    }
+
+    @Override
+    public BufferedImage read(File source) throws IOException {
+        throw new IOException("Reading is not supported by codec " + getName());
+    }
+
+    @Override
+    public Dimension readSize(File source) throws IOException {
+        throw new IOException("Reading is not supported by codec " + getName());
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException {
+        pngEncoder.encode(image, outputStream);
+    }
+
+}
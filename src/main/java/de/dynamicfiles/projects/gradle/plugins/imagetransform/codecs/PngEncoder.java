@@ -0,0 +1,441 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes PNG-files byte-for-byte deterministic: same image and settings are always resulting in the same bytes when
+ * using the same JDK (and its bundled zlib), regardless of the amount of CPU-cores. No metadata-chunks (like time or
+ * gamma) are written.
+ *
+ * Big images are compressed using independent blocks of fixed size (in parallel when having an executor), each block is
+ * flushed to a byte boundary and gets the last 32 KiB of its preceding block as dictionary, so the compression ratio
+ * stays nearly the same as compressing all at once.
+ *
+ * @author Danny Althoff
+ */
+public class PngEncoder {
+
+    static final int FILTER_NONE = 0;
+    static final int FILTER_SUB = 1;
+    static final int FILTER_UP = 2;
+    static final int FILTER_AVERAGE = 3;
+    static final int FILTER_PAETH = 4;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int MAX_PALETTE_SIZE = 256;
+    // fixed, never depending on the amount of available processors
+    private static final int DEFLATE_BLOCK_SIZE = 256 * 1024;
+    private static final int DEFLATE_DICTIONARY_SIZE = 32 * 1024;
+    private static final int MAX_IDAT_CHUNK_SIZE = 1024 * 1024;
+
+    private final int compressionLevel;
+    private final PngFilterStrategy filterStrategy;
+    private final boolean paletteReduction;
+    private final Executor blockExecutor;
+
+    /**
+     * Creates an encoder compressing all blocks within the calling thread.
+     */
+    public PngEncoder(int compressionLevel, PngFilterStrategy filterStrategy, boolean paletteReduction) {
+        this(compressionLevel, filterStrategy, paletteReduction, null);
+    }
+
+    /**
+     * @param compressionLevel 0 (no compression) to 9 (best compression)
+     * @param filterStrategy filter applied to every scanline
+     * @param paletteReduction true to write palette-images when possible
+     * @param blockExecutor executor compressing the blocks of big images, like the pool of workers already encoding, or
+     * null to compress all blocks within the calling thread
+     */
+    public PngEncoder(int compressionLevel, PngFilterStrategy filterStrategy, boolean paletteReduction, Executor blockExecutor) {
+        if( compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION ){
+            throw new IllegalArgumentException("PNG compression level has to be between 0 and 9, got " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.filterStrategy = filterStrategy;
+        this.paletteReduction = paletteReduction;
+        this.blockExecutor = blockExecutor;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public PngFilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    public boolean isPaletteReduction() {
+        return paletteReduction;
+    }
+
+    public void encode(BufferedImage image, OutputStream outputStream) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        int[] palette = paletteReduction ? createPalette(pixels) : null;
+        boolean hasAlpha = Arrays.stream(pixels).anyMatch(pixel -> (pixel >>> 24) != 0xFF);
+
+        int colorType;
+        int bitDepth = 8;
+        int bytesPerPixel;
+        if( palette != null ){
+            colorType = COLOR_TYPE_PALETTE;
+            bitDepth = getPaletteBitDepth(palette.length);
+            bytesPerPixel = 1;
+        } else if( hasAlpha ){
+            colorType = COLOR_TYPE_RGBA;
+            bytesPerPixel = 4;
+        } else {
+            colorType = COLOR_TYPE_RGB;
+            bytesPerPixel = 3;
+        }
+        int rowLength = palette != null ? (width * bitDepth + 7) / 8 : width * bytesPerPixel;
+
+        byte[] rawRows = palette != null ? createPaletteRows(pixels, width, height, palette, bitDepth, rowLength) : createTruecolorRows(pixels, width, height, bytesPerPixel, rowLength);
+        // palette-indices are no continuous values, filtering them is not recommended
+        int fixedFilterType = filterStrategy == PngFilterStrategy.ADAPTIVE && palette != null ? FILTER_NONE : filterStrategy.getFilterType();
+        byte[] filteredRows = filterRows(rawRows, height, rowLength, bytesPerPixel, fixedFilterType);
+        byte[] compressedRows = compress(filteredRows);
+
+        DataOutputStream pngOutputStream = new DataOutputStream(outputStream);
+        pngOutputStream.write(PNG_SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerOutputStream = new DataOutputStream(header);
+        headerOutputStream.writeInt(width);
+        headerOutputStream.writeInt(height);
+        headerOutputStream.writeByte(bitDepth);
+        headerOutputStream.writeByte(colorType);
+        // compression, filter-method, no interlacing
+        headerOutputStream.writeByte(0);
+        headerOutputStream.writeByte(0);
+        headerOutputStream.writeByte(0);
+        writeChunk(pngOutputStream, "IHDR", header.toByteArray(), 0, header.size());
+
+        if( palette != null ){
+            writePaletteChunks(pngOutputStream, palette);
+        }
+        for( int chunkOffset = 0; chunkOffset < compressedRows.length; chunkOffset += MAX_IDAT_CHUNK_SIZE ){
+            writeChunk(pngOutputStream, "IDAT", compressedRows, chunkOffset, Math.min(MAX_IDAT_CHUNK_SIZE, compressedRows.length - chunkOffset));
+        }
+        writeChunk(pngOutputStream, "IEND", new byte[0], 0, 0);
+        pngOutputStream.flush();
+    }
+
+    /**
+     * Collects all colors when there are not more than 256 of them. The palette is sorted to be independent of the
+     * pixel order, translucent colors are first to keep the tRNS-chunk short.
+     *
+     * @return palette, or null when there are too many colors
+     */
+    private static int[] createPalette(int[] pixels) {
+        Map<Integer, Boolean> colors = new HashMap<>();
+        for( int pixel : pixels ){
+            // all fully transparent pixels are the same color
+            int color = (pixel >>> 24) == 0 ? 0 : pixel;
+            if( colors.putIfAbsent(color, Boolean.TRUE) == null && colors.size() > MAX_PALETTE_SIZE ){
+                return null;
+            }
+        }
+        return colors.keySet().stream()
+                .sorted((color, otherColor) -> {
+                    boolean opaque = (color >>> 24) == 0xFF;
+                    boolean otherOpaque = (otherColor >>> 24) == 0xFF;
+                    if( opaque != otherOpaque ){
+                        return opaque ? 1 : -1;
+                    }
+                    return Integer.compareUnsigned(color, otherColor);
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static int getPaletteBitDepth(int paletteSize) {
+        if( paletteSize <= 2 ){
+            return 1;
+        }
+        if( paletteSize <= 4 ){
+            return 2;
+        }
+        if( paletteSize <= 16 ){
+            return 4;
+        }
+        return 8;
+    }
+
+    private static byte[] createPaletteRows(int[] pixels, int width, int height, int[] palette, int bitDepth, int rowLength) {
+        Map<Integer, Integer> paletteIndices = new HashMap<>();
+        for( int paletteIndex = 0; paletteIndex < palette.length; paletteIndex++ ){
+            paletteIndices.put(palette[paletteIndex], paletteIndex);
+        }
+        int pixelsPerByte = 8 / bitDepth;
+        // every row starts with its filter-type byte
+        byte[] rows = new byte[height * (rowLength + 1)];
+        for( int y = 0; y < height; y++ ){
+            int rowOffset = y * (rowLength + 1) + 1;
+            for( int x = 0; x < width; x++ ){
+                int pixel = pixels[y * width + x];
+                int paletteIndex = paletteIndices.get((pixel >>> 24) == 0 ? 0 : pixel);
+                int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+                rows[rowOffset + x / pixelsPerByte] |= paletteIndex << shift;
+            }
+        }
+        return rows;
+    }
+
+    private static byte[] createTruecolorRows(int[] pixels, int width, int height, int bytesPerPixel, int rowLength) {
+        byte[] rows = new byte[height * (rowLength + 1)];
+        for( int y = 0; y < height; y++ ){
+            int rowOffset = y * (rowLength + 1) + 1;
+            for( int x = 0; x < width; x++ ){
+                int pixel = pixels[y * width + x];
+                int pixelOffset = rowOffset + x * bytesPerPixel;
+                rows[pixelOffset] = (byte) (pixel >>> 16);
+                rows[pixelOffset + 1] = (byte) (pixel >>> 8);
+                rows[pixelOffset + 2] = (byte) pixel;
+                if( bytesPerPixel == 4 ){
+                    rows[pixelOffset + 3] = (byte) (pixel >>> 24);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static byte[] filterRows(byte[] rawRows, int height, int rowLength, int bytesPerPixel, int fixedFilterType) {
+        byte[] filteredRows = new byte[rawRows.length];
+        byte[] emptyRow = new byte[rowLength + 1];
+        byte[][] candidates = new byte[FILTER_PAETH + 1][rowLength];
+        for( int y = 0; y < height; y++ ){
+            int rowOffset = y * (rowLength + 1);
+            byte[] previousRows = y == 0 ? emptyRow : rawRows;
+            int previousRowOffset = y == 0 ? 0 : rowOffset - (rowLength + 1);
+
+            int filterType = fixedFilterType;
+            if( filterType < 0 ){
+                // adaptive: minimal sum of absolute differences (filtered bytes as signed values)
+                long minimalSum = Long.MAX_VALUE;
+                for( int candidateFilterType = FILTER_NONE; candidateFilterType <= FILTER_PAETH; candidateFilterType++ ){
+                    filterRow(rawRows, rowOffset + 1, previousRows, previousRowOffset + 1, rowLength, bytesPerPixel, candidateFilterType, candidates[candidateFilterType], 0);
+                    long sum = 0;
+                    for( byte filteredByte : candidates[candidateFilterType] ){
+                        sum += Math.abs((int) filteredByte);
+                    }
+                    if( sum < minimalSum ){
+                        minimalSum = sum;
+                        filterType = candidateFilterType;
+                    }
+                }
+                System.arraycopy(candidates[filterType], 0, filteredRows, rowOffset + 1, rowLength);
+            } else {
+                filterRow(rawRows, rowOffset + 1, previousRows, previousRowOffset + 1, rowLength, bytesPerPixel, filterType, filteredRows, rowOffset + 1);
+            }
+            filteredRows[rowOffset] = (byte) filterType;
+        }
+        return filteredRows;
+    }
+
+    private static void filterRow(byte[] rows, int rowOffset, byte[] previousRows, int previousRowOffset, int rowLength, int bytesPerPixel, int filterType, byte[] target, int targetOffset) {
+        for( int i = 0; i < rowLength; i++ ){
+            int current = rows[rowOffset + i] & 0xFF;
+            int left = i >= bytesPerPixel ? rows[rowOffset + i - bytesPerPixel] & 0xFF : 0;
+            int up = previousRows[previousRowOffset + i] & 0xFF;
+            int upperLeft = i >= bytesPerPixel ? previousRows[previousRowOffset + i - bytesPerPixel] & 0xFF : 0;
+            int predicted;
+            switch( filterType ){
+                case FILTER_SUB:
+                    predicted = left;
+                    break;
+                case FILTER_UP:
+                    predicted = up;
+                    break;
+                case FILTER_AVERAGE:
+                    predicted = (left + up) >>> 1;
+                    break;
+                case FILTER_PAETH:
+                    predicted = paethPredictor(left, up, upperLeft);
+                    break;
+                default:
+                    predicted = 0;
+            }
+            target[targetOffset + i] = (byte) (current - predicted);
+        }
+    }
+
+    private static int paethPredictor(int left, int up, int upperLeft) {
+        int estimate = left + up - upperLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpperLeft = Math.abs(estimate - upperLeft);
+        if( distanceLeft <= distanceUp && distanceLeft <= distanceUpperLeft ){
+            return left;
+        }
+        if( distanceUp <= distanceUpperLeft ){
+            return up;
+        }
+        return upperLeft;
+    }
+
+    /**
+     * Creates a zlib-stream, compressing fixed-size blocks independent (and in parallel when there are multiple).
+     */
+    private byte[] compress(byte[] data) {
+        int blockCount = Math.max(1, (data.length + DEFLATE_BLOCK_SIZE - 1) / DEFLATE_BLOCK_SIZE);
+        byte[][] compressedBlocks = new byte[blockCount][];
+        List<FutureTask<Void>> otherBlocks = new ArrayList<>();
+        if( blockExecutor != null ){
+            for( int block = 1; block < blockCount; block++ ){
+                int blockIndex = block;
+                FutureTask<Void> otherBlock = new FutureTask<>(() -> {
+                    compressedBlocks[blockIndex] = compressBlock(data, blockIndex, blockIndex == blockCount - 1);
+                }, null);
+                otherBlocks.add(otherBlock);
+                blockExecutor.execute(otherBlock);
+            }
+        }
+        // the first block (or all of them, without executor) is compressed by the calling thread
+        for( int blockIndex = 0; blockIndex < blockCount - otherBlocks.size(); blockIndex++ ){
+            compressedBlocks[blockIndex] = compressBlock(data, blockIndex, blockIndex == blockCount - 1);
+        }
+        for( FutureTask<Void> otherBlock : otherBlocks ){
+            // blocks not picked up by another worker yet are compressed here, so waiting never needs a free worker
+            otherBlock.run();
+            try{
+                otherBlock.get();
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Got interrupted while waiting for other blocks", ex);
+            } catch(ExecutionException ex){
+                if( ex.getCause() instanceof Error ){
+                    throw (Error) ex.getCause();
+                }
+                throw (RuntimeException) ex.getCause();
+            }
+        }
+
+        ByteArrayOutputStream zlibStream = new ByteArrayOutputStream(Arrays.stream(compressedBlocks).mapToInt(compressedBlock -> compressedBlock.length).sum() + 6);
+        // zlib-header: deflate with 32K window, compression level hint
+        int compressionMethodAndFlags = 0x78;
+        int levelHint;
+        if( compressionLevel <= 1 ){
+            levelHint = 0;
+        } else if( compressionLevel <= 5 ){
+            levelHint = 1;
+        } else if( compressionLevel == 6 ){
+            levelHint = 2;
+        } else {
+            levelHint = 3;
+        }
+        int flags = levelHint << 6;
+        flags += 31 - (compressionMethodAndFlags * 256 + flags) % 31;
+        zlibStream.write(compressionMethodAndFlags);
+        zlibStream.write(flags);
+        for( byte[] compressedBlock : compressedBlocks ){
+            zlibStream.write(compressedBlock, 0, compressedBlock.length);
+        }
+        Adler32 adler32 = new Adler32();
+        adler32.update(data, 0, data.length);
+        long checksum = adler32.getValue();
+        zlibStream.write((int) (checksum >>> 24));
+        zlibStream.write((int) (checksum >>> 16));
+        zlibStream.write((int) (checksum >>> 8));
+        zlibStream.write((int) checksum);
+        return zlibStream.toByteArray();
+    }
+
+    private byte[] compressBlock(byte[] data, int blockIndex, boolean lastBlock) {
+        int blockStart = blockIndex * DEFLATE_BLOCK_SIZE;
+        int blockLength = Math.min(DEFLATE_BLOCK_SIZE, data.length - blockStart);
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try{
+            if( blockStart > 0 ){
+                int dictionaryLength = Math.min(DEFLATE_DICTIONARY_SIZE, blockStart);
+                deflater.setDictionary(data, blockStart - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(data, blockStart, blockLength);
+            if( lastBlock ){
+                deflater.finish();
+            }
+            ByteArrayOutputStream compressedBlock = new ByteArrayOutputStream(blockLength / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            int flushMode = lastBlock ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            int compressedLength = deflater.deflate(buffer, 0, buffer.length, flushMode);
+            // SYNC_FLUSH is done when the buffer was not filled completely
+            while( lastBlock ? !deflater.finished() : compressedLength == buffer.length ){
+                compressedBlock.write(buffer, 0, compressedLength);
+                compressedLength = deflater.deflate(buffer, 0, buffer.length, flushMode);
+            }
+            compressedBlock.write(buffer, 0, compressedLength);
+            return compressedBlock.toByteArray();
+        } finally{
+            deflater.end();
+        }
+    }
+
+    private static void writePaletteChunks(DataOutputStream pngOutputStream, int[] palette) throws IOException {
+        byte[] paletteEntries = new byte[palette.length * 3];
+        int translucentColors = 0;
+        for( int paletteIndex = 0; paletteIndex < palette.length; paletteIndex++ ){
+            paletteEntries[paletteIndex * 3] = (byte) (palette[paletteIndex] >>> 16);
+            paletteEntries[paletteIndex * 3 + 1] = (byte) (palette[paletteIndex] >>> 8);
+            paletteEntries[paletteIndex * 3 + 2] = (byte) palette[paletteIndex];
+            if( (palette[paletteIndex] >>> 24) != 0xFF ){
+                translucentColors = paletteIndex + 1;
+            }
+        }
+        writeChunk(pngOutputStream, "PLTE", paletteEntries, 0, paletteEntries.length);
+        if( translucentColors > 0 ){
+            byte[] transparency = new byte[translucentColors];
+            for( int paletteIndex = 0; paletteIndex < translucentColors; paletteIndex++ ){
+                transparency[paletteIndex] = (byte) (palette[paletteIndex] >>> 24);
+            }
+            writeChunk(pngOutputStream, "tRNS", transparency, 0, transparency.length);
+        }
+    }
+
+    private static void writeChunk(DataOutputStream pngOutputStream, String chunkType, byte[] data, int offset, int length) throws IOException {
+        byte[] chunkTypeBytes = chunkType.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(chunkTypeBytes);
+        crc.update(data, offset, length);
+        pngOutputStream.writeInt(length);
+        pngOutputStream.write(chunkTypeBytes);
+        pngOutputStream.write(data, offset, length);
+        pngOutputStream.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.gradle.api.GradleException;
+
+/**
+ * Selects the PNG-filter applied to every scanline before compressing.
+ *
+ * @author Danny Althoff
+ */
+public enum PngFilterStrategy {
+
+    NONE(PngEncoder.FILTER_NONE),
+    SUB(PngEncoder.FILTER_SUB),
+    UP(PngEncoder.FILTER_UP),
+    AVERAGE(PngEncoder.FILTER_AVERAGE),
+    PAETH(PngEncoder.FILTER_PAETH),
+    /**
+     * Selects the filter per scanline having the minimal sum of absolute differences, palette-images are not
+     * filtered at all (as recommended by the PNG-specification).
+     */
+    ADAPTIVE(-1);
+
+    private final int filterType;
+
+    PngFilterStrategy(int filterType) {
+        this.filterType = filterType;
+    }
+
+    /**
+     * @return PNG-filter type, or -1 when selected per scanline
+     */
+    public int getFilterType() {
+        return filterType;
+    }
+
+    /**
+     * Parses strategy names as written inside the build script, e.g. "adaptive" or "PAETH".
+     *
+     * @param strategyName name of the strategy
+     *
+     * @return the matching strategy
+     */
+    public static PngFilterStrategy fromName(String strategyName) {
+        String normalizedStrategyName = strategyName.trim().toUpperCase();
+        return Arrays.stream(values())
+                .filter(strategy -> strategy.name().equals(normalizedStrategyName))
+                .findFirst()
+                .orElseThrow(() -> new GradleException("Unknown PNG filter strategy \"" + strategyName + "\", valid strategies are: " + Arrays.stream(values()).map(strategy -> strategy.name().toLowerCase()).collect(Collectors.joining(", "))));
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.Dimension;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Renders SVG-files using Apache Batik, which is not part of this plugin: it has to be added to the
+ * buildscript-classpath when using SVG sources. The size of a document is read without Batik, so planning works
+ * without it.
+ *
+ * @author Danny Althoff
+ */
+public class SvgCodec implements VectorImageCodec {
+
+    public static final int PRIORITY = 100;
+
+    // viewport of documents having neither an absolute size nor a viewBox, same as browsers are using
+    private static final double DEFAULT_VIEWPORT_WIDTH = 300;
+    private static final double DEFAULT_VIEWPORT_HEIGHT = 150;
+
+    // absolute units in pixels, using 96 DPI like Batik does
+    private static final Map<String, Double> PIXELS_PER_UNIT = new LinkedHashMap<>();
+
+    static {
+        PIXELS_PER_UNIT.put("px", 1d);
+        PIXELS_PER_UNIT.put("in", 96d);
+        PIXELS_PER_UNIT.put("cm", 96d / 2.54d);
+        PIXELS_PER_UNIT.put("mm", 96d / 25.4d);
+        PIXELS_PER_UNIT.put("pt", 96d / 72d);
+        PIXELS_PER_UNIT.put("pc", 16d);
+    }
+
+    private static final boolean BATIK_AVAILABLE = isBatikAvailable();
+
+    private static boolean isBatikAvailable() {
+        try{
+            Class.forName("org.apache.batik.bridge.GVTBuilder", false, SvgCodec.class.getClassLoader());
+            return true;
+        } catch(ClassNotFoundException | LinkageError ex){
+            return false;
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public String getName() {
+        return "batik";
+    }
+
+    @Override
+    public boolean canRead(ImageFormat format) {
+        // without Batik this still claims the format, failing with a helpful message instead of "no codec found"
+        return format == VectorImageFormats.SVG;
+    }
+
+    @Override
+    public boolean canWrite(ImageFormat format) {
+        return false;
+    }
+
+    @Override
+    public VectorImage parse(File source) throws IOException {
+        if( !BATIK_AVAILABLE ){
+            throw new IOException("Rendering SVG requires Apache Batik (org.apache.xmlgraphics:batik-transcoder) as part of the buildscript-classpath");
+        }
+        return SvgDocument.parse(source);
+    }
+
+    /**
+     * Reads only the attributes of the root-element, the same way Batik calculates the size of the document.
+     */
+    @Override
+    public Dimension readSize(File source) throws IOException {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        // entities declared inside the document are still resolved, but nothing gets loaded from somewhere else
+        inputFactory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+        try(InputStream inputStream = new BufferedInputStream(new FileInputStream(source))){
+            XMLStreamReader streamReader = inputFactory.createXMLStreamReader(inputStream);
+            try{
+                int event = streamReader.next();
+                while( event != XMLStreamConstants.START_ELEMENT ){
+                    event = streamReader.next();
+                }
+                if( !"svg".equals(streamReader.getLocalName()) ){
+                    throw new IOException("Not a SVG document, root element is: " + streamReader.getLocalName());
+                }
+                Dimension2D viewportSize = getViewportSize(streamReader.getAttributeValue(null, "viewBox"));
+                double width = toPixels(streamReader.getAttributeValue(null, "width"), viewportSize.getWidth());
+                double height = toPixels(streamReader.getAttributeValue(null, "height"), viewportSize.getHeight());
+                return new Dimension(Math.max(1, (int) Math.ceil(width)), Math.max(1, (int) Math.ceil(height)));
+            } finally{
+                streamReader.close();
+            }
+        } catch(XMLStreamException ex){
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException {
+        throw new IOException("Writing is not supported by codec " + getName());
+    }
+
+    /**
+     * Relative sizes of the document are resolved against this viewport: the size of the viewBox when declared.
+     *
+     * @param viewBox value of the viewBox-attribute, may be null or empty
+     *
+     * @return size of the viewport
+     *
+     * @throws IOException when the viewBox is malformed
+     */
+    static Dimension2D getViewportSize(String viewBox) throws IOException {
+        ViewportSize viewportSize = new ViewportSize();
+        if( viewBox == null || viewBox.trim().isEmpty() ){
+            viewportSize.setSize(DEFAULT_VIEWPORT_WIDTH, DEFAULT_VIEWPORT_HEIGHT);
+            return viewportSize;
+        }
+        String[] viewBoxValues = viewBox.trim().split("[\\s,]+");
+        try{
+            if( viewBoxValues.length != 4 ){
+                throw new NumberFormatException("expected 4 values");
+            }
+            viewportSize.setSize(Double.parseDouble(viewBoxValues[2]), Double.parseDouble(viewBoxValues[3]));
+        } catch(NumberFormatException ex){
+            throw new IOException("Invalid viewBox \"" + viewBox + "\": " + ex.getMessage());
+        }
+        return viewportSize;
+    }
+
+    private static double toPixels(String length, double viewportLength) throws IOException {
+        if( length == null || length.trim().isEmpty() ){
+            return viewportLength;
+        }
+        String trimmedLength = length.trim();
+        try{
+            if( trimmedLength.endsWith("%") ){
+                return Double.parseDouble(trimmedLength.substring(0, trimmedLength.length() - 1)) / 100 * viewportLength;
+            }
+            for( Map.Entry<String, Double> unit : PIXELS_PER_UNIT.entrySet() ){
+                if( trimmedLength.endsWith(unit.getKey()) ){
+                    return Double.parseDouble(trimmedLength.substring(0, trimmedLength.length() - unit.getKey().length())) * unit.getValue();
+                }
+            }
+            // user units are pixels
+            return Double.parseDouble(trimmedLength);
+        } catch(NumberFormatException ex){
+            throw new IOException("Unsupported length \"" + length + "\": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Unlike {@link Dimension}, this keeps fractional sizes.
+     */
+    private static final class ViewportSize extends Dimension2D {
+
+        private double width;
+        private double height;
+
+        @Override
+        public double getWidth() {
+            return width;
+        }
+
+        @Override
+        public double getHeight() {
+            return height;
+        }
+
+        @Override
+        public void setSize(double width, double height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
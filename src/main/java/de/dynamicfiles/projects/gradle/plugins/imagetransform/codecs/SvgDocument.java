@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.BridgeException;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.svg.SVGDocument;
+
+/**
+ * SVG-document parsed by Batik into its graphics-tree, which gets painted for every rendering. This is the only class
+ * referencing Batik, so it is only loaded when Batik is available.
+ *
+ * @author Danny Althoff
+ */
+final class SvgDocument implements VectorImage {
+
+    private final BridgeContext bridgeContext;
+    private final GraphicsNode rootNode;
+    private final Dimension2D size;
+
+    private SvgDocument(BridgeContext bridgeContext, GraphicsNode rootNode, Dimension2D size) {
+        this.bridgeContext = bridgeContext;
+        this.rootNode = rootNode;
+        this.size = size;
+    }
+
+    static SvgDocument parse(File source) throws IOException {
+        SAXSVGDocumentFactory documentFactory = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName());
+        SVGDocument document = documentFactory.createSVGDocument(source.toURI().toString());
+        // same viewport as used for reading the size, otherwise relative sizes would differ
+        Dimension2D viewportSize = SvgCodec.getViewportSize(document.getRootElement().getAttributeNS(null, "viewBox"));
+        UserAgent userAgent = new UserAgentAdapter() {
+            @Override
+            public Dimension2D getViewportSize() {
+                return viewportSize;
+            }
+        };
+        BridgeContext bridgeContext = new BridgeContext(userAgent, new DocumentLoader(userAgent));
+        // no scripting or animations, the document is only painted
+        bridgeContext.setDynamicState(BridgeContext.STATIC);
+        try{
+            GraphicsNode rootNode = new GVTBuilder().build(bridgeContext, document);
+            return new SvgDocument(bridgeContext, rootNode, bridgeContext.getDocumentSize());
+        } catch(BridgeException ex){
+            bridgeContext.dispose();
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public Dimension2D getSize() {
+        return (Dimension2D) size.clone();
+    }
+
+    @Override
+    public BufferedImage render(double regionX, double regionY, double regionWidth, double regionHeight, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = image.createGraphics();
+        try{
+            // lets Batik know the destination, required for filters working on the already painted pixels
+            graphics.setRenderingHint(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE, new WeakReference<>(image));
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            graphics.scale(width / (regionWidth * size.getWidth()), height / (regionHeight * size.getHeight()));
+            graphics.translate(-regionX * size.getWidth(), -regionY * size.getHeight());
+            rootNode.paint(graphics);
+        } finally{
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    @Override
+    public void close() {
+        bridgeContext.dispose();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Parsed vector source, able to render any region of itself at any size. Rendering fills caches of the parsed document,
+ * so it must not be called from multiple threads at once.
+ *
+ * @author Danny Althoff
+ */
+public interface VectorImage extends AutoCloseable {
+
+    /**
+     * @return size of the whole image in pixels, as declared by the document
+     */
+    Dimension2D getSize();
+
+    /**
+     * Renders a region of the image, scaled to exactly fill the requested size.
+     *
+     * @param regionX left border of the region, in fractions of the image width
+     * @param regionY top border of the region, in fractions of the image height
+     * @param regionWidth width of the region, in fractions of the image width
+     * @param regionHeight height of the region, in fractions of the image height
+     * @param width width of the rendered image
+     * @param height height of the rendered image
+     *
+     * @return rendered image of the type {@link BufferedImage#TYPE_INT_ARGB_PRE}
+     */
+    BufferedImage render(double regionX, double regionY, double regionWidth, double regionHeight, int width, int height);
+
+    /**
+     * Frees everything the parsed document is holding.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Codec for vector sources: instead of decoding pixels, the source gets parsed once and every requested size gets
+ * rendered directly from it, without any scaling.
+ *
+ * @author Danny Althoff
+ */
+public interface VectorImageCodec extends ImageCodec {
+
+    /**
+     * @param source the image file to parse
+     *
+     * @return parsed image, which has to be closed by the caller
+     *
+     * @throws IOException when the image could not be parsed
+     */
+    VectorImage parse(File source) throws IOException;
+
+    @Override
+    default BufferedImage read(File source) throws IOException {
+        return read(source, 0, 0);
+    }
+
+    /**
+     * Renders the whole image, at its declared size or scaled to cover the required size.
+     */
+    @Override
+    default BufferedImage read(File source, int requiredWidth, int requiredHeight) throws IOException {
+        try(VectorImage vectorImage = parse(source)){
+            Dimension2D size = vectorImage.getSize();
+            double scale = 1;
+            if( requiredWidth > 0 && requiredHeight > 0 ){
+                scale = Math.max(requiredWidth / size.getWidth(), requiredHeight / size.getHeight());
+            }
+            int width = Math.max(1, (int) Math.ceil(size.getWidth() * scale));
+            int height = Math.max(1, (int) Math.ceil(size.getHeight() * scale));
+            return vectorImage.render(0, 0, 1, 1, width, height);
+        }
+    }
+}
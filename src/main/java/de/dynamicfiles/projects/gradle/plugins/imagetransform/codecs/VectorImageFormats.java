@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs;
+
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Source formats describing images as shapes instead of pixels, these are rendered directly at every requested size
+ * by a {@link VectorImageCodec}.
+ *
+ * @author Danny Althoff
+ */
+public enum VectorImageFormats implements ImageFormat {
+
+    SVG("svg");
+
+    private final String extension;
+
+    VectorImageFormats(String extension) {
+        this.extension = extension;
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+
+    @Override
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.containers;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes ICNS-files with PNG-compressed entries (supported since OS X 10.7), without using the incomplete ICNS-writer
+ * of commons-imaging (https://issues.apache.org/jira/browse/IMAGING-188). Sizes which are the retina-variant of a
+ * smaller size are registered for both types, like iconutil does. 48x48 has no PNG-compressed type, it is stored using
+ * the legacy types instead (RLE-compressed RGB-channels plus an uncompressed alpha-mask).
+ *
+ * @author Danny Althoff
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Apple_Icon_Image_format">Apple Icon Image format</a>
+ */
+public class IcnsContainerWriter implements IconContainerWriter {
+
+    private static final int HEADER_SIZE = 8;
+    private static final Map<Integer, String[]> ICON_TYPES_BY_SIZE = new HashMap<>();
+
+    private static final int LEGACY_SIZE = 48;
+    private static final String LEGACY_IMAGE_TYPE = "ih32";
+    private static final String LEGACY_MASK_TYPE = "h8mk";
+    // RLE of the legacy types: repeating 3 up to 130 times, or up to 128 literal bytes
+    private static final int MIN_RUN_LENGTH = 3;
+    private static final int MAX_RUN_LENGTH = 130;
+    private static final int MAX_LITERAL_LENGTH = 128;
+
+    static {
+        ICON_TYPES_BY_SIZE.put(16, new String[]{"icp4"});
+        ICON_TYPES_BY_SIZE.put(32, new String[]{"icp5", "ic11"});
+        ICON_TYPES_BY_SIZE.put(64, new String[]{"icp6", "ic12"});
+        ICON_TYPES_BY_SIZE.put(128, new String[]{"ic07"});
+        ICON_TYPES_BY_SIZE.put(256, new String[]{"ic08", "ic13"});
+        ICON_TYPES_BY_SIZE.put(512, new String[]{"ic09", "ic14"});
+        ICON_TYPES_BY_SIZE.put(1024, new String[]{"ic10"});
+    }
+
+    @Override
+    public void write(List<IconContainerImage> images, OutputStream outputStream) throws IOException {
+        List<String> iconTypes = new ArrayList<>();
+        List<byte[]> iconData = new ArrayList<>();
+        int totalLength = HEADER_SIZE;
+        for( IconContainerImage image : images ){
+            if( image.getWidth() == LEGACY_SIZE && image.getHeight() == LEGACY_SIZE ){
+                int[] pixels = decodePixels(image);
+                byte[] compressedChannels = compressChannels(pixels);
+                byte[] mask = extractMask(pixels);
+                iconTypes.add(LEGACY_IMAGE_TYPE);
+                iconData.add(compressedChannels);
+                iconTypes.add(LEGACY_MASK_TYPE);
+                iconData.add(mask);
+                totalLength += HEADER_SIZE + compressedChannels.length + HEADER_SIZE + mask.length;
+                continue;
+            }
+            String[] iconTypesOfSize = ICON_TYPES_BY_SIZE.get(image.getWidth());
+            if( image.getWidth() != image.getHeight() || iconTypesOfSize == null ){
+                throw new IOException("ICNS-files only support the square sizes 16, 32, 48, 64, 128, 256, 512 and 1024, got " + image.getWidth() + "x" + image.getHeight());
+            }
+            for( String iconType : iconTypesOfSize ){
+                iconTypes.add(iconType);
+                iconData.add(image.getPngData());
+                totalLength += HEADER_SIZE + image.getPngData().length;
+            }
+        }
+
+        // all numbers are big-endian
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put("icns".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(totalLength);
+        outputStream.write(header.array());
+
+        for( int index = 0; index < iconTypes.size(); index++ ){
+            ByteBuffer entryHeader = ByteBuffer.allocate(HEADER_SIZE);
+            entryHeader.put(iconTypes.get(index).getBytes(StandardCharsets.US_ASCII));
+            entryHeader.putInt(HEADER_SIZE + iconData.get(index).length);
+            outputStream.write(entryHeader.array());
+            outputStream.write(iconData.get(index));
+        }
+    }
+
+    private static int[] decodePixels(IconContainerImage image) throws IOException {
+        BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(image.getPngData()));
+        if( decodedImage == null ){
+            throw new IOException("Could not decode PNG-image of " + image.getWidth() + "x" + image.getHeight());
+        }
+        return decodedImage.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Compresses the red, green and blue channel one after another.
+     */
+    private static byte[] compressChannels(int[] pixels) {
+        ByteArrayOutputStream compressedChannels = new ByteArrayOutputStream();
+        for( int shift = 16; shift >= 0; shift -= 8 ){
+            int index = 0;
+            while( index < pixels.length ){
+                int value = getChannel(pixels, index, shift);
+                int runLength = 1;
+                while( index + runLength < pixels.length && runLength < MAX_RUN_LENGTH && getChannel(pixels, index + runLength, shift) == value ){
+                    runLength++;
+                }
+                if( runLength >= MIN_RUN_LENGTH ){
+                    compressedChannels.write(0x80 + runLength - MIN_RUN_LENGTH);
+                    compressedChannels.write(value);
+                    index += runLength;
+                    continue;
+                }
+                // literal bytes up to the next run
+                int literalStart = index;
+                while( index < pixels.length && index - literalStart < MAX_LITERAL_LENGTH && !isRunStart(pixels, index, shift) ){
+                    index++;
+                }
+                compressedChannels.write(index - literalStart - 1);
+                for( int literal = literalStart; literal < index; literal++ ){
+                    compressedChannels.write(getChannel(pixels, literal, shift));
+                }
+            }
+        }
+        return compressedChannels.toByteArray();
+    }
+
+    private static boolean isRunStart(int[] pixels, int index, int shift) {
+        if( index + MIN_RUN_LENGTH > pixels.length ){
+            return false;
+        }
+        int value = getChannel(pixels, index, shift);
+        return getChannel(pixels, index + 1, shift) == value && getChannel(pixels, index + 2, shift) == value;
+    }
+
+    private static int getChannel(int[] pixels, int index, int shift) {
+        return (pixels[index] >> shift) & 0xFF;
+    }
+
+    private static byte[] extractMask(int[] pixels) {
+        byte[] mask = new byte[pixels.length];
+        for( int index = 0; index < pixels.length; index++ ){
+            mask[index] = (byte) (pixels[index] >>> 24);
+        }
+        return mask;
+    }
+}
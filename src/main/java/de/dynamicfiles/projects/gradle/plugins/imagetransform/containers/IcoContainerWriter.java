@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.containers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Writes ICO-files with PNG-compressed entries (supported since Windows Vista), so the PNG data can be embedded as it
+ * is.
+ *
+ * @author Danny Althoff
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/ICO_(file_format)">ICO file format</a>
+ */
+public class IcoContainerWriter implements IconContainerWriter {
+
+    private static final int HEADER_SIZE = 6;
+    private static final int DIRECTORY_ENTRY_SIZE = 16;
+    private static final int MAX_SIZE = 256;
+
+    @Override
+    public void write(List<IconContainerImage> images, OutputStream outputStream) throws IOException {
+        for( IconContainerImage image : images ){
+            if( image.getWidth() > MAX_SIZE || image.getHeight() > MAX_SIZE ){
+                throw new IOException("ICO-files do not support images bigger than 256x256, got " + image.getWidth() + "x" + image.getHeight());
+            }
+        }
+
+        ByteBuffer directory = ByteBuffer.allocate(HEADER_SIZE + DIRECTORY_ENTRY_SIZE * images.size()).order(ByteOrder.LITTLE_ENDIAN);
+        // reserved
+        directory.putShort((short) 0);
+        // type: icon
+        directory.putShort((short) 1);
+        directory.putShort((short) images.size());
+
+        int imageOffset = directory.capacity();
+        for( IconContainerImage image : images ){
+            // 256 is stored as 0
+            directory.put((byte) (image.getWidth() % MAX_SIZE));
+            directory.put((byte) (image.getHeight() % MAX_SIZE));
+            // no palette
+            directory.put((byte) 0);
+            // reserved
+            directory.put((byte) 0);
+            // color planes
+            directory.putShort((short) 1);
+            // bits per pixel
+            directory.putShort((short) 32);
+            directory.putInt(image.getPngData().length);
+            directory.putInt(imageOffset);
+            imageOffset += image.getPngData().length;
+        }
+
+        outputStream.write(directory.array());
+        for( IconContainerImage image : images ){
+            outputStream.write(image.getPngData());
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.containers;
+
+/**
+ * One resolution of a multi-resolution icon file, already encoded as PNG.
+ *
+ * @author Danny Althoff
+ */
+public class IconContainerImage {
+
+    private final int width;
+    private final int height;
+    private final byte[] pngData;
+
+    public IconContainerImage(int width, int height, byte[] pngData) {
+        this.width = width;
+        this.height = height;
+        this.pngData = pngData;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public byte[] getPngData() {
+        return pngData;
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.containers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+
+/**
+ * Writes multiple resolutions of the same image into one icon file.
+ *
+ * @author Danny Althoff
+ */
+public interface IconContainerWriter {
+
+    void write(List<IconContainerImage> images, OutputStream outputStream) throws IOException;
+
+    static IconContainerWriter forFormat(ImageFormat format) {
+        if( format == ImageFormats.ICO ){
+            return new IcoContainerWriter();
+        }
+        if( format == ImageFormats.ICNS ){
+            return new IcnsContainerWriter();
+        }
+        throw new IllegalArgumentException("No multi-resolution container available for format: " + format.getName());
+    }
+}
@@ -15,8 +15,16 @@
  */
 package de.dynamicfiles.projects.gradle.plugins.imagetransform.dto;
 
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 import org.apache.commons.imaging.ImageFormats;
 import org.gradle.api.GradleException;
 
@@ -26,14 +34,32 @@ import org.gradle.api.GradleException;
  */
 public class ImageFormatRequest {
 
+    private static final List<ImageFormats> SUPPORTED_FORMATS = Arrays.asList(ImageFormats.PNG, ImageFormats.ICO, ImageFormats.BMP, ImageFormats.ICNS);
+    private static final List<String> BATCH_OPTIONS = Arrays.asList("formats", "resolutions", "destination", "appendResolution", "container");
+
     private List<ImageTransformEntry> transformEntries = new ArrayList<>();
 
     private String sourcePath = null;
 
+    private ScalingFilter scalingFilter = null;
+
     public void setSource(String singleSourcePath) {
         sourcePath = singleSourcePath;
     }
 
+    public ScalingFilter getScalingFilter() {
+        return scalingFilter;
+    }
+
+    /**
+     * Sets the filter used for all following entries, e.g. "lanczos3". When not set, "lanczos3" is used.
+     *
+     * @param scalingFilter name of the filter
+     */
+    public void setScalingFilter(String scalingFilter) {
+        this.scalingFilter = ScalingFilter.fromName(scalingFilter);
+    }
+
     public List<ImageTransformEntry> getTransformEntries() {
         return transformEntries;
     }
@@ -43,15 +69,15 @@ public class ImageFormatRequest {
     }
 
     public void toPNG(String resolution, String destination, boolean appendResolution) {
-        ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
+        addTransformEntry(ImageFormats.PNG, resolution, destination, appendResolution);
+    }
 
-        imageTransformEntry.resolution = resolution;
-        imageTransformEntry.destination = destination;
-        imageTransformEntry.source = sourcePath;
-        imageTransformEntry.appendResolution = appendResolution;
-        imageTransformEntry.format = ImageFormats.PNG;
+    public void toPNG(List<String> resolutions, String destination) {
+        addTransformEntries(ImageFormats.PNG, resolutions, destination, true);
+    }
 
-        transformEntries.add(imageTransformEntry);
+    public void toPNG(List<String> resolutions, List<String> destinations) {
+        addTransformEntries(ImageFormats.PNG, resolutions, destinations);
     }
 
     public void toICO(String resolution, String destination) {
@@ -59,15 +85,15 @@ public class ImageFormatRequest {
     }
 
     public void toICO(String resolution, String destination, boolean appendResolution) {
-        ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
+        addTransformEntry(ImageFormats.ICO, resolution, destination, appendResolution);
+    }
 
-        imageTransformEntry.resolution = resolution;
-        imageTransformEntry.destination = destination;
-        imageTransformEntry.source = sourcePath;
-        imageTransformEntry.appendResolution = appendResolution;
-        imageTransformEntry.format = ImageFormats.ICO;
+    public void toICO(List<String> resolutions, String destination) {
+        addTransformEntries(ImageFormats.ICO, resolutions, destination, true);
+    }
 
-        transformEntries.add(imageTransformEntry);
+    public void toICO(List<String> resolutions, List<String> destinations) {
+        addTransformEntries(ImageFormats.ICO, resolutions, destinations);
     }
 
     public void toBMP(String resolution, String destination) {
@@ -75,15 +101,15 @@ public class ImageFormatRequest {
     }
 
     public void toBMP(String resolution, String destination, boolean appendResolution) {
-        ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
+        addTransformEntry(ImageFormats.BMP, resolution, destination, appendResolution);
+    }
 
-        imageTransformEntry.resolution = resolution;
-        imageTransformEntry.destination = destination;
-        imageTransformEntry.source = sourcePath;
-        imageTransformEntry.appendResolution = appendResolution;
-        imageTransformEntry.format = ImageFormats.BMP;
+    public void toBMP(List<String> resolutions, String destination) {
+        addTransformEntries(ImageFormats.BMP, resolutions, destination, true);
+    }
 
-        transformEntries.add(imageTransformEntry);
+    public void toBMP(List<String> resolutions, List<String> destinations) {
+        addTransformEntries(ImageFormats.BMP, resolutions, destinations);
     }
 
     public void toICNS(String resolution, String destination) {
@@ -91,90 +117,143 @@ public class ImageFormatRequest {
     }
 
     public void toICNS(String resolution, String destination, boolean appendResolution) {
-        ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
-
-        imageTransformEntry.resolution = resolution;
-        imageTransformEntry.destination = destination;
-        imageTransformEntry.source = sourcePath;
-        imageTransformEntry.appendResolution = appendResolution;
-        imageTransformEntry.format = ImageFormats.ICNS;
+        addTransformEntry(ImageFormats.ICNS, resolution, destination, appendResolution);
+    }
 
-        transformEntries.add(imageTransformEntry);
+    public void toICNS(List<String> resolutions, String destination) {
+        addTransformEntries(ImageFormats.ICNS, resolutions, destination, true);
     }
 
-    public void toPNG(List<String> resolutions, String destination) {
-        toPNG(resolutions, destination, true);
+    public void toICNS(List<String> resolutions, List<String> destinations) {
+        addTransformEntries(ImageFormats.ICNS, resolutions, destinations);
     }
 
-    private void toPNG(List<String> resolutions, String destination, boolean appendResolution) {
-        resolutions.stream().forEach(resolution -> {
-            toPNG(resolution, destination, appendResolution);
+    /**
+     * Requests multiple formats and resolutions at once, like
+     * <code>to(formats: ['png', 'ico'], resolutions: ['64x64', '128x128'], destination: 'build/jfx/app/*')</code>.
+     * Supported options are:
+     * <ul>
+     * <li>formats: one or more of "png", "ico", "bmp" and "icns"</li>
+     * <li>resolutions: one or more resolutions</li>
+     * <li>destination: target file, or folder ending with "*"</li>
+     * <li>appendResolution: appends the resolution to the filename, defaults to true when having multiple
+     * resolutions</li>
+     * <li>container: true to write all resolutions into one multi-resolution file per format (ICO and ICNS only)</li>
+     * </ul>
+     *
+     * @param options requested formats, resolutions and destination
+     */
+    public void to(Map<String, ?> options) {
+        Set<String> unknownOptions = new TreeSet<>(options.keySet());
+        unknownOptions.removeAll(BATCH_OPTIONS);
+        if( !unknownOptions.isEmpty() ){
+            throw new GradleException("Unknown options " + unknownOptions + ", supported options are: " + BATCH_OPTIONS);
+        }
+        List<ImageFormats> formats = asList(options.get("formats")).stream()
+                .map(ImageFormatRequest::toSupportedFormat)
+                .collect(Collectors.toList());
+        List<String> resolutions = asList(options.get("resolutions")).stream()
+                .map(String::valueOf)
+                .collect(Collectors.toList());
+        Object destination = options.get("destination");
+        if( formats.isEmpty() || resolutions.isEmpty() || destination == null ){
+            throw new GradleException("It is required to have formats, resolutions and destination.");
+        }
+        boolean container = Boolean.TRUE.equals(options.get("container"));
+        boolean appendResolution = options.containsKey("appendResolution") ? Boolean.TRUE.equals(options.get("appendResolution")) : resolutions.size() > 1;
+        formats.forEach(format -> {
+            if( container ){
+                if( format != ImageFormats.ICO && format != ImageFormats.ICNS ){
+                    throw new GradleException("Only ICO and ICNS are supported as multi-resolution files, got " + format.getName());
+                }
+                toContainer(resolutions, String.valueOf(destination), format);
+            } else {
+                addTransformEntries(format, resolutions, String.valueOf(destination), appendResolution);
+            }
         });
     }
 
-    public void toICO(List<String> resolutions, String destination) {
-        toICO(resolutions, destination, true);
+    private static List<?> asList(Object value) {
+        if( value == null ){
+            return Collections.emptyList();
+        }
+        if( value instanceof Collection ){
+            return new ArrayList<>((Collection<?>) value);
+        }
+        return Collections.singletonList(value);
     }
 
-    private void toICO(List<String> resolutions, String destination, boolean appendResolution) {
-        resolutions.stream().forEach(resolution -> {
-            toICO(resolution, destination, appendResolution);
-        });
+    private static ImageFormats toSupportedFormat(Object format) {
+        return SUPPORTED_FORMATS.stream()
+                .filter(supportedFormat -> supportedFormat == format || supportedFormat.name().equalsIgnoreCase(String.valueOf(format).trim()))
+                .findFirst()
+                .orElseThrow(() -> new GradleException("Unsupported format " + format + ", supported formats are: " + SUPPORTED_FORMATS));
     }
 
-    public void toBMP(List<String> resolutions, String destination) {
-        toBMP(resolutions, destination, true);
-    }
+    private void addTransformEntry(ImageFormats format, String resolution, String destination, boolean appendResolution) {
+        ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
 
-    private void toBMP(List<String> resolutions, String destination, boolean appendResolution) {
-        resolutions.stream().forEach(resolution -> {
-            toBMP(resolution, destination, appendResolution);
-        });
+        imageTransformEntry.resolution = resolution;
+        imageTransformEntry.parsedResolution = parseResolution(resolution);
+        imageTransformEntry.destination = destination;
+        imageTransformEntry.source = sourcePath;
+        imageTransformEntry.appendResolution = appendResolution;
+        imageTransformEntry.scalingFilter = scalingFilter;
+        imageTransformEntry.format = format;
+
+        transformEntries.add(imageTransformEntry);
     }
 
-    public void toICNS(List<String> resolutions, String destination) {
-        toICNS(resolutions, destination, true);
+    /**
+     * Invalid resolutions are not failing here, they get reported and skipped when processing the entries.
+     */
+    private static Resolution parseResolution(String resolution) {
+        try{
+            return Resolution.parse(resolution);
+        } catch(IllegalArgumentException ex){
+            return null;
+        }
     }
 
-    private void toICNS(List<String> resolutions, String destination, boolean appendResolution) {
+    private void addTransformEntries(ImageFormats format, List<String> resolutions, String destination, boolean appendResolution) {
         resolutions.stream().forEach(resolution -> {
-            toICNS(resolution, destination, appendResolution);
+            addTransformEntry(format, resolution, destination, appendResolution);
         });
     }
 
-    public void toPNG(List<String> resolutions, List<String> destinations) {
+    private void addTransformEntries(ImageFormats format, List<String> resolutions, List<String> destinations) {
         if( resolutions.size() != destinations.size() ){
             throw new GradleException("It is required to have resolutions being same size as destinations.");
         }
         for( int index = 0; index < resolutions.size(); index += 1 ){
-            toPNG(resolutions.get(index), destinations.get(index));
+            addTransformEntry(format, resolutions.get(index), destinations.get(index), false);
         }
     }
 
-    public void toICO(List<String> resolutions, List<String> destinations) {
-        if( resolutions.size() != destinations.size() ){
-            throw new GradleException("It is required to have resolutions being same size as destinations.");
-        }
-        for( int index = 0; index < resolutions.size(); index += 1 ){
-            toICO(resolutions.get(index), destinations.get(index));
-        }
+    public void toICOContainer(List<String> resolutions, String destination) {
+        toContainer(resolutions, destination, ImageFormats.ICO);
     }
 
-    public void toBMP(List<String> resolutions, List<String> destinations) {
-        if( resolutions.size() != destinations.size() ){
-            throw new GradleException("It is required to have resolutions being same size as destinations.");
-        }
-        for( int index = 0; index < resolutions.size(); index += 1 ){
-            toBMP(resolutions.get(index), destinations.get(index));
-        }
+    public void toICNSContainer(List<String> resolutions, String destination) {
+        toContainer(resolutions, destination, ImageFormats.ICNS);
     }
 
-    public void toICNS(List<String> resolutions, List<String> destinations) {
-        if( resolutions.size() != destinations.size() ){
-            throw new GradleException("It is required to have resolutions being same size as destinations.");
-        }
-        for( int index = 0; index < resolutions.size(); index += 1 ){
-            toICNS(resolutions.get(index), destinations.get(index));
-        }
+    private void toContainer(List<String> resolutions, String destination, ImageFormats format) {
+        List<String> containerResolutions = new ArrayList<>(resolutions);
+        containerResolutions.forEach(resolution -> {
+            ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
+
+            imageTransformEntry.resolution = resolution;
+            imageTransformEntry.parsedResolution = parseResolution(resolution);
+            imageTransformEntry.destination = destination;
+            imageTransformEntry.source = sourcePath;
+            imageTransformEntry.appendResolution = false;
+            imageTransformEntry.format = format;
+            // containers are created by the resampling engine only
+            imageTransformEntry.scalingFilter = scalingFilter == null ? ScalingFilter.DEFAULT : scalingFilter;
+            imageTransformEntry.containerResolutions = containerResolutions;
+
+            transformEntries.add(imageTransformEntry);
+        });
     }
 }
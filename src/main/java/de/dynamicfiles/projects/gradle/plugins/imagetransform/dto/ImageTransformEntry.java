@@ -15,28 +15,66 @@
  */
 package de.dynamicfiles.projects.gradle.plugins.imagetransform.dto;
 
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.io.Serializable;
+import java.util.List;
 import org.apache.commons.imaging.ImageFormat;
 
 /**
  *
  * @author Danny Althoff
  */
-public class ImageTransformEntry {
+public class ImageTransformEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public String source = null;
     public String destination = null;
     public String resolution = null;
+    // parsed while configuring, null when the resolution is invalid
+    public Resolution parsedResolution = null;
     public boolean appendResolution = false;
     public ImageFormat format = null;
+    // detected while processing the entries, used to select the codec for reading
+    public ImageFormat sourceFormat = null;
+    public ScalingFilter scalingFilter = null;
+    // when set, all entries having the same destination are written into one multi-resolution file
+    public List<String> containerResolutions = null;
 
     public ImageTransformEntry getCopy() {
         ImageTransformEntry imageTransformEntry = new ImageTransformEntry();
         imageTransformEntry.source = source;
         imageTransformEntry.destination = destination;
         imageTransformEntry.resolution = resolution;
+        imageTransformEntry.parsedResolution = parsedResolution;
         imageTransformEntry.appendResolution = appendResolution;
         imageTransformEntry.format = format;
+        imageTransformEntry.sourceFormat = sourceFormat;
+        imageTransformEntry.scalingFilter = scalingFilter;
+        imageTransformEntry.containerResolutions = containerResolutions;
         return imageTransformEntry;
     }
 
+    /**
+     * Describes all parameters having influence on the generated destination file, used to detect changed entries.
+     *
+     * @return fingerprint of all transformation parameters
+     */
+    public String getParameterFingerprint() {
+        return getResolutionFingerprint() + "|" + format.getName() + "|" + destination + "|" + appendResolution + "|" + scalingFilter;
+    }
+
+    /**
+     * Entries of a multi-resolution container share the same destination, so they all need to describe the whole
+     * container.
+     *
+     * @return requested resolution, or all resolutions of the container
+     */
+    public String getResolutionFingerprint() {
+        if( containerResolutions != null ){
+            return String.join(",", containerResolutions);
+        }
+        return resolution;
+    }
+
 }
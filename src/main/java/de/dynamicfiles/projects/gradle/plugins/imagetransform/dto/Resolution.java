@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.dto;
+
+import java.awt.Dimension;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed resolution of an entry. Supported are:
+ * <ul>
+ * <li>"64x64": fixed width and height (a trailing "x" like in "64x64x" is ignored)</li>
+ * <li>"64x*" or "*x64": only width or height, the other one keeps the aspect ratio of the source</li>
+ * <li>"50%": percentage of the source size</li>
+ * <li>"64x64@2x": all of the above multiplied by some scale factor, e.g. for high-density displays</li>
+ * <li>"64x64:fill", "64x64:fit" or "64x64:crop": how the source gets into the requested size, "fill" stretches
+ * the source (default), "fit" keeps the aspect ratio and pads with transparent pixels, "crop" keeps the aspect ratio
+ * and cuts off the overlapping parts</li>
+ * </ul>
+ *
+ * Every distinct specification gets parsed only once, all entries share the same instance (as long as there are not
+ * too many different specifications).
+ *
+ * @author Danny Althoff
+ */
+public final class Resolution implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Pattern SPECIFICATION = Pattern.compile("\\s*(?:(\\d+)\\s*%|(\\d+|\\*)\\s*x\\s*(\\d+|\\*)\\s*x?)\\s*(?:@\\s*(\\d+(?:\\.\\d+)?)\\s*x)?\\s*(?::\\s*(fill|fit|crop))?\\s*", Pattern.CASE_INSENSITIVE);
+    // bounded, as build-scripts might generate any number of different specifications
+    private static final int MAX_PARSED_RESOLUTIONS = 256;
+    private static final Map<String, Resolution> PARSED_RESOLUTIONS = Collections.synchronizedMap(new LinkedHashMap<String, Resolution>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Resolution> eldest) {
+            return size() > MAX_PARSED_RESOLUTIONS;
+        }
+    });
+
+    /**
+     * How the source gets scaled into the requested size.
+     */
+    public enum Mode {
+        FILL, FIT, CROP
+    }
+
+    // 0 when derived from the source
+    private final int width;
+    private final int height;
+    // 0 when not relative to the source
+    private final int percentage;
+    private final double scaleFactor;
+    private final Mode mode;
+
+    private Resolution(int width, int height, int percentage, double scaleFactor, Mode mode) {
+        this.width = width;
+        this.height = height;
+        this.percentage = percentage;
+        this.scaleFactor = scaleFactor;
+        this.mode = mode;
+    }
+
+    /**
+     * @param specification resolution like "64x64", "64x*", "50%", "64x64@2x" or "64x64:crop"
+     *
+     * @return the parsed resolution
+     *
+     * @throws IllegalArgumentException when the specification is invalid
+     */
+    public static Resolution parse(String specification) {
+        if( specification == null ){
+            throw new IllegalArgumentException("Missing resolution");
+        }
+        return PARSED_RESOLUTIONS.computeIfAbsent(specification, Resolution::parseSpecification);
+    }
+
+    private static Resolution parseSpecification(String specification) {
+        Matcher matcher = SPECIFICATION.matcher(specification);
+        if( !matcher.matches() ){
+            throw new IllegalArgumentException("Invalid resolution: " + specification);
+        }
+        int percentage = parseDimension(specification, matcher.group(1));
+        int width = parseDimension(specification, matcher.group(2));
+        int height = parseDimension(specification, matcher.group(3));
+        double scaleFactor = matcher.group(4) == null ? 1 : Double.parseDouble(matcher.group(4));
+        Mode mode = matcher.group(5) == null ? Mode.FILL : Mode.valueOf(matcher.group(5).toUpperCase());
+
+        if( matcher.group(1) == null && width == 0 && height == 0 ){
+            throw new IllegalArgumentException("Width and height can't both be derived from the source: " + specification);
+        }
+        if( scaleFactor <= 0 ){
+            throw new IllegalArgumentException("Scale factor has to be greater than zero: " + specification);
+        }
+        if( mode != Mode.FILL && (width == 0 || height == 0) ){
+            throw new IllegalArgumentException("Fit and crop require width and height: " + specification);
+        }
+        if( Math.max(width, height) * scaleFactor > Integer.MAX_VALUE ){
+            throw new IllegalArgumentException("Resolution is too big: " + specification);
+        }
+        return new Resolution(width, height, percentage, scaleFactor, mode);
+    }
+
+    private static int parseDimension(String specification, String dimension) {
+        if( dimension == null || "*".equals(dimension) ){
+            return 0;
+        }
+        try{
+            int parsedDimension = Integer.parseInt(dimension, 10);
+            if( parsedDimension > 0 ){
+                return parsedDimension;
+            }
+        } catch(NumberFormatException ex){
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid resolution: " + specification);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPercentage() {
+        return percentage;
+    }
+
+    public double getScaleFactor() {
+        return scaleFactor;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return true when the size depends on the size of the source
+     */
+    public boolean isRelative() {
+        return width == 0 || height == 0;
+    }
+
+    /**
+     * Calculates the size of the resulting image.
+     *
+     * @param sourceWidth width of the source, only used when relative
+     * @param sourceHeight height of the source, only used when relative
+     *
+     * @return size of the resulting image
+     *
+     * @throws IllegalArgumentException when the resulting image would be too big
+     */
+    public Dimension getSize(int sourceWidth, int sourceHeight) {
+        double resultWidth;
+        double resultHeight;
+        if( percentage > 0 ){
+            resultWidth = sourceWidth * percentage / 100d;
+            resultHeight = sourceHeight * percentage / 100d;
+        } else if( width == 0 ){
+            resultWidth = (double) sourceWidth * height / sourceHeight;
+            resultHeight = height;
+        } else if( height == 0 ){
+            resultWidth = width;
+            resultHeight = (double) sourceHeight * width / sourceWidth;
+        } else {
+            resultWidth = width;
+            resultHeight = height;
+        }
+        return new Dimension(toPixels(resultWidth * scaleFactor), toPixels(resultHeight * scaleFactor));
+    }
+
+    private int toPixels(double size) {
+        long pixels = Math.max(1, Math.round(size));
+        if( pixels > Integer.MAX_VALUE ){
+            throw new IllegalArgumentException(String.format("Resolution %s results in %.0f pixels, which is too big", this, size));
+        }
+        return (int) pixels;
+    }
+
+    /**
+     * @return representation usable inside filenames, like "64x64", "64w", "64h", "50pct" or "64x64@2x-crop"
+     */
+    public String toFilenameToken() {
+        StringBuilder filenameToken = new StringBuilder();
+        if( percentage > 0 ){
+            filenameToken.append(percentage).append("pct");
+        } else if( width == 0 ){
+            filenameToken.append(height).append('h');
+        } else if( height == 0 ){
+            filenameToken.append(width).append('w');
+        } else {
+            filenameToken.append(width).append('x').append(height);
+        }
+        if( scaleFactor != 1 ){
+            filenameToken.append('@').append(formatScaleFactor()).append('x');
+        }
+        if( mode != Mode.FILL ){
+            filenameToken.append('-').append(mode.name().toLowerCase());
+        }
+        return filenameToken.toString();
+    }
+
+    private String formatScaleFactor() {
+        if( scaleFactor == Math.rint(scaleFactor) ){
+            return String.valueOf((long) scaleFactor);
+        }
+        return String.valueOf(scaleFactor);
+    }
+
+    /**
+     * Keeps deserialized resolutions (like inside the worker process) shared too.
+     */
+    private Object readResolve() {
+        return PARSED_RESOLUTIONS.computeIfAbsent(toString(), specification -> this);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if( !(other instanceof Resolution) ){
+            return false;
+        }
+        Resolution otherResolution = (Resolution) other;
+        return width == otherResolution.width && height == otherResolution.height && percentage == otherResolution.percentage && Double.compare(scaleFactor, otherResolution.scaleFactor) == 0 && mode == otherResolution.mode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(width, height, percentage, scaleFactor, mode);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder specification = new StringBuilder();
+        if( percentage > 0 ){
+            specification.append(percentage).append('%');
+        } else {
+            specification.append(width == 0 ? "*" : String.valueOf(width)).append('x').append(height == 0 ? "*" : String.valueOf(height));
+        }
+        if( scaleFactor != 1 ){
+            specification.append('@').append(formatScaleFactor()).append('x');
+        }
+        if( mode != Mode.FILL ){
+            specification.append(':').append(mode.name().toLowerCase());
+        }
+        return specification.toString();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics;
+
+import java.io.Serializable;
+
+/**
+ *
+ * @author Danny Althoff
+ */
+final class StageMeasurement implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String source;
+    final TransformStage stage;
+    // source format for reading/decoding, target format for encoding/writing, null for scaling
+    final String format;
+    final long nanos;
+    final long bytes;
+    final long pixels;
+
+    StageMeasurement(String source, TransformStage stage, String format, long nanos, long bytes, long pixels) {
+        this.source = source;
+        this.stage = stage;
+        this.format = format;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.pixels = pixels;
+    }
+
+}
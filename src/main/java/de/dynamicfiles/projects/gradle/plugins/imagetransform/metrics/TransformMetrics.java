@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics;
+
+import groovy.json.JsonOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the duration, bytes and pixels of every stage while transforming, called from all worker threads.
+ *
+ * @author Danny Althoff
+ */
+public class TransformMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int SLOWEST_SOURCES_COUNT = 10;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final ConcurrentLinkedQueue<StageMeasurement> measurements = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private long durationNanos = -1;
+    private int transformedEntries = 0;
+    private int failedEntries = 0;
+
+    /**
+     * Records one finished stage.
+     *
+     * @param source the source image this stage was working on
+     * @param stage the stage
+     * @param format source- or target-format, or null when not related to any format
+     * @param startedNanos value of System.nanoTime() when the stage started
+     * @param bytes bytes read or written, 0 if not applicable
+     * @param pixels pixels decoded or produced, 0 if not applicable
+     */
+    public void record(String source, TransformStage stage, String format, long startedNanos, long bytes, long pixels) {
+        measurements.add(new StageMeasurement(source, stage, format, System.nanoTime() - startedNanos, bytes, pixels));
+    }
+
+    /**
+     * Adds all measurements recorded by another process.
+     *
+     * @param otherMetrics metrics of the other process
+     */
+    public void merge(TransformMetrics otherMetrics) {
+        measurements.addAll(otherMetrics.measurements);
+    }
+
+    public void finish(int transformedEntries, int failedEntries) {
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.transformedEntries = transformedEntries;
+        this.failedEntries = failedEntries;
+    }
+
+    /**
+     * Megapixels produced by scaling, per second of the whole transformation.
+     *
+     * @return throughput
+     */
+    public double getMegapixelsPerSecond() {
+        long producedPixels = measurements.stream()
+                .filter(measurement -> measurement.stage == TransformStage.SCALE)
+                .mapToLong(measurement -> measurement.pixels)
+                .sum();
+        long wallNanos = durationNanos < 0 ? System.nanoTime() - startNanos : durationNanos;
+        if( wallNanos <= 0 ){
+            return 0;
+        }
+        return producedPixels / 1_000_000d / (wallNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public Map<String, Object> toReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationMillis", toMillis(durationNanos));
+        report.put("transformedEntries", transformedEntries);
+        report.put("failedEntries", failedEntries);
+        report.put("megapixelsPerSecond", getMegapixelsPerSecond());
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for( TransformStage stage : TransformStage.values() ){
+            stages.put(stage.name(), summarize(measurements.stream().filter(measurement -> measurement.stage == stage).collect(Collectors.toList())));
+        }
+        report.put("stages", stages);
+
+        Map<String, Object> formats = new LinkedHashMap<>();
+        measurements.stream()
+                .filter(measurement -> measurement.format != null)
+                .collect(Collectors.groupingBy(measurement -> measurement.format, LinkedHashMap::new, Collectors.toList()))
+                .forEach((format, formatMeasurements) -> {
+                    formats.put(format, summarize(formatMeasurements));
+                });
+        report.put("formats", formats);
+
+        List<Object> slowestSources = new ArrayList<>();
+        measurements.stream()
+                .collect(Collectors.groupingBy(measurement -> measurement.source, Collectors.toList()))
+                .entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, List<StageMeasurement>> sourceMeasurements) -> getNanos(sourceMeasurements.getValue())).reversed())
+                .limit(SLOWEST_SOURCES_COUNT)
+                .forEach(sourceMeasurements -> {
+                    Map<String, Object> slowestSource = new LinkedHashMap<>();
+                    slowestSource.put("source", sourceMeasurements.getKey());
+                    slowestSource.putAll(summarize(sourceMeasurements.getValue()));
+                    slowestSources.add(slowestSource);
+                });
+        report.put("slowestSources", slowestSources);
+        return report;
+    }
+
+    public String toSummary() {
+        StringBuilder summary = new StringBuilder();
+        String lineSeparator = System.lineSeparator();
+        summary.append(String.format("Transformed %s entries (%s failed) in %.1f ms, %.2f megapixels/s", transformedEntries, failedEntries, toMillis(durationNanos), getMegapixelsPerSecond())).append(lineSeparator);
+
+        summary.append(lineSeparator).append("Time by stage (summed over all workers):").append(lineSeparator);
+        for( TransformStage stage : TransformStage.values() ){
+            appendSummaryLine(summary, stage.name(), measurements.stream().filter(measurement -> measurement.stage == stage).collect(Collectors.toList()));
+        }
+
+        summary.append(lineSeparator).append("Time by format:").append(lineSeparator);
+        measurements.stream()
+                .filter(measurement -> measurement.format != null)
+                .collect(Collectors.groupingBy(measurement -> measurement.format, Collectors.toList()))
+                .entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, List<StageMeasurement>> formatMeasurements) -> getNanos(formatMeasurements.getValue())).reversed())
+                .forEach(formatMeasurements -> appendSummaryLine(summary, formatMeasurements.getKey(), formatMeasurements.getValue()));
+
+        summary.append(lineSeparator).append("Slowest sources:").append(lineSeparator);
+        measurements.stream()
+                .collect(Collectors.groupingBy(measurement -> measurement.source, Collectors.toList()))
+                .entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, List<StageMeasurement>> sourceMeasurements) -> getNanos(sourceMeasurements.getValue())).reversed())
+                .limit(SLOWEST_SOURCES_COUNT)
+                .forEach(sourceMeasurements -> appendSummaryLine(summary, sourceMeasurements.getKey(), sourceMeasurements.getValue()));
+        return summary.toString();
+    }
+
+    /**
+     * Writes the report as JSON and the summary as text file.
+     *
+     * @param reportDirectory folder to write into, gets created if not existing
+     * @param reportName filename without extension
+     *
+     * @return the written JSON-file
+     *
+     * @throws IOException when the report could not be written
+     */
+    public File writeReport(File reportDirectory, String reportName) throws IOException {
+        Files.createDirectories(reportDirectory.toPath());
+        File jsonReport = new File(reportDirectory, reportName + ".json");
+        Files.write(jsonReport.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(toReport())).getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(reportDirectory, reportName + ".txt").toPath(), toSummary().getBytes(StandardCharsets.UTF_8));
+        return jsonReport;
+    }
+
+    private static Map<String, Object> summarize(List<StageMeasurement> stageMeasurements) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", stageMeasurements.size());
+        summary.put("millis", toMillis(getNanos(stageMeasurements)));
+        summary.put("bytes", stageMeasurements.stream().mapToLong(measurement -> measurement.bytes).sum());
+        summary.put("pixels", stageMeasurements.stream().mapToLong(measurement -> measurement.pixels).sum());
+        return summary;
+    }
+
+    private static void appendSummaryLine(StringBuilder summary, String name, List<StageMeasurement> stageMeasurements) {
+        summary.append(String.format("\t%10.1f ms %6sx %14s bytes %14s pixels\t%s",
+                toMillis(getNanos(stageMeasurements)), stageMeasurements.size(),
+                stageMeasurements.stream().mapToLong(measurement -> measurement.bytes).sum(),
+                stageMeasurements.stream().mapToLong(measurement -> measurement.pixels).sum(),
+                name)).append(System.lineSeparator());
+    }
+
+    private static long getNanos(List<StageMeasurement> stageMeasurements) {
+        return stageMeasurements.stream().mapToLong(measurement -> measurement.nanos).sum();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
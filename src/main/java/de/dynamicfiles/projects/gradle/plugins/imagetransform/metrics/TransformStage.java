@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics;
+
+/**
+ *
+ * @author Danny Althoff
+ */
+public enum TransformStage {
+    /**
+     * Inspecting the header of the source file (size and format).
+     */
+    READ,
+    /**
+     * Reading and decoding the source file into an image.
+     */
+    DECODE,
+    /**
+     * Scaling the decoded image into the requested resolution.
+     */
+    SCALE,
+    /**
+     * Encoding the scaled image into the requested format (in memory).
+     */
+    ENCODE,
+    /**
+     * Writing the encoded bytes into the destination file.
+     */
+    WRITE
+}
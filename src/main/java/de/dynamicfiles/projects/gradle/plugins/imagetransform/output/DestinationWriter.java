@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Writes generated files only when their content changed, keeping the modification time of unchanged files (so tasks
+ * using them are not getting outdated). Changed files are written into a temporary file next to the destination which
+ * gets moved over the destination afterwards, so an interrupted build never leaves a half-written file behind.
+ *
+ * @author Danny Althoff
+ */
+public final class DestinationWriter {
+
+    // mapping small files costs more than reading them
+    private static final long MAPPED_COMPARISON_THRESHOLD = 256 * 1024;
+    // mapped files can't be replaced on windows until the mapping got garbage-collected
+    private static final boolean MAPPED_COMPARISON_SUPPORTED = File.separatorChar == '/';
+
+    private DestinationWriter() {
+        // utility class
+    }
+
+    /**
+     * @param content bytes to write, position and limit stay unchanged
+     * @param destination file to write
+     *
+     * @return true when written, false when the destination already had the same content
+     *
+     * @throws IOException when the destination could not be read or written
+     */
+    public static boolean write(ByteBuffer content, Path destination) throws IOException {
+        if( hasContent(destination, content) ){
+            return false;
+        }
+        replace(destination, temporaryFile -> {
+            try(FileChannel temporaryFileChannel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)){
+                ByteBuffer remainingContent = content.duplicate();
+                while( remainingContent.hasRemaining() ){
+                    temporaryFileChannel.write(remainingContent);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Makes the destination a hardlink of an existing file, or a copy when the file system does not support that. As
+     * all destinations are replaced instead of overwritten, linked files stay independent of each other.
+     *
+     * @param existingFile the file to link
+     * @param destination file to create
+     *
+     * @return true when created, false when the destination already had the same content
+     *
+     * @throws IOException when the destination could not be created
+     */
+    public static boolean link(Path existingFile, Path destination) throws IOException {
+        if( Files.isRegularFile(destination) && Files.size(destination) == Files.size(existingFile) ){
+            if( Files.isSameFile(existingFile, destination) ){
+                return false;
+            }
+            try(FileChannel existingFileChannel = FileChannel.open(existingFile, StandardOpenOption.READ)){
+                if( hasContent(destination, readContent(existingFileChannel, existingFileChannel.size())) ){
+                    return false;
+                }
+            }
+        }
+        replace(destination, temporaryFile -> {
+            try{
+                Files.createLink(temporaryFile, existingFile);
+            } catch(UnsupportedOperationException | IOException ex){
+                // like different file systems, or not supported by the file system at all
+                Files.copy(existingFile, temporaryFile);
+            }
+        });
+        return true;
+    }
+
+    private static void replace(Path destination, TemporaryFileWriter temporaryFileWriter) throws IOException {
+        Path parentFolder = destination.toAbsolutePath().getParent();
+        Files.createDirectories(parentFolder);
+        // not using Files.createTempFile, that would restrict the permissions of the destination to the owner
+        Path temporaryFile = parentFolder.resolve("." + destination.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try{
+            temporaryFileWriter.write(temporaryFile);
+            try{
+                Files.move(temporaryFile, destination, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException ex){
+                Files.move(temporaryFile, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally{
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * @param destination file to check
+     * @param content expected bytes, position and limit stay unchanged
+     *
+     * @return true when the file exists having exactly that content
+     *
+     * @throws IOException when the file could not be read
+     */
+    public static boolean hasContent(Path destination, ByteBuffer content) throws IOException {
+        if( !Files.isRegularFile(destination) || Files.size(destination) != content.remaining() ){
+            return false;
+        }
+        try(FileChannel destinationChannel = FileChannel.open(destination, StandardOpenOption.READ)){
+            return readContent(destinationChannel, content.remaining()).equals(content);
+        }
+    }
+
+    private static ByteBuffer readContent(FileChannel fileChannel, long size) throws IOException {
+        if( MAPPED_COMPARISON_SUPPORTED && size >= MAPPED_COMPARISON_THRESHOLD ){
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        while( content.hasRemaining() ){
+            if( fileChannel.read(content) < 0 ){
+                break;
+            }
+        }
+        content.flip();
+        return content;
+    }
+
+    private interface TemporaryFileWriter {
+
+        void write(Path temporaryFile) throws IOException;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.output;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Growable in-memory buffer for encoded images, reused between encodings to avoid growing a new array (with all its
+ * copying) for every written file. Buffers are softly referenced while pooled, so they can be collected under memory
+ * pressure.
+ *
+ * @author Danny Althoff
+ */
+public final class EncodedImageBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    // keeping very big buffers would pin their memory inside the gradle daemon
+    private static final int MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+    private static final Deque<SoftReference<EncodedImageBuffer>> POOLED_BUFFERS = new ConcurrentLinkedDeque<>();
+
+    private EncodedImageBuffer() {
+        super(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return empty buffer, should be given back via {@link #release()}
+     */
+    public static EncodedImageBuffer acquire() {
+        for( SoftReference<EncodedImageBuffer> pooledBuffer = POOLED_BUFFERS.pollFirst(); pooledBuffer != null; pooledBuffer = POOLED_BUFFERS.pollFirst() ){
+            EncodedImageBuffer encodedImageBuffer = pooledBuffer.get();
+            if( encodedImageBuffer != null ){
+                encodedImageBuffer.reset();
+                return encodedImageBuffer;
+            }
+        }
+        return new EncodedImageBuffer();
+    }
+
+    /**
+     * Gives this buffer back to the pool, it must not be used afterwards.
+     */
+    public void release() {
+        if( buf.length <= MAX_POOLED_CAPACITY ){
+            POOLED_BUFFERS.offerFirst(new SoftReference<>(this));
+        }
+    }
+
+    /**
+     * @return the written bytes, not copied
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+}
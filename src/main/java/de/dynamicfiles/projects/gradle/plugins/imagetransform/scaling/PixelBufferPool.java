@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps pixel buffers for reuse, as the gradle daemon would otherwise allocate (and collect) the same big buffers on
+ * every build. Buffers are pooled by their dimensions and backing (heap or off-heap), the pool is bounded by its size
+ * and buffers not used for some time are evicted. All buffers are only softly referenced, so they never cause an
+ * OutOfMemoryError.
+ *
+ * Acquired buffers have undefined content, they have to be overwritten completely.
+ *
+ * @author Danny Althoff
+ */
+public final class PixelBufferPool {
+
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    // smaller intermediates are not worth the slower access of direct buffers
+    private static final int MIN_OFF_HEAP_PIXELS = 1024 * 1024;
+    private static final int[] ARGB_MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+
+    private static final Map<BufferKey, Deque<PooledBuffer>> POOLED_BUFFERS = new HashMap<>();
+    private static final List<Configuration> RUNNING_CONFIGURATIONS = new ArrayList<>();
+    private static long pooledBytes = 0;
+    private static long maxPooledBytes = Runtime.getRuntime().maxMemory() / 8;
+    private static boolean offHeapIntermediates = false;
+    private static ScheduledExecutorService idleBufferEvictor = null;
+
+    private PixelBufferPool() {
+        // utility class
+    }
+
+    /**
+     * The pool is shared by all tasks inside the same JVM. While tasks are running, it is bounded by the biggest size
+     * any of them configured (and keeps big intermediates off-heap when any of them wants that), so tasks running in
+     * parallel are never shrinking the pool of each other. The configuration of the last running task stays until the
+     * next task starts.
+     *
+     * @param maxPooledBytes maximum size of all pooled buffers, 0 disables pooling
+     * @param offHeapIntermediates true to keep big intermediates of the resampler outside of the heap
+     *
+     * @return configuration of the calling task, has to be closed when the task is done
+     */
+    public static synchronized Configuration configure(long maxPooledBytes, boolean offHeapIntermediates) {
+        Configuration configuration = new Configuration(maxPooledBytes, offHeapIntermediates);
+        RUNNING_CONFIGURATIONS.add(configuration);
+        applyRunningConfigurations();
+        return configuration;
+    }
+
+    private static synchronized void finish(Configuration configuration) {
+        if( RUNNING_CONFIGURATIONS.remove(configuration) ){
+            applyRunningConfigurations();
+        }
+    }
+
+    private static void applyRunningConfigurations() {
+        if( RUNNING_CONFIGURATIONS.isEmpty() ){
+            return;
+        }
+        maxPooledBytes = RUNNING_CONFIGURATIONS.stream().mapToLong(configuration -> configuration.maxPooledBytes).max().getAsLong();
+        offHeapIntermediates = RUNNING_CONFIGURATIONS.stream().anyMatch(configuration -> configuration.offHeapIntermediates);
+        evictUntilFitting(maxPooledBytes);
+    }
+
+    public static synchronized long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public static synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @param width width of the image
+     * @param height height of the image
+     *
+     * @return array for width * height pixels
+     */
+    public static int[] acquirePixels(int width, int height) {
+        int[] pixels = (int[]) takePooled(new BufferKey(width, height, false));
+        if( pixels == null ){
+            return new int[width * height];
+        }
+        return pixels;
+    }
+
+    public static void releasePixels(int[] pixels, int width, int height) {
+        if( pixels.length != width * height ){
+            // not created by this pool (like decoded images having additional data), can't be reused
+            return;
+        }
+        putPooled(new BufferKey(width, height, false), pixels, pixels.length * 4L);
+    }
+
+    /**
+     * Returns a buffer for intermediate results, which is located off-heap when configured and big enough.
+     *
+     * @param width width of the intermediate image
+     * @param height height of the intermediate image
+     *
+     * @return buffer for width * height pixels
+     */
+    public static IntBuffer acquireIntermediate(int width, int height) {
+        if( !isOffHeap(width, height) ){
+            return IntBuffer.wrap(acquirePixels(width, height));
+        }
+        IntBuffer intermediate = (IntBuffer) takePooled(new BufferKey(width, height, true));
+        if( intermediate == null ){
+            return ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return intermediate;
+    }
+
+    public static void releaseIntermediate(IntBuffer intermediate, int width, int height) {
+        if( intermediate.hasArray() ){
+            releasePixels(intermediate.array(), width, height);
+            return;
+        }
+        putPooled(new BufferKey(width, height, true), intermediate, intermediate.capacity() * 4L);
+    }
+
+    /**
+     * Creates an image of TYPE_INT_ARGB backed by a pooled array.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     *
+     * @return image with undefined content
+     */
+    public static BufferedImage acquireImage(int width, int height) {
+        int[] pixels = acquirePixels(width, height);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width, height, width, ARGB_MASKS, null);
+        return new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+    }
+
+    /**
+     * Gives the pixels of an image back to the pool, the image must not be used afterwards.
+     *
+     * @param image image created by {@link #acquireImage(int, int)}
+     */
+    public static void releaseImage(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        if( dataBuffer instanceof DataBufferInt && dataBuffer.getNumBanks() == 1 ){
+            releasePixels(((DataBufferInt) dataBuffer).getData(), image.getWidth(), image.getHeight());
+        }
+    }
+
+    private static synchronized boolean isOffHeap(int width, int height) {
+        return offHeapIntermediates && (long) width * height >= MIN_OFF_HEAP_PIXELS;
+    }
+
+    private static synchronized Object takePooled(BufferKey bufferKey) {
+        Deque<PooledBuffer> pooledBuffers = POOLED_BUFFERS.get(bufferKey);
+        while( pooledBuffers != null && !pooledBuffers.isEmpty() ){
+            PooledBuffer pooledBuffer = pooledBuffers.pollFirst();
+            pooledBytes -= pooledBuffer.bytes;
+            Object buffer = pooledBuffer.buffer.get();
+            if( buffer != null ){
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    private static synchronized void putPooled(BufferKey bufferKey, Object buffer, long bytes) {
+        if( bytes > maxPooledBytes ){
+            return;
+        }
+        evictUntilFitting(maxPooledBytes - bytes);
+        POOLED_BUFFERS.computeIfAbsent(bufferKey, key -> new ArrayDeque<>()).addFirst(new PooledBuffer(buffer, bytes));
+        pooledBytes += bytes;
+        startIdleBufferEvictor();
+    }
+
+    /**
+     * Evicts the longest unused buffers first.
+     */
+    private static void evictUntilFitting(long maxBytes) {
+        while( pooledBytes > Math.max(0, maxBytes) ){
+            Deque<PooledBuffer> oldestPooledBuffers = null;
+            for( Deque<PooledBuffer> pooledBuffers : POOLED_BUFFERS.values() ){
+                if( pooledBuffers.isEmpty() ){
+                    continue;
+                }
+                if( oldestPooledBuffers == null || pooledBuffers.peekLast().lastUsedMillis < oldestPooledBuffers.peekLast().lastUsedMillis ){
+                    oldestPooledBuffers = pooledBuffers;
+                }
+            }
+            if( oldestPooledBuffers == null ){
+                return;
+            }
+            pooledBytes -= oldestPooledBuffers.pollLast().bytes;
+            POOLED_BUFFERS.values().removeIf(Deque::isEmpty);
+        }
+    }
+
+    private static synchronized void evictIdleBuffers() {
+        long idleSinceMillis = System.currentTimeMillis() - IDLE_TIMEOUT_MILLIS;
+        Iterator<Deque<PooledBuffer>> pooledBuffersIterator = POOLED_BUFFERS.values().iterator();
+        while( pooledBuffersIterator.hasNext() ){
+            Deque<PooledBuffer> pooledBuffers = pooledBuffersIterator.next();
+            // oldest buffers are at the end
+            while( !pooledBuffers.isEmpty() && pooledBuffers.peekLast().lastUsedMillis < idleSinceMillis ){
+                pooledBytes -= pooledBuffers.pollLast().bytes;
+            }
+            if( pooledBuffers.isEmpty() ){
+                pooledBuffersIterator.remove();
+            }
+        }
+        // no need to keep the thread when there is nothing to evict
+        if( POOLED_BUFFERS.isEmpty() && idleBufferEvictor != null ){
+            idleBufferEvictor.shutdown();
+            idleBufferEvictor = null;
+        }
+    }
+
+    private static void startIdleBufferEvictor() {
+        if( idleBufferEvictor != null ){
+            return;
+        }
+        idleBufferEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread evictorThread = new Thread(runnable, "imagetransform-buffer-evictor");
+            evictorThread.setDaemon(true);
+            return evictorThread;
+        });
+        idleBufferEvictor.scheduleWithFixedDelay(PixelBufferPool::evictIdleBuffers, IDLE_TIMEOUT_MILLIS / 2, IDLE_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pool settings of one running task.
+     */
+    public static final class Configuration implements AutoCloseable {
+
+        private final long maxPooledBytes;
+        private final boolean offHeapIntermediates;
+
+        private Configuration(long maxPooledBytes, boolean offHeapIntermediates) {
+            this.maxPooledBytes = maxPooledBytes;
+            this.offHeapIntermediates = offHeapIntermediates;
+        }
+
+        /**
+         * The settings of this task are not considered anymore, unless it was the last running one.
+         */
+        @Override
+        public void close() {
+            finish(this);
+        }
+    }
+
+    private static final class BufferKey {
+
+        private final int width;
+        private final int height;
+        private final boolean offHeap;
+
+        BufferKey(int width, int height, boolean offHeap) {
+            this.width = width;
+            this.height = height;
+            this.offHeap = offHeap;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if( !(other instanceof BufferKey) ){
+                return false;
+            }
+            BufferKey otherBufferKey = (BufferKey) other;
+            return width == otherBufferKey.width && height == otherBufferKey.height && offHeap == otherBufferKey.offHeap;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, offHeap);
+        }
+    }
+
+    private static final class PooledBuffer {
+
+        private final SoftReference<Object> buffer;
+        private final long bytes;
+        private final long lastUsedMillis = System.currentTimeMillis();
+
+        PooledBuffer(Object buffer, long bytes) {
+            this.buffer = new SoftReference<>(buffer);
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Image in the only layout the resampling engine works with: premultiplied ARGB pixels, row by row, inside one
+ * int-array without any padding.
+ *
+ * @author Danny Althoff
+ */
+public final class PixelImage {
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    public PixelImage(int width, int height, int[] pixels) {
+        if( pixels.length < width * height ){
+            throw new IllegalArgumentException(String.format("Got %s pixels, but %sx%s are required", pixels.length, width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return premultiplied ARGB pixels, not copied
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Converts any decoded image (indexed, grey, 16 bit per sample, ...) into premultiplied ARGB. Images already
+     * using int-pixels are converted in place without copying them, so the given image must not be used afterwards.
+     *
+     * @param image decoded image, gets taken over
+     * @param resampler resampler doing the color conversion
+     *
+     * @return normalized image
+     */
+    public static PixelImage takeOver(BufferedImage image, Resampler resampler) {
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        int[] imagePixels = getPackedPixels(image);
+        if( imagePixels != null ){
+            switch( image.getType() ){
+                case BufferedImage.TYPE_INT_ARGB_PRE:
+                    return new PixelImage(imageWidth, imageHeight, imagePixels);
+                case BufferedImage.TYPE_INT_ARGB:
+                    resampler.premultiply(imagePixels);
+                    return new PixelImage(imageWidth, imageHeight, imagePixels);
+                case BufferedImage.TYPE_INT_RGB:
+                    for( int index = 0; index < imagePixels.length; index++ ){
+                        imagePixels[index] |= 0xFF000000;
+                    }
+                    return new PixelImage(imageWidth, imageHeight, imagePixels);
+                default:
+                    // other int-layouts (like BGR) are converted below
+            }
+        }
+        // the color model takes care of all other layouts
+        int[] convertedPixels = image.getRGB(0, 0, imageWidth, imageHeight, PixelBufferPool.acquirePixels(imageWidth, imageHeight), 0, imageWidth);
+        resampler.premultiply(convertedPixels);
+        return new PixelImage(imageWidth, imageHeight, convertedPixels);
+    }
+
+    /**
+     * Gives the pixels back to the {@link PixelBufferPool}, this image must not be used afterwards.
+     */
+    public void release() {
+        PixelBufferPool.releasePixels(pixels, width, height);
+    }
+
+    /**
+     * Places this image onto a bigger transparent canvas, this image stays unchanged.
+     *
+     * @param canvasWidth width of the canvas
+     * @param canvasHeight height of the canvas
+     * @param offsetX left border of this image on the canvas
+     * @param offsetY top border of this image on the canvas
+     *
+     * @return new image having the size of the canvas
+     */
+    public PixelImage placeOnCanvas(int canvasWidth, int canvasHeight, int offsetX, int offsetY) {
+        if( offsetX < 0 || offsetY < 0 || offsetX + width > canvasWidth || offsetY + height > canvasHeight ){
+            throw new IllegalArgumentException(String.format("Image with %sx%s pixels at %s,%s does not fit into a canvas with %sx%s pixels", width, height, offsetX, offsetY, canvasWidth, canvasHeight));
+        }
+        int[] canvasPixels = PixelBufferPool.acquirePixels(canvasWidth, canvasHeight);
+        // pooled buffers are not cleared
+        Arrays.fill(canvasPixels, 0, canvasWidth * canvasHeight, 0);
+        for( int row = 0; row < height; row++ ){
+            System.arraycopy(pixels, row * width, canvasPixels, (offsetY + row) * canvasWidth + offsetX, width);
+        }
+        return new PixelImage(canvasWidth, canvasHeight, canvasPixels);
+    }
+
+    /**
+     * Creates a non-premultiplied image (TYPE_INT_ARGB) as expected by the encoders, this image stays unchanged. The
+     * created image should be given back via {@link PixelBufferPool#releaseImage(BufferedImage)}.
+     *
+     * @param resampler resampler doing the color conversion
+     *
+     * @return new image
+     */
+    public BufferedImage toBufferedImage(Resampler resampler) {
+        BufferedImage image = PixelBufferPool.acquireImage(width, height);
+        int[] imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(pixels, 0, imagePixels, 0, width * height);
+        resampler.unpremultiply(imagePixels);
+        return image;
+    }
+
+    /**
+     * Returns the backing int-array when the image is stored without any padding or offset.
+     */
+    private static int[] getPackedPixels(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        if( !(dataBuffer instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) ){
+            return null;
+        }
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        boolean isPacked = dataBuffer.getNumBanks() == 1 && dataBuffer.getOffset() == 0 && sampleModel.getScanlineStride() == image.getWidth();
+        boolean isUntranslated = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+        if( !isPacked || !isUntranslated || dataBuffer.getSize() != image.getWidth() * image.getHeight() ){
+            return null;
+        }
+        return ((DataBufferInt) dataBuffer).getData();
+    }
+}
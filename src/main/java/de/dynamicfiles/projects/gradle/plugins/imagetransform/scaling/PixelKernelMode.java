@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.gradle.api.GradleException;
+
+/**
+ * Selects the implementation of the inner scaling and color conversion loops, all of them are producing the same
+ * pixels.
+ *
+ * @author Danny Althoff
+ */
+public enum PixelKernelMode {
+
+    /**
+     * Uses the vector kernels when the JDK vector API is available and the CPU processes at least 8 pixels at once
+     * (like x86 having AVX2), the scalar kernels otherwise.
+     */
+    AUTO,
+    /**
+     * Plain java loops, available on every JVM.
+     */
+    SCALAR,
+    /**
+     * Kernels using the JDK vector API (requires java 16+ started with "--add-modules jdk.incubator.vector").
+     */
+    VECTOR;
+
+    /**
+     * Parses mode names as written inside the build script, e.g. "auto" or "VECTOR".
+     *
+     * @param modeName name of the mode
+     *
+     * @return the matching mode
+     */
+    public static PixelKernelMode fromName(String modeName) {
+        String normalizedModeName = modeName.trim().toUpperCase();
+        return Arrays.stream(values())
+                .filter(mode -> mode.name().equals(normalizedModeName))
+                .findFirst()
+                .orElseThrow(() -> new GradleException("Unknown pixel kernel mode \"" + modeName + "\", valid modes are: " + Arrays.stream(values()).map(mode -> mode.name().toLowerCase()).collect(Collectors.joining(", "))));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.nio.IntBuffer;
+
+/**
+ * The inner loops of the resampling engine working on premultiplied ARGB pixels. All implementations have to produce
+ * exactly the same pixels, they are only allowed to differ in speed.
+ *
+ * @author Danny Althoff
+ */
+interface PixelKernels {
+
+    /**
+     * @return name used for logging
+     */
+    String getName();
+
+    /**
+     * @return number of pixels processed at once
+     */
+    int getLanes();
+
+    /**
+     * Scales the rows [rowStart, rowEnd) of the input horizontally.
+     *
+     * @param input premultiplied ARGB pixels
+     * @param inputWidth width of the input
+     * @param output scaled rows, starting with outputFirstRow
+     * @param outputWidth width of the output
+     * @param rowStart first row to scale
+     * @param rowEnd row after the last row to scale
+     * @param outputFirstRow input row stored as first row of the output
+     * @param coefficients horizontal filter weights
+     */
+    void horizontalPass(int[] input, int inputWidth, IntBuffer output, int outputWidth, int rowStart, int rowEnd, int outputFirstRow, ResamplingCoefficients coefficients);
+
+    /**
+     * Scales the output rows [rowStart, rowEnd) vertically.
+     *
+     * @param input horizontally scaled rows, starting with inputFirstRow
+     * @param inputFirstRow source row stored as first row of the input
+     * @param output premultiplied ARGB pixels
+     * @param width width of input and output
+     * @param rowStart first output row
+     * @param rowEnd row after the last output row
+     * @param coefficients vertical filter weights
+     */
+    void verticalPass(IntBuffer input, int inputFirstRow, int[] output, int width, int rowStart, int rowEnd, ResamplingCoefficients coefficients);
+
+    /**
+     * Converts ARGB pixels into premultiplied ARGB pixels (in place).
+     *
+     * @param pixels ARGB pixels
+     */
+    void premultiply(int[] pixels);
+
+    /**
+     * Converts premultiplied ARGB pixels back into ARGB pixels (in place).
+     *
+     * @param pixels premultiplied ARGB pixels
+     */
+    void unpremultiply(int[] pixels);
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Separable resampling engine working on premultiplied ARGB pixels inside plain int-arrays. Big images are split into
+ * bands of rows which are processed in parallel by the executor given to the resampler.
+ *
+ * @author Danny Althoff
+ */
+public final class Resampler {
+
+    // splitting small images into bands costs more than it saves
+    private static final int MIN_PIXELS_PER_BAND = 64 * 1024;
+
+    private static final String VECTOR_KERNELS_CLASS = "de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.VectorPixelKernels";
+    // narrower vectors are not worth the overhead of the vector API
+    private static final int MIN_AUTO_VECTOR_LANES = 8;
+
+    private final PixelKernels kernels;
+    private final Executor bandExecutor;
+
+    /**
+     * Creates a resampler using the wanted kernels, processing all bands within the calling thread.
+     *
+     * @param mode the wanted kernels
+     *
+     * @throws IllegalStateException when the vector kernels were requested, but are not available
+     */
+    public Resampler(PixelKernelMode mode) {
+        this(mode, null);
+    }
+
+    /**
+     * Creates a resampler using the wanted kernels. Every transform run creates its own resampler, so tasks running
+     * concurrently inside the same JVM are not affecting each other.
+     *
+     * @param mode the wanted kernels
+     * @param bandExecutor executor processing the bands of big images, like the pool of workers already scaling, or
+     * null to process all bands within the calling thread
+     *
+     * @throws IllegalStateException when the vector kernels were requested, but are not available
+     */
+    public Resampler(PixelKernelMode mode, Executor bandExecutor) {
+        this.kernels = selectKernels(mode);
+        this.bandExecutor = bandExecutor;
+    }
+
+    private static PixelKernels selectKernels(PixelKernelMode mode) {
+        if( mode == PixelKernelMode.SCALAR ){
+            return ScalarPixelKernels.INSTANCE;
+        }
+        try{
+            // only compiled and loadable on java 16+ having the incubator module added
+            PixelKernels vectorKernels = (PixelKernels) Class.forName(VECTOR_KERNELS_CLASS).newInstance();
+            if( mode == PixelKernelMode.VECTOR || vectorKernels.getLanes() >= MIN_AUTO_VECTOR_LANES ){
+                return vectorKernels;
+            }
+        } catch(ReflectiveOperationException | LinkageError ex){
+            if( mode == PixelKernelMode.VECTOR ){
+                throw new IllegalStateException("Vector kernels are not available, they require java 16+ started with \"--add-modules jdk.incubator.vector\" and a plugin built including them", ex);
+            }
+        }
+        return ScalarPixelKernels.INSTANCE;
+    }
+
+    /**
+     * @return name of the kernels used by this resampler
+     */
+    public String getKernelsName() {
+        return kernels.getName();
+    }
+
+    /**
+     * Scales an image into a new image, the source stays unchanged.
+     *
+     * @param source image to scale
+     * @param width target width
+     * @param height target height
+     * @param filter filter to use
+     *
+     * @return scaled image
+     */
+    public PixelImage resample(PixelImage source, int width, int height, ScalingFilter filter) {
+        return new PixelImage(width, height, resample(source.getPixels(), source.getWidth(), source.getHeight(), width, height, filter));
+    }
+
+    /**
+     * Scales a region of an image into a new image, the source stays unchanged. The region is given in fractions of
+     * the source size, so 0, 0, 1, 1 is the whole source.
+     *
+     * @param source image to scale
+     * @param regionX left border of the region
+     * @param regionY top border of the region
+     * @param regionWidth width of the region
+     * @param regionHeight height of the region
+     * @param width target width
+     * @param height target height
+     * @param filter filter to use
+     *
+     * @return scaled region
+     */
+    public PixelImage resample(PixelImage source, double regionX, double regionY, double regionWidth, double regionHeight, int width, int height, ScalingFilter filter) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        return new PixelImage(width, height, resample(source.getPixels(), sourceWidth, sourceHeight, regionX * sourceWidth, regionY * sourceHeight, regionWidth * sourceWidth, regionHeight * sourceHeight, width, height, filter));
+    }
+
+    /**
+     * Scales premultiplied ARGB pixels.
+     *
+     * @param sourcePixels premultiplied ARGB pixels, row by row
+     * @param sourceWidth width of the source
+     * @param sourceHeight height of the source
+     * @param width target width
+     * @param height target height
+     * @param filter filter to use
+     *
+     * @return new array containing the scaled premultiplied ARGB pixels, taken from the {@link PixelBufferPool}
+     */
+    public int[] resample(int[] sourcePixels, int sourceWidth, int sourceHeight, int width, int height, ScalingFilter filter) {
+        return resample(sourcePixels, sourceWidth, sourceHeight, 0, 0, sourceWidth, sourceHeight, width, height, filter);
+    }
+
+    private int[] resample(int[] sourcePixels, int sourceWidth, int sourceHeight, double regionX, double regionY, double regionWidth, double regionHeight, int width, int height, ScalingFilter filter) {
+        if( filter != ScalingFilter.PROGRESSIVE_BILINEAR ){
+            return convolve(sourcePixels, sourceWidth, sourceHeight, regionX, regionY, regionWidth, regionHeight, width, height, filter);
+        }
+        int[] currentPixels = sourcePixels;
+        int currentWidth = sourceWidth;
+        int currentHeight = sourceHeight;
+        double currentRegionX = regionX;
+        double currentRegionY = regionY;
+        double currentRegionWidth = regionWidth;
+        double currentRegionHeight = regionHeight;
+        while( currentRegionWidth >= width * 2 && currentRegionHeight >= height * 2 ){
+            int[] halvedPixels = halve(currentPixels, currentWidth, currentHeight);
+            if( currentPixels != sourcePixels ){
+                PixelBufferPool.releasePixels(currentPixels, currentWidth, currentHeight);
+            }
+            currentPixels = halvedPixels;
+            currentWidth /= 2;
+            currentHeight /= 2;
+            currentRegionX /= 2;
+            currentRegionY /= 2;
+            currentRegionWidth /= 2;
+            currentRegionHeight /= 2;
+        }
+        int[] scaledPixels = convolve(currentPixels, currentWidth, currentHeight, currentRegionX, currentRegionY, currentRegionWidth, currentRegionHeight, width, height, ScalingFilter.BILINEAR);
+        if( currentPixels != sourcePixels ){
+            PixelBufferPool.releasePixels(currentPixels, currentWidth, currentHeight);
+        }
+        return scaledPixels;
+    }
+
+    private int[] convolve(int[] sourcePixels, int sourceWidth, int sourceHeight, double regionX, double regionY, double regionWidth, double regionHeight, int width, int height, ScalingFilter filter) {
+        // a region covering the whole source with the same size needs no scaling
+        boolean scaleHorizontal = width != sourceWidth || regionX != 0 || regionWidth != sourceWidth;
+        boolean scaleVertical = height != sourceHeight || regionY != 0 || regionHeight != sourceHeight;
+        int[] scaledPixels = PixelBufferPool.acquirePixels(width, height);
+        if( !scaleHorizontal && !scaleVertical ){
+            System.arraycopy(sourcePixels, 0, scaledPixels, 0, width * height);
+            return scaledPixels;
+        }
+
+        ResamplingCoefficients verticalCoefficients = scaleVertical ? ResamplingCoefficients.compute(sourceHeight, regionY, regionY + regionHeight, height, filter) : null;
+
+        // only rows used by the vertical pass need to be scaled horizontally
+        int firstRow = 0;
+        int lastRow = sourceHeight;
+        if( scaleVertical ){
+            firstRow = verticalCoefficients.min[0];
+            lastRow = verticalCoefficients.min[height - 1] + verticalCoefficients.count[height - 1];
+        }
+
+        IntBuffer horizontallyScaledPixels = IntBuffer.wrap(sourcePixels);
+        int horizontallyScaledFirstRow = 0;
+        if( scaleHorizontal ){
+            ResamplingCoefficients horizontalCoefficients = ResamplingCoefficients.compute(sourceWidth, regionX, regionX + regionWidth, width, filter);
+            // without vertical scaling the horizontal pass already produces the result
+            horizontallyScaledPixels = scaleVertical ? PixelBufferPool.acquireIntermediate(width, lastRow - firstRow) : IntBuffer.wrap(scaledPixels);
+            horizontallyScaledFirstRow = firstRow;
+            IntBuffer intermediatePixels = horizontallyScaledPixels;
+            int intermediateFirstRow = firstRow;
+            inBands(lastRow - firstRow, width + sourceWidth, (bandStart, bandEnd) -> {
+                kernels.horizontalPass(sourcePixels, sourceWidth, intermediatePixels, width, intermediateFirstRow + bandStart, intermediateFirstRow + bandEnd, intermediateFirstRow, horizontalCoefficients);
+            });
+        }
+        if( !scaleVertical ){
+            return scaledPixels;
+        }
+
+        IntBuffer verticalInput = horizontallyScaledPixels;
+        int verticalInputFirstRow = horizontallyScaledFirstRow;
+        inBands(height, width, (bandStart, bandEnd) -> {
+            kernels.verticalPass(verticalInput, verticalInputFirstRow, scaledPixels, width, bandStart, bandEnd, verticalCoefficients);
+        });
+        if( scaleHorizontal ){
+            PixelBufferPool.releaseIntermediate(horizontallyScaledPixels, width, lastRow - firstRow);
+        }
+        return scaledPixels;
+    }
+
+    private int[] halve(int[] input, int inputWidth, int inputHeight) {
+        int outputWidth = inputWidth / 2;
+        int outputHeight = inputHeight / 2;
+        int[] output = PixelBufferPool.acquirePixels(outputWidth, outputHeight);
+        inBands(outputHeight, inputWidth * 2, (bandStart, bandEnd) -> {
+            for( int row = bandStart; row < bandEnd; row++ ){
+                int upperRowOffset = row * 2 * inputWidth;
+                int lowerRowOffset = upperRowOffset + inputWidth;
+                int outputRowOffset = row * outputWidth;
+                for( int x = 0; x < outputWidth; x++ ){
+                    int upperLeft = input[upperRowOffset + x * 2];
+                    int upperRight = input[upperRowOffset + x * 2 + 1];
+                    int lowerLeft = input[lowerRowOffset + x * 2];
+                    int lowerRight = input[lowerRowOffset + x * 2 + 1];
+                    int alpha = ((upperLeft >>> 24) + (upperRight >>> 24) + (lowerLeft >>> 24) + (lowerRight >>> 24) + 2) >> 2;
+                    int red = (((upperLeft >> 16) & 0xFF) + ((upperRight >> 16) & 0xFF) + ((lowerLeft >> 16) & 0xFF) + ((lowerRight >> 16) & 0xFF) + 2) >> 2;
+                    int green = (((upperLeft >> 8) & 0xFF) + ((upperRight >> 8) & 0xFF) + ((lowerLeft >> 8) & 0xFF) + ((lowerRight >> 8) & 0xFF) + 2) >> 2;
+                    int blue = ((upperLeft & 0xFF) + (upperRight & 0xFF) + (lowerLeft & 0xFF) + (lowerRight & 0xFF) + 2) >> 2;
+                    output[outputRowOffset + x] = (alpha << 24) | (Math.min(red, alpha) << 16) | (Math.min(green, alpha) << 8) | Math.min(blue, alpha);
+                }
+            }
+        });
+        return output;
+    }
+
+    /**
+     * Converts ARGB pixels into premultiplied ARGB pixels (in place).
+     *
+     * @param pixels ARGB pixels
+     */
+    public void premultiply(int[] pixels) {
+        kernels.premultiply(pixels);
+    }
+
+    /**
+     * Converts premultiplied ARGB pixels back into ARGB pixels (in place).
+     *
+     * @param pixels premultiplied ARGB pixels
+     */
+    public void unpremultiply(int[] pixels) {
+        kernels.unpremultiply(pixels);
+    }
+
+    private void inBands(int rows, int pixelsPerRow, BandWorker bandWorker) {
+        long totalPixels = (long) rows * pixelsPerRow;
+        int bandCount = (int) Math.min(rows, Math.min(Runtime.getRuntime().availableProcessors() * 2L, totalPixels / MIN_PIXELS_PER_BAND));
+        if( bandExecutor == null || bandCount <= 1 ){
+            bandWorker.work(0, rows);
+            return;
+        }
+        List<FutureTask<Void>> otherBands = new ArrayList<>();
+        for( int band = 1; band < bandCount; band++ ){
+            int bandStart = rows * band / bandCount;
+            int bandEnd = rows * (band + 1) / bandCount;
+            FutureTask<Void> otherBand = new FutureTask<>(() -> bandWorker.work(bandStart, bandEnd), null);
+            otherBands.add(otherBand);
+            bandExecutor.execute(otherBand);
+        }
+        bandWorker.work(0, rows / bandCount);
+        for( FutureTask<Void> otherBand : otherBands ){
+            // bands not picked up by another worker yet are processed here, so waiting never needs a free worker
+            otherBand.run();
+            try{
+                otherBand.get();
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Got interrupted while waiting for other bands", ex);
+            } catch(ExecutionException ex){
+                if( ex.getCause() instanceof Error ){
+                    throw (Error) ex.getCause();
+                }
+                throw (RuntimeException) ex.getCause();
+            }
+        }
+    }
+
+    private interface BandWorker {
+
+        void work(int bandStart, int bandEnd);
+    }
+}
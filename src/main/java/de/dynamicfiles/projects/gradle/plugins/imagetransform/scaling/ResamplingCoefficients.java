@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+/**
+ * Precomputed fixed-point filter weights for scaling one dimension, every output pixel has a window of input pixels
+ * starting at {@code min[outputPixel]} with {@code count[outputPixel]} weights.
+ *
+ * @author Danny Althoff
+ */
+final class ResamplingCoefficients {
+
+    static final int PRECISION_BITS = 22;
+    static final int ROUNDING = 1 << (PRECISION_BITS - 1);
+
+    final int kernelSize;
+    final int[] min;
+    final int[] count;
+    // kernelSize entries per output pixel, unused ones are zero
+    final int[] weights;
+
+    private ResamplingCoefficients(int kernelSize, int outputSize) {
+        this.kernelSize = kernelSize;
+        this.min = new int[outputSize];
+        this.count = new int[outputSize];
+        this.weights = new int[outputSize * kernelSize];
+    }
+
+    /**
+     * Calculates the weights for scaling the input range [inputStart, inputEnd) of an input with inputSize pixels
+     * into outputSize pixels.
+     */
+    static ResamplingCoefficients compute(int inputSize, double inputStart, double inputEnd, int outputSize, ScalingFilter filter) {
+        double scale = (inputEnd - inputStart) / outputSize;
+        // when downscaling, the filter gets stretched to cover all input pixels
+        double filterScale = Math.max(scale, 1.0);
+        double support = filter.getSupport() * filterScale;
+        int kernelSize = (int) Math.ceil(support) * 2 + 1;
+
+        ResamplingCoefficients coefficients = new ResamplingCoefficients(kernelSize, outputSize);
+        double[] kernel = new double[kernelSize];
+        for( int outputPixel = 0; outputPixel < outputSize; outputPixel++ ){
+            double center = inputStart + (outputPixel + 0.5) * scale;
+            int windowStart = Math.max((int) (center - support + 0.5), 0);
+            int windowEnd = Math.min((int) (center + support + 0.5), inputSize);
+            int windowSize = Math.min(windowEnd - windowStart, kernelSize);
+
+            double weightSum = 0.0;
+            for( int windowPixel = 0; windowPixel < windowSize; windowPixel++ ){
+                double weight = filter.weight((windowPixel + windowStart - center + 0.5) / filterScale);
+                kernel[windowPixel] = weight;
+                weightSum += weight;
+            }
+            int weightOffset = outputPixel * kernelSize;
+            for( int windowPixel = 0; windowPixel < windowSize; windowPixel++ ){
+                double normalizedWeight = weightSum == 0.0 ? 0.0 : kernel[windowPixel] / weightSum;
+                coefficients.weights[weightOffset + windowPixel] = (int) Math.round(normalizedWeight * (1 << PRECISION_BITS));
+            }
+            coefficients.min[outputPixel] = windowStart;
+            coefficients.count[outputPixel] = windowSize;
+        }
+        return coefficients;
+    }
+
+    static int clamp(int fixedPointValue) {
+        int value = (fixedPointValue + ROUNDING) >> PRECISION_BITS;
+        if( value < 0 ){
+            return 0;
+        }
+        if( value > 255 ){
+            return 255;
+        }
+        return value;
+    }
+}
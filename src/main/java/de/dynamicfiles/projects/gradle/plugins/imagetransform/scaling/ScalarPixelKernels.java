@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.nio.IntBuffer;
+
+/**
+ * Plain java loops, available on every JVM. These are the reference for all other {@link PixelKernels}.
+ *
+ * @author Danny Althoff
+ */
+final class ScalarPixelKernels implements PixelKernels {
+
+    static final ScalarPixelKernels INSTANCE = new ScalarPixelKernels();
+
+    private ScalarPixelKernels() {
+        // stateless
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public int getLanes() {
+        return 1;
+    }
+
+    @Override
+    public void horizontalPass(int[] input, int inputWidth, IntBuffer output, int outputWidth, int rowStart, int rowEnd, int outputFirstRow, ResamplingCoefficients coefficients) {
+        int[] weights = coefficients.weights;
+        int kernelSize = coefficients.kernelSize;
+        for( int row = rowStart; row < rowEnd; row++ ){
+            int inputRowOffset = row * inputWidth;
+            int outputRowOffset = (row - outputFirstRow) * outputWidth;
+            for( int x = 0; x < outputWidth; x++ ){
+                int inputOffset = inputRowOffset + coefficients.min[x];
+                int weightOffset = x * kernelSize;
+                int count = coefficients.count[x];
+                int alpha = 0;
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for( int tap = 0; tap < count; tap++ ){
+                    int pixel = input[inputOffset + tap];
+                    int weight = weights[weightOffset + tap];
+                    alpha += (pixel >>> 24) * weight;
+                    red += ((pixel >> 16) & 0xFF) * weight;
+                    green += ((pixel >> 8) & 0xFF) * weight;
+                    blue += (pixel & 0xFF) * weight;
+                }
+                output.put(outputRowOffset + x, pack(alpha, red, green, blue));
+            }
+        }
+    }
+
+    @Override
+    public void verticalPass(IntBuffer input, int inputFirstRow, int[] output, int width, int rowStart, int rowEnd, ResamplingCoefficients coefficients) {
+        verticalPass(input, inputFirstRow, output, width, 0, width, rowStart, rowEnd, coefficients);
+    }
+
+    /**
+     * Vertical pass for the columns [columnStart, columnEnd) only, used by other kernels for the remaining columns.
+     */
+    void verticalPass(IntBuffer input, int inputFirstRow, int[] output, int width, int columnStart, int columnEnd, int rowStart, int rowEnd, ResamplingCoefficients coefficients) {
+        int[] weights = coefficients.weights;
+        int kernelSize = coefficients.kernelSize;
+        for( int row = rowStart; row < rowEnd; row++ ){
+            int inputRowStart = coefficients.min[row] - inputFirstRow;
+            int weightOffset = row * kernelSize;
+            int count = coefficients.count[row];
+            int outputRowOffset = row * width;
+            for( int x = columnStart; x < columnEnd; x++ ){
+                int alpha = 0;
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for( int tap = 0; tap < count; tap++ ){
+                    int pixel = input.get((inputRowStart + tap) * width + x);
+                    int weight = weights[weightOffset + tap];
+                    alpha += (pixel >>> 24) * weight;
+                    red += ((pixel >> 16) & 0xFF) * weight;
+                    green += ((pixel >> 8) & 0xFF) * weight;
+                    blue += (pixel & 0xFF) * weight;
+                }
+                output[outputRowOffset + x] = pack(alpha, red, green, blue);
+            }
+        }
+    }
+
+    /**
+     * Converts the fixed-point sums of all channels into one premultiplied ARGB pixel.
+     */
+    static int pack(int alphaSum, int redSum, int greenSum, int blueSum) {
+        int alpha = ResamplingCoefficients.clamp(alphaSum);
+        // negative lobes might produce colors brighter than allowed for premultiplied pixels
+        int red = Math.min(ResamplingCoefficients.clamp(redSum), alpha);
+        int green = Math.min(ResamplingCoefficients.clamp(greenSum), alpha);
+        int blue = Math.min(ResamplingCoefficients.clamp(blueSum), alpha);
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    @Override
+    public void premultiply(int[] pixels) {
+        for( int index = 0; index < pixels.length; index++ ){
+            int pixel = pixels[index];
+            int alpha = pixel >>> 24;
+            if( alpha == 255 ){
+                continue;
+            }
+            if( alpha == 0 ){
+                pixels[index] = 0;
+                continue;
+            }
+            int red = (((pixel >> 16) & 0xFF) * alpha + 127) / 255;
+            int green = (((pixel >> 8) & 0xFF) * alpha + 127) / 255;
+            int blue = ((pixel & 0xFF) * alpha + 127) / 255;
+            pixels[index] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+    }
+
+    @Override
+    public void unpremultiply(int[] pixels) {
+        for( int index = 0; index < pixels.length; index++ ){
+            int pixel = pixels[index];
+            int alpha = pixel >>> 24;
+            if( alpha == 255 || alpha == 0 ){
+                continue;
+            }
+            int halfAlpha = alpha / 2;
+            int red = Math.min(255, (((pixel >> 16) & 0xFF) * 255 + halfAlpha) / alpha);
+            int green = Math.min(255, (((pixel >> 8) & 0xFF) * 255 + halfAlpha) / alpha);
+            int blue = Math.min(255, ((pixel & 0xFF) * 255 + halfAlpha) / alpha);
+            pixels[index] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.gradle.api.GradleException;
+
+/**
+ * Available filters for the resampling engine.
+ *
+ * @author Danny Althoff
+ */
+public enum ScalingFilter {
+
+    /**
+     * Halves the image with a 2x2-box until it is less than twice the requested size, the remaining step is done
+     * bilinear. Cheap for big downscales, while still using every source pixel.
+     */
+    PROGRESSIVE_BILINEAR(1.0) {
+        @Override
+        public double weight(double x) {
+            return BILINEAR.weight(x);
+        }
+    },
+    BILINEAR(1.0) {
+        @Override
+        public double weight(double x) {
+            double absX = Math.abs(x);
+            if( absX < 1.0 ){
+                return 1.0 - absX;
+            }
+            return 0.0;
+        }
+    },
+    BICUBIC(2.0) {
+        @Override
+        public double weight(double x) {
+            // https://en.wikipedia.org/wiki/Bicubic_interpolation#Bicubic_convolution_algorithm
+            double a = -0.5;
+            double absX = Math.abs(x);
+            if( absX < 1.0 ){
+                return ((a + 2.0) * absX - (a + 3.0)) * absX * absX + 1;
+            }
+            if( absX < 2.0 ){
+                return (((absX - 5) * absX + 8) * absX - 4) * a;
+            }
+            return 0.0;
+        }
+    },
+    LANCZOS3(3.0) {
+        @Override
+        public double weight(double x) {
+            if( -3.0 <= x && x < 3.0 ){
+                return sinc(x) * sinc(x / 3.0);
+            }
+            return 0.0;
+        }
+    },
+    AREA_AVERAGE(0.5) {
+        @Override
+        public double weight(double x) {
+            if( -0.5 <= x && x < 0.5 ){
+                return 1.0;
+            }
+            return 0.0;
+        }
+    };
+
+    /**
+     * Used for all entries not having any filter set.
+     */
+    public static final ScalingFilter DEFAULT = LANCZOS3;
+
+    private final double support;
+
+    ScalingFilter(double support) {
+        this.support = support;
+    }
+
+    /**
+     * @return radius of the filter kernel in source pixels (when not downscaling)
+     */
+    public double getSupport() {
+        return support;
+    }
+
+    public abstract double weight(double x);
+
+    private static double sinc(double x) {
+        if( x == 0.0 ){
+            return 1.0;
+        }
+        double piX = x * Math.PI;
+        return Math.sin(piX) / piX;
+    }
+
+    /**
+     * Parses filter names as written inside the build script, e.g. "lanczos3", "area-average" or "AREA_AVERAGE".
+     *
+     * @param filterName name of the filter
+     *
+     * @return the matching filter
+     */
+    public static ScalingFilter fromName(String filterName) {
+        String normalizedFilterName = filterName.trim().toUpperCase().replace('-', '_').replace(' ', '_');
+        return Arrays.stream(values())
+                .filter(filter -> filter.name().equals(normalizedFilterName))
+                .findFirst()
+                .orElseThrow(() -> new GradleException("Unknown scaling filter \"" + filterName + "\", valid filters are: " + Arrays.stream(values()).map(filter -> filter.name().toLowerCase().replace('_', '-')).collect(Collectors.joining(", "))));
+    }
+}
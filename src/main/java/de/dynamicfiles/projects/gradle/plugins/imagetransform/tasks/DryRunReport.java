@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+
+/**
+ * Describes what a {@link TransformPlan} would do without transforming anything: all decodes, scale-steps and encodes
+ * per source, with estimated pixel work, memory and written bytes. Entries doing redundant work or writing the same
+ * destination are reported as warnings.
+ *
+ * All estimates are upper bounds, only BMP-files have a predictable size.
+ *
+ * @author Danny Althoff
+ */
+final class DryRunReport {
+
+    // every scaled image is kept as premultiplied ARGB, every encoded one as non-premultiplied ARGB
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final TransformPlan transformPlan;
+    private final TransformSettings settings;
+    private final StringBuilder description = new StringBuilder();
+    private final List<String> warnings = new ArrayList<>();
+    private final List<Long> sourcePeakMemories = new ArrayList<>();
+    private final List<Long> sourceDecodeMemories = new ArrayList<>();
+    private long totalPixelWork = 0;
+    private long totalOutputBytes = 0;
+
+    private DryRunReport(TransformPlan transformPlan, TransformSettings settings) {
+        this.transformPlan = transformPlan;
+        this.settings = settings;
+    }
+
+    /**
+     * @param transformPlan the plan to describe
+     * @param settings settings the plan would be executed with
+     *
+     * @return the report
+     */
+    static DryRunReport create(TransformPlan transformPlan, TransformSettings settings) {
+        DryRunReport dryRunReport = new DryRunReport(transformPlan, settings);
+        dryRunReport.describePlan();
+        dryRunReport.findConflictingDestinations();
+        dryRunReport.findIdenticalOutputs();
+        dryRunReport.describeWarnings();
+        return dryRunReport;
+    }
+
+    /**
+     * @return human-readable description of the whole plan, including the warnings
+     */
+    String getDescription() {
+        return description.toString();
+    }
+
+    private void describePlan() {
+        int transformEntryCount = transformPlan.getTransformEntryCount();
+        int workerCount = Math.max(1, Math.min(settings.maxParallelTransforms, transformEntryCount));
+        appendLine(String.format("Execution plan for %s entries from %s sources, using %s worker(s) and %s decode memory budget", transformEntryCount, transformPlan.getSourcePlans().size(), workerCount, formatBytes(settings.getMaxDecodeMemory())));
+        transformPlan.getSourcePlans().forEach(this::describeSource);
+
+        appendLine("");
+        appendLine(String.format("Estimated pixel work: %s pixels", totalPixelWork));
+        appendLine(String.format("Estimated peak memory: %s", formatBytes(estimatePeakMemory())));
+        appendLine(String.format("Estimated output: at most %s", formatBytes(totalOutputBytes)));
+    }
+
+    private void describeSource(SourcePlan sourcePlan) {
+        appendLine("");
+        Dimension sourceSize = sourcePlan.getSourceSize();
+        Dimension decodedSize = sourcePlan.getDecodedSize();
+        appendLine(String.format("source %s (%s, %s)", sourcePlan.getSource(), sourcePlan.getSourceFormat().getName(), sourceSize == null ? "size unknown" : sourceSize.width + "x" + sourceSize.height));
+
+        long decodeMemory;
+        long decodedPixels = 0;
+        if( decodedSize == null ){
+            // the executor reserves the whole budget for sources of unknown size
+            decodeMemory = settings.getMaxDecodeMemory();
+            appendLine("\tdecode: size unknown, reserves the whole decode memory budget");
+        } else {
+            decodedPixels = (long) decodedSize.width * decodedSize.height;
+            decodeMemory = decodedPixels * TransformExecutor.DECODE_BYTES_PER_PIXEL;
+            if( sourcePlan.isVectorSource() ){
+                appendLine(String.format("\tparse, rendering up to %sx%s: %s", decodedSize.width, decodedSize.height, formatBytes(decodeMemory)));
+                // parsing is not measured in pixels, every rendering is counted by its own pixels
+                decodedPixels = 0;
+            } else {
+                appendLine(String.format("\tdecode as %sx%s: %s pixels, %s", decodedSize.width, decodedSize.height, decodedPixels, formatBytes(decodeMemory)));
+            }
+        }
+        totalPixelWork += decodedPixels;
+        long peakMemory = decodeMemory;
+
+        for( SourcePlan.ScaleStep scaleStep : sourcePlan.getScaleSteps() ){
+            ScaledSize scaledSize = scaleStep.scaledSize;
+            long inputPixels;
+            long inputHeight;
+            if( scaleStep.baseSize == null ){
+                inputPixels = Math.round(decodedPixels * scaledSize.regionWidth * scaledSize.regionHeight);
+                inputHeight = decodedSize == null ? 0 : Math.round(decodedSize.height * scaledSize.regionHeight);
+            } else {
+                inputPixels = scaleStep.baseSize.getPixels();
+                inputHeight = scaleStep.baseSize.height;
+            }
+            long scaledPixels = (long) scaledSize.canvasWidth * scaledSize.canvasHeight;
+            long pixelWork = inputPixels + scaledSize.getPixels();
+            // the scaled image stays until all entries of the source are done, the intermediate rows are freed directly
+            long scaledMemory = scaledPixels * BYTES_PER_PIXEL;
+            long intermediateMemory = scaledSize.width * inputHeight * BYTES_PER_PIXEL;
+            totalPixelWork += pixelWork;
+            peakMemory += scaledMemory;
+            if( sourcePlan.isVectorSource() ){
+                appendLine(String.format("\trender %s: %s pixels, %s", scaledSize, pixelWork, formatBytes(scaledMemory)));
+            } else {
+                appendLine(String.format("\tscale %s from %s: %s pixels, %s (+ %s while scaling)", scaledSize, scaleStep.baseSize == null ? "decoded source" : scaleStep.baseSize, pixelWork, formatBytes(scaledMemory), formatBytes(intermediateMemory)));
+            }
+
+            List<ImageTransformEntry> imageTransformEntries = sourcePlan.getImageTransformEntriesByScaledSize().getOrDefault(scaledSize, Collections.emptyList());
+            if( !imageTransformEntries.isEmpty() ){
+                // all formats are encoded from the same image
+                peakMemory += scaledPixels * BYTES_PER_PIXEL;
+            }
+            for( ImageTransformEntry imageTransformEntry : imageTransformEntries ){
+                long outputBytes = estimateEncodedBytes(imageTransformEntry.format, scaledSize.canvasWidth, scaledSize.canvasHeight);
+                totalPixelWork += scaledPixels;
+                totalOutputBytes += outputBytes;
+                peakMemory += outputBytes;
+                appendLine(String.format("\t\tencode %s -> %s: %s pixels, at most %s", imageTransformEntry.format.getName(), imageTransformEntry.destination, scaledPixels, formatBytes(outputBytes)));
+            }
+        }
+
+        sourcePlan.getContainerTransformEntriesByDestination().forEach((destination, containerTransformEntries) -> {
+            List<ScaledSize> containerSizes = containerTransformEntries.stream()
+                    .map(sourcePlan::getScaledSize)
+                    .collect(Collectors.toList());
+            Set<ScaledSize> distinctContainerSizes = new LinkedHashSet<>(containerSizes);
+            if( distinctContainerSizes.size() != containerSizes.size() ){
+                warnings.add(String.format("Redundant resolutions inside container %s: %s", destination, containerTransformEntries.stream().map(transformEntry -> transformEntry.resolution).collect(Collectors.joining(", "))));
+            }
+            ImageFormat format = containerTransformEntries.get(0).format;
+            long containerPixels = 0;
+            long outputBytes = format == ImageFormats.ICNS ? 8 : 6;
+            for( ScaledSize containerSize : distinctContainerSizes ){
+                containerPixels += (long) containerSize.canvasWidth * containerSize.canvasHeight;
+                // every image is stored PNG-compressed, having its own directory entry
+                outputBytes += 16 + estimateEncodedBytes(ImageFormats.PNG, containerSize.canvasWidth, containerSize.canvasHeight);
+            }
+            totalPixelWork += containerPixels;
+            totalOutputBytes += outputBytes;
+            appendLine(String.format("\tencode %s container with %s images -> %s: %s pixels, at most %s", format.getName(), distinctContainerSizes.size(), destination, containerPixels, formatBytes(outputBytes)));
+        });
+
+        sourcePlan.getInvalidTransformEntries().forEach((invalidTransformEntry, reason) -> {
+            warnings.add(String.format("Invalid entry %s -> %s (%s, %s): %s", invalidTransformEntry.source, invalidTransformEntry.destination, invalidTransformEntry.resolution, invalidTransformEntry.format.getName(), reason));
+        });
+
+        appendLine(String.format("\tpeak memory of this source: %s", formatBytes(peakMemory)));
+        sourcePeakMemories.add(peakMemory);
+        sourceDecodeMemories.add(Math.min(decodeMemory, settings.getMaxDecodeMemory()));
+    }
+
+    /**
+     * Sources are started in order as long as their decode memory fits into the budget, so the peak is reached by the
+     * most expensive group of consecutive sources fitting into the budget together.
+     */
+    private long estimatePeakMemory() {
+        long peakMemory = 0;
+        for( int firstSource = 0; firstSource < sourcePeakMemories.size(); firstSource++ ){
+            long reservedDecodeMemory = 0;
+            long concurrentPeakMemory = 0;
+            for( int source = firstSource; source < sourcePeakMemories.size(); source++ ){
+                reservedDecodeMemory += sourceDecodeMemories.get(source);
+                if( reservedDecodeMemory > settings.getMaxDecodeMemory() && source > firstSource ){
+                    break;
+                }
+                concurrentPeakMemory += sourcePeakMemories.get(source);
+            }
+            peakMemory = Math.max(peakMemory, concurrentPeakMemory);
+        }
+        return peakMemory;
+    }
+
+    /**
+     * Every destination must be written by exactly one entry (or one container).
+     */
+    private void findConflictingDestinations() {
+        Map<String, List<ImageTransformEntry>> transformEntriesByDestination = new LinkedHashMap<>();
+        transformPlan.getSourcePlans().forEach(sourcePlan -> {
+            sourcePlan.getTransformEntries().forEach(transformEntry -> {
+                transformEntriesByDestination.computeIfAbsent(TransformPlan.getDestinationPath(transformEntry), destination -> new ArrayList<>()).add(transformEntry);
+            });
+        });
+        transformEntriesByDestination.forEach((destination, destinationTransformEntries) -> {
+            // entries of the same container are describing the whole container, the spelling of the destination does not matter
+            Map<String, List<ImageTransformEntry>> transformEntriesByWriter = destinationTransformEntries.stream()
+                    .collect(Collectors.groupingBy(TransformPlan::getWriterFingerprint, LinkedHashMap::new, Collectors.toList()));
+            if( transformEntriesByWriter.size() > 1 ){
+                warnings.add(String.format("Conflicting entries for destination %s, only the last one gets written: %s", destination, transformEntriesByWriter.values().stream()
+                        .map(writerTransformEntries -> describe(writerTransformEntries.get(0)))
+                        .collect(Collectors.joining(", "))));
+                return;
+            }
+            List<ImageTransformEntry> writerTransformEntries = transformEntriesByWriter.values().iterator().next();
+            if( writerTransformEntries.get(0).containerResolutions == null && writerTransformEntries.size() > 1 ){
+                warnings.add(String.format("Redundant entries for destination %s: %s is configured %s times", destination, describe(writerTransformEntries.get(0)), writerTransformEntries.size()));
+            }
+        });
+    }
+
+    /**
+     * Different destinations getting the same bytes are encoded and written multiple times.
+     */
+    private void findIdenticalOutputs() {
+        transformPlan.getSourcePlans().forEach(sourcePlan -> {
+            sourcePlan.getImageTransformEntriesByScaledSize().forEach((scaledSize, imageTransformEntries) -> {
+                imageTransformEntries.stream()
+                        .collect(Collectors.groupingBy(transformEntry -> transformEntry.format, LinkedHashMap::new, Collectors.mapping(TransformPlan::getDestinationPath, Collectors.toCollection(LinkedHashSet::new))))
+                        .forEach((format, destinations) -> {
+                            if( destinations.size() > 1 ){
+                                warnings.add(String.format("Identical %s output of %s with %s is written to: %s", format.getName(), sourcePlan.getSource(), scaledSize, String.join(", ", destinations)));
+                            }
+                        });
+            });
+        });
+    }
+
+    private void describeWarnings() {
+        if( !warnings.isEmpty() ){
+            appendLine("");
+            appendLine(String.format("Found %s redundant, conflicting or invalid entries:", warnings.size()));
+            warnings.forEach(warning -> appendLine("\t" + warning));
+        }
+    }
+
+    private static String describe(ImageTransformEntry transformEntry) {
+        return String.format("%s (%s, %s)", transformEntry.source, transformEntry.getResolutionFingerprint(), transformEntry.format.getName());
+    }
+
+    /**
+     * Only BMP-files are written uncompressed (24 bit per pixel), all other formats are estimated by their
+     * uncompressed size.
+     */
+    private static long estimateEncodedBytes(ImageFormat format, int width, int height) {
+        long pixels = (long) width * height;
+        if( format == ImageFormats.BMP ){
+            return 54 + (((long) width * 3 + 3) / 4 * 4) * height;
+        }
+        if( format == ImageFormats.ICO ){
+            // header, directory entry, bitmap header, 32 bit pixels and the 1 bit mask
+            return 62 + pixels * BYTES_PER_PIXEL + ((long) width + 31) / 32 * 4 * height;
+        }
+        if( format == ImageFormats.ICNS ){
+            // header, 32 bit pixels and the 8 bit mask, each having its own chunk header
+            return 24 + pixels * (BYTES_PER_PIXEL + 1);
+        }
+        // PNG: signature, chunks and one filter byte per row, stored without compression in the worst case
+        long rawBytes = pixels * BYTES_PER_PIXEL + height;
+        return 57 + rawBytes + (rawBytes / 65535 + 1) * 5 + 6;
+    }
+
+    private static String formatBytes(long bytes) {
+        if( bytes < 1024 ){
+            return bytes + " B";
+        }
+        if( bytes < 1024 * 1024 ){
+            return String.format("%.1f KiB", bytes / 1024d);
+        }
+        return String.format("%.1f MiB", bytes / (1024d * 1024d));
+    }
+
+    private void appendLine(String line) {
+        description.append(line).append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.Resolution;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.awt.Dimension;
+import java.util.Objects;
+
+/**
+ * Size and filter of one scaled image, entries having the same scaled size are sharing one scaled image regardless
+ * of their target format. The scaled image is created from a region of the source (cropping) and might be placed onto
+ * a bigger transparent canvas (fitting).
+ *
+ * @author Danny Althoff
+ */
+final class ScaledSize {
+
+    final int width;
+    final int height;
+    final ScalingFilter scalingFilter;
+    // region of the source in fractions of the source size
+    final double regionX;
+    final double regionY;
+    final double regionWidth;
+    final double regionHeight;
+    // size of the resulting image, the scaled image gets placed at the offset
+    final int canvasWidth;
+    final int canvasHeight;
+    final int offsetX;
+    final int offsetY;
+
+    ScaledSize(int width, int height, ScalingFilter scalingFilter) {
+        this(width, height, scalingFilter, 0, 0, 1, 1, width, height, 0, 0);
+    }
+
+    private ScaledSize(int width, int height, ScalingFilter scalingFilter, double regionX, double regionY, double regionWidth, double regionHeight, int canvasWidth, int canvasHeight, int offsetX, int offsetY) {
+        this.width = width;
+        this.height = height;
+        this.scalingFilter = scalingFilter;
+        this.regionX = regionX;
+        this.regionY = regionY;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    /**
+     * @param transformEntry entry to scale
+     * @param sourceSize size of the source, null when unknown
+     *
+     * @return scaled size of the entry
+     *
+     * @throws IllegalArgumentException when the resolution is invalid, or depends on the unknown source size
+     */
+    static ScaledSize of(ImageTransformEntry transformEntry, Dimension sourceSize) {
+        Resolution resolution = transformEntry.parsedResolution == null ? Resolution.parse(transformEntry.resolution) : transformEntry.parsedResolution;
+        ScalingFilter scalingFilter = transformEntry.scalingFilter == null ? ScalingFilter.DEFAULT : transformEntry.scalingFilter;
+        if( resolution.getMode() == Resolution.Mode.FILL && !resolution.isRelative() ){
+            Dimension size = resolution.getSize(0, 0);
+            return new ScaledSize(size.width, size.height, scalingFilter);
+        }
+        if( sourceSize == null ){
+            throw new IllegalArgumentException("Size of the source is required for resolution " + resolution + ", but could not be read");
+        }
+        Dimension size = resolution.getSize(sourceSize.width, sourceSize.height);
+        if( resolution.getMode() == Resolution.Mode.FIT ){
+            return fit(size, sourceSize, scalingFilter);
+        }
+        if( resolution.getMode() == Resolution.Mode.CROP ){
+            return crop(size, sourceSize, scalingFilter);
+        }
+        return new ScaledSize(size.width, size.height, scalingFilter);
+    }
+
+    /**
+     * Scales the whole source keeping its aspect ratio, centered onto a transparent canvas.
+     */
+    private static ScaledSize fit(Dimension size, Dimension sourceSize, ScalingFilter scalingFilter) {
+        double scale = Math.min((double) size.width / sourceSize.width, (double) size.height / sourceSize.height);
+        int fittedWidth = (int) Math.min(size.width, Math.max(1, Math.round(sourceSize.width * scale)));
+        int fittedHeight = (int) Math.min(size.height, Math.max(1, Math.round(sourceSize.height * scale)));
+        return new ScaledSize(fittedWidth, fittedHeight, scalingFilter, 0, 0, 1, 1, size.width, size.height, (size.width - fittedWidth) / 2, (size.height - fittedHeight) / 2);
+    }
+
+    /**
+     * Scales the centered part of the source having the aspect ratio of the requested size.
+     */
+    private static ScaledSize crop(Dimension size, Dimension sourceSize, ScalingFilter scalingFilter) {
+        double scale = Math.max((double) size.width / sourceSize.width, (double) size.height / sourceSize.height);
+        double croppedWidth = Math.min(1, size.width / (sourceSize.width * scale));
+        double croppedHeight = Math.min(1, size.height / (sourceSize.height * scale));
+        return new ScaledSize(size.width, size.height, scalingFilter, (1 - croppedWidth) / 2, (1 - croppedHeight) / 2, croppedWidth, croppedHeight, size.width, size.height, 0, 0);
+    }
+
+    long getPixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * @return true when the whole source gets scaled without any padding, only these sizes can be derived from each
+     * other
+     */
+    boolean isPlain() {
+        return !isCropped() && !isPadded();
+    }
+
+    boolean isCropped() {
+        return regionX != 0 || regionY != 0 || regionWidth != 1 || regionHeight != 1;
+    }
+
+    boolean isPadded() {
+        return canvasWidth != width || canvasHeight != height;
+    }
+
+    boolean covers(ScaledSize otherScaledSize) {
+        return width >= otherScaledSize.width && height >= otherScaledSize.height;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if( !(other instanceof ScaledSize) ){
+            return false;
+        }
+        ScaledSize otherScaledSize = (ScaledSize) other;
+        return width == otherScaledSize.width && height == otherScaledSize.height && scalingFilter == otherScaledSize.scalingFilter
+                && Double.compare(regionX, otherScaledSize.regionX) == 0 && Double.compare(regionY, otherScaledSize.regionY) == 0
+                && Double.compare(regionWidth, otherScaledSize.regionWidth) == 0 && Double.compare(regionHeight, otherScaledSize.regionHeight) == 0
+                && canvasWidth == otherScaledSize.canvasWidth && canvasHeight == otherScaledSize.canvasHeight
+                && offsetX == otherScaledSize.offsetX && offsetY == otherScaledSize.offsetY;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(width, height, scalingFilter, regionX, regionY, regionWidth, regionHeight, canvasWidth, canvasHeight, offsetX, offsetY);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        description.append(width).append('x').append(height).append(" (").append(scalingFilter.name().toLowerCase());
+        if( isCropped() ){
+            description.append(", cropped");
+        }
+        if( isPadded() ){
+            description.append(", on ").append(canvasWidth).append('x').append(canvasHeight);
+        }
+        return description.append(')').toString();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.SharedTransformService;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.TransformManifest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics.TransformMetrics;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics.TransformStage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.output.DestinationWriter;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+
+/**
+ * Shares the outputs of one task-run with all other tasks of the build using the {@link SharedTransformService}.
+ * Every destination is either rendered by this task (when claiming its output first), or gets linked to the file of
+ * the task which claimed the same output before.
+ *
+ * All claimed outputs are rendered and published before waiting for the outputs of other tasks, so tasks running in
+ * parallel can't wait for each other.
+ *
+ * @author Danny Althoff
+ */
+final class SharedTransformations {
+
+    private final SharedTransformService service;
+    private final TransformSettings settings;
+    private final Logger logger;
+    // output key -> entries rendered by this task into the same destination
+    private final Map<String, List<ImageTransformEntry>> claimedTransformEntries = new LinkedHashMap<>();
+    // destination -> entries getting linked
+    private final Map<String, List<ImageTransformEntry>> linkedTransformEntries = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<File>> linkedRenderings = new LinkedHashMap<>();
+
+    SharedTransformations(SharedTransformService service, TransformSettings settings, Logger logger) {
+        this.service = service;
+        this.settings = settings;
+        this.logger = logger;
+    }
+
+    /**
+     * Claims the outputs of all entries.
+     *
+     * @param transformEntries entries to transform
+     * @param manifest manifest of the task, used for hashing the sources
+     *
+     * @return all entries this task has to render itself
+     */
+    List<ImageTransformEntry> claim(List<ImageTransformEntry> transformEntries, TransformManifest manifest) {
+        List<ImageTransformEntry> renderedTransformEntries = new ArrayList<>();
+        transformEntries.stream()
+                .collect(Collectors.groupingBy(transformEntry -> transformEntry.destination, LinkedHashMap::new, Collectors.toList()))
+                .forEach((destination, destinationTransformEntries) -> {
+                    List<String> outputKeys = new ArrayList<>();
+                    try{
+                        for( ImageTransformEntry destinationTransformEntry : destinationTransformEntries ){
+                            outputKeys.add(getOutputKey(destinationTransformEntry, manifest));
+                        }
+                    } catch(IOException ex){
+                        logger.info("Could not hash source image: " + destinationTransformEntries.get(0).source, ex);
+                        renderedTransformEntries.addAll(destinationTransformEntries);
+                        return;
+                    }
+                    // entries of one container are sharing the same output, everything else writing the same destination is misconfigured
+                    if( outputKeys.stream().distinct().count() != 1 ){
+                        renderedTransformEntries.addAll(destinationTransformEntries);
+                        return;
+                    }
+                    String outputKey = outputKeys.get(0);
+                    CompletableFuture<File> existingRendering = service.claimRendering(outputKey);
+                    if( existingRendering == null ){
+                        claimedTransformEntries.put(outputKey, destinationTransformEntries);
+                        renderedTransformEntries.addAll(destinationTransformEntries);
+                    } else {
+                        linkedTransformEntries.put(destination, destinationTransformEntries);
+                        linkedRenderings.put(destination, existingRendering);
+                    }
+                });
+        logger.info(String.format("Sharing %s destinations with other tasks of this build", linkedTransformEntries.size()));
+        return renderedTransformEntries;
+    }
+
+    /**
+     * Publishes all claimed outputs, this has to be called even when rendering or claiming failed.
+     *
+     * @param manifest manifest of the task, containing all rendered entries
+     */
+    void publish(TransformManifest manifest) {
+        Iterator<Map.Entry<String, List<ImageTransformEntry>>> claims = claimedTransformEntries.entrySet().iterator();
+        try{
+            while( claims.hasNext() ){
+                Map.Entry<String, List<ImageTransformEntry>> claim = claims.next();
+                List<ImageTransformEntry> destinationTransformEntries = claim.getValue();
+                boolean rendered = destinationTransformEntries.stream().allMatch(transformEntry -> isUpToDate(transformEntry, manifest));
+                service.completeRendering(claim.getKey(), rendered ? new File(destinationTransformEntries.get(0).destination) : null);
+                claims.remove();
+            }
+        } finally{
+            // other tasks are waiting for every claimed output, even when failing in between
+            claimedTransformEntries.keySet().forEach(outputKey -> {
+                service.abortRendering(outputKey, new IllegalStateException("Publishing the rendered output got aborted"));
+            });
+            claimedTransformEntries.clear();
+        }
+    }
+
+    /**
+     * Links all destinations rendered by other tasks, waiting for them when not done yet.
+     *
+     * @param manifest manifest of the task, gets updated for every linked entry
+     * @param metrics collects the measurements of linking
+     *
+     * @return entries which have to be rendered by this task after all, as the other task failed
+     *
+     * @throws InterruptedException when interrupted while waiting for other tasks
+     */
+    List<ImageTransformEntry> link(TransformManifest manifest, TransformMetrics metrics) throws InterruptedException {
+        List<ImageTransformEntry> unsharedTransformEntries = new ArrayList<>();
+        for( Map.Entry<String, List<ImageTransformEntry>> linkedDestination : linkedTransformEntries.entrySet() ){
+            List<ImageTransformEntry> destinationTransformEntries = linkedDestination.getValue();
+            try{
+                File renderedFile = linkedRenderings.get(linkedDestination.getKey()).get();
+                if( renderedFile == null ){
+                    unsharedTransformEntries.addAll(destinationTransformEntries);
+                    continue;
+                }
+                ImageTransformEntry transformEntry = destinationTransformEntries.get(0);
+                File destinationFile = new File(linkedDestination.getKey());
+                long writeStartedNanos = System.nanoTime();
+                boolean written = DestinationWriter.link(renderedFile.toPath(), destinationFile.toPath());
+                metrics.record(transformEntry.source, TransformStage.WRITE, transformEntry.format.getName(), writeStartedNanos, written ? destinationFile.length() : 0, 0);
+                logger.info(String.format("Shared image-file %s as %s", renderedFile.getAbsolutePath(), destinationFile.getAbsolutePath()));
+                for( ImageTransformEntry destinationTransformEntry : destinationTransformEntries ){
+                    manifest.markTransformed(destinationTransformEntry);
+                }
+            } catch(ExecutionException | IOException ex){
+                logger.info("Could not share image-file: " + linkedDestination.getKey(), ex);
+                unsharedTransformEntries.addAll(destinationTransformEntries);
+            }
+        }
+        linkedTransformEntries.clear();
+        linkedRenderings.clear();
+        return unsharedTransformEntries;
+    }
+
+    /**
+     * Describes everything having influence on the bytes of the output, regardless of the destination.
+     */
+    private String getOutputKey(ImageTransformEntry transformEntry, TransformManifest manifest) throws IOException {
+        String resolution = transformEntry.containerResolutions == null ? String.valueOf(transformEntry.parsedResolution) : "container:" + String.join(",", transformEntry.containerResolutions);
+        ScalingFilter scalingFilter = transformEntry.scalingFilter == null ? ScalingFilter.DEFAULT : transformEntry.scalingFilter;
+        return manifest.getSourceHash(new File(transformEntry.source)) + "|" + resolution + "|" + transformEntry.format.getName() + "|" + scalingFilter + "|" + settings.getFingerprint();
+    }
+
+    private static boolean isUpToDate(ImageTransformEntry transformEntry, TransformManifest manifest) {
+        try{
+            return manifest.isUpToDate(transformEntry);
+        } catch(IOException ex){
+            return false;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageFormats;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+
+/**
+ * Node of the {@link TransformPlan} describing all work of one source: it gets decoded once, every distinct size gets
+ * scaled once (following the scale-steps) and every scaled image gets encoded for all of its destinations. Vector
+ * sources are parsed once instead, every distinct size gets rendered directly from it.
+ *
+ * @author Danny Althoff
+ */
+final class SourcePlan {
+
+    // sources are decoded at least twice as big as the biggest requested output, keeping enough details for the filters
+    private static final int DECODE_OVERSAMPLING = 2;
+
+    private final String source;
+    private final ImageFormat sourceFormat;
+    private final boolean vectorSource;
+    private final List<ImageTransformEntry> transformEntries;
+    private final Dimension sourceSize;
+    private final Dimension requiredDecodeSize = new Dimension(0, 0);
+    private final List<ScaleStep> scaleSteps = new ArrayList<>();
+    private final Map<ImageTransformEntry, ScaledSize> scaledSizesByTransformEntry = new LinkedHashMap<>();
+    private final Map<ScaledSize, List<ImageTransformEntry>> imageTransformEntriesByScaledSize = new LinkedHashMap<>();
+    private final Map<String, List<ImageTransformEntry>> containerTransformEntriesByDestination = new LinkedHashMap<>();
+    private final Map<ImageTransformEntry, String> invalidTransformEntries = new LinkedHashMap<>();
+
+    SourcePlan(String source, List<ImageTransformEntry> transformEntries, Dimension sourceSize, boolean pyramidScaling) {
+        this.source = source;
+        this.sourceFormat = transformEntries.get(0).sourceFormat;
+        this.vectorSource = sourceFormat instanceof VectorImageFormats;
+        this.transformEntries = Collections.unmodifiableList(transformEntries);
+        this.sourceSize = sourceSize == null ? null : new Dimension(sourceSize);
+
+        List<ScaledSize> scaledSizes = new ArrayList<>();
+        transformEntries.forEach(transformEntry -> {
+            ScaledSize scaledSize;
+            try{
+                scaledSize = ScaledSize.of(transformEntry, sourceSize);
+            } catch(IllegalArgumentException ex){
+                invalidTransformEntries.put(transformEntry, String.valueOf(ex));
+                return;
+            }
+            scaledSizesByTransformEntry.put(transformEntry, scaledSize);
+            if( !scaledSizes.contains(scaledSize) ){
+                scaledSizes.add(scaledSize);
+            }
+            // cropped sizes are scaled from a part of the source only, so the whole source has to be bigger
+            requiredDecodeSize.width = Math.max(requiredDecodeSize.width, (int) Math.ceil(scaledSize.width / scaledSize.regionWidth) * DECODE_OVERSAMPLING);
+            requiredDecodeSize.height = Math.max(requiredDecodeSize.height, (int) Math.ceil(scaledSize.height / scaledSize.regionHeight) * DECODE_OVERSAMPLING);
+            // ICNS-files are always written by the container writer, even when having only one image, as the ICNS-writer of
+            // commons-imaging is incomplete (https://issues.apache.org/jira/browse/IMAGING-188)
+            if( transformEntry.containerResolutions == null && transformEntry.format != ImageFormats.ICNS ){
+                imageTransformEntriesByScaledSize.computeIfAbsent(scaledSize, size -> new ArrayList<>()).add(transformEntry);
+            } else {
+                containerTransformEntriesByDestination.computeIfAbsent(transformEntry.destination, destination -> new ArrayList<>()).add(transformEntry);
+            }
+        });
+
+        if( vectorSource ){
+            // rendering directly is sharper than deriving from another size, the biggest size goes first as it
+            // initializes the parsed document for all others
+            scaledSizes.sort(Comparator.comparingLong(ScaledSize::getPixels).reversed());
+            scaledSizes.forEach(scaledSize -> scaleSteps.add(new ScaleStep(scaledSize, null)));
+            return;
+        }
+        if( pyramidScaling ){
+            planPyramids(scaledSizes.stream().filter(ScaledSize::isPlain).collect(Collectors.toList()));
+        }
+        // cropped and padded sizes are always scaled from the decoded source
+        scaledSizes.stream()
+                .filter(scaledSize -> !pyramidScaling || !scaledSize.isPlain())
+                .forEach(scaledSize -> scaleSteps.add(new ScaleStep(scaledSize, null)));
+    }
+
+    /**
+     * Every filter gets its own pyramid, scaled in descending order. Every size is derived from the smallest bigger
+     * (or equal in both dimensions) size of the same pyramid, or from the decoded source when there is none.
+     */
+    private void planPyramids(List<ScaledSize> scaledSizes) {
+        Map<ScalingFilter, List<ScaledSize>> scaledSizesByFilter = scaledSizes.stream()
+                .collect(Collectors.groupingBy(scaledSize -> scaledSize.scalingFilter, LinkedHashMap::new, Collectors.toList()));
+        scaledSizesByFilter.values().forEach(pyramidSizes -> {
+            pyramidSizes.sort(Comparator.comparingLong(ScaledSize::getPixels).reversed());
+            List<ScaledSize> pyramidLevels = new ArrayList<>();
+            pyramidSizes.forEach(scaledSize -> {
+                ScaledSize baseSize = pyramidLevels.stream()
+                        .filter(pyramidLevel -> pyramidLevel.covers(scaledSize))
+                        .reduce((biggerLevel, smallerLevel) -> smallerLevel)
+                        .orElse(null);
+                scaleSteps.add(new ScaleStep(scaledSize, baseSize));
+                pyramidLevels.add(scaledSize);
+            });
+        });
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    ImageFormat getSourceFormat() {
+        return sourceFormat;
+    }
+
+    /**
+     * @return true when the source gets rendered at every size instead of being decoded and scaled
+     */
+    boolean isVectorSource() {
+        return vectorSource;
+    }
+
+    List<ImageTransformEntry> getTransformEntries() {
+        return transformEntries;
+    }
+
+    /**
+     * @return size of the source as read from its header, null when it could not be read
+     */
+    Dimension getSourceSize() {
+        return sourceSize == null ? null : new Dimension(sourceSize);
+    }
+
+    /**
+     * Sources may get subsampled while decoding, when being much bigger than required. Vector sources are not decoded
+     * into pixels, for these the biggest rendered image is used instead.
+     *
+     * @return expected size of the decoded source, null when the size of the source is unknown
+     */
+    Dimension getDecodedSize() {
+        if( sourceSize == null ){
+            return null;
+        }
+        if( vectorSource ){
+            return scaleSteps.stream()
+                    .map(scaleStep -> new Dimension(scaleStep.scaledSize.canvasWidth, scaleStep.scaledSize.canvasHeight))
+                    .findFirst()
+                    .orElse(new Dimension(0, 0));
+        }
+        int subsampling = ImageCodec.getSubsampling(sourceSize.width, sourceSize.height, requiredDecodeSize.width, requiredDecodeSize.height);
+        return new Dimension((sourceSize.width + subsampling - 1) / subsampling, (sourceSize.height + subsampling - 1) / subsampling);
+    }
+
+    /**
+     * @param transformEntry valid entry of this source
+     *
+     * @return the scaled image the entry gets encoded from
+     */
+    ScaledSize getScaledSize(ImageTransformEntry transformEntry) {
+        return scaledSizesByTransformEntry.get(transformEntry);
+    }
+
+    /**
+     * Calculates the smallest size the source has to be decoded with, to still produce all requested outputs in good
+     * quality.
+     *
+     * @return required size, 0x0 when there is no valid entry
+     */
+    Dimension getRequiredDecodeSize() {
+        return new Dimension(requiredDecodeSize);
+    }
+
+    /**
+     * @return all distinct sizes to scale, every base-size is scaled before the sizes derived from it
+     */
+    List<ScaleStep> getScaleSteps() {
+        return scaleSteps;
+    }
+
+    /**
+     * @return entries written as single image-files, grouped by the scaled image they are encoded from
+     */
+    Map<ScaledSize, List<ImageTransformEntry>> getImageTransformEntriesByScaledSize() {
+        return imageTransformEntriesByScaledSize;
+    }
+
+    /**
+     * @return entries written into multi-resolution container-files (and all ICNS-files), grouped by the container
+     */
+    Map<String, List<ImageTransformEntry>> getContainerTransformEntriesByDestination() {
+        return containerTransformEntriesByDestination;
+    }
+
+    /**
+     * @return entries which can't be transformed, with the reason
+     */
+    Map<ImageTransformEntry, String> getInvalidTransformEntries() {
+        return invalidTransformEntries;
+    }
+
+    /**
+     * One scaled image, derived from the decoded source or from another (bigger) scaled image.
+     */
+    static final class ScaleStep {
+
+        final ScaledSize scaledSize;
+        // null when scaled from the decoded source
+        final ScaledSize baseSize;
+
+        ScaleStep(ScaledSize scaledSize, ScaledSize baseSize) {
+            this.scaledSize = scaledSize;
+            this.baseSize = baseSize;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.DecodedImageCache;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.TransformManifest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodecRegistry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngEncoder;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.containers.IconContainerImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.containers.IconContainerWriter;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics.TransformMetrics;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics.TransformStage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.output.DestinationWriter;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.output.EncodedImageBuffer;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelBufferPool;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import java.awt.Dimension;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+import org.slf4j.Logger;
+
+/**
+ * Transforms entries using a pool of worker threads, every source gets decoded only once. This runs inside the gradle
+ * daemon, or inside a separate worker process when transforming isolated, so it must not depend on the gradle
+ * project.
+ *
+ * @author Danny Althoff
+ */
+final class TransformExecutor {
+
+    // decoded raster plus the working copy while scaling
+    static final int DECODE_BYTES_PER_PIXEL = 8;
+
+    private final TransformSettings settings;
+    private final Logger logger;
+    private final ImageCodecRegistry codecRegistry = new ImageCodecRegistry();
+
+    TransformExecutor(TransformSettings settings, Logger logger) {
+        this.settings = settings;
+        this.logger = logger;
+    }
+
+    /**
+     * Transforms all entries following the {@link TransformPlan}, failures are collected instead of aborting the other entries. The manifest gets updated
+     * for every entry, but is not saved.
+     *
+     * @param transformEntries entries to transform
+     * @param manifest manifest to update
+     * @param failures collects the description of all failed entries
+     * @param metrics collects all measurements
+     *
+     * @throws InterruptedException when interrupted while waiting for the workers
+     */
+    void execute(List<ImageTransformEntry> transformEntries, TransformManifest manifest, List<String> failures, TransformMetrics metrics) throws InterruptedException {
+        // every source gets decoded only once, all entries of that source are working on the same decoded image
+        TransformPlan transformPlan = createPlan(transformEntries, metrics);
+
+        // not limited by the number of entries, the bands of big images are scaled by idle workers too (threads of the
+        // pool are only started when needed)
+        int workerCount = Math.max(1, settings.maxParallelTransforms);
+        logger.info(String.format("Transforming %s entries from %s sources using %s worker(s)", transformEntries.size(), transformPlan.getSourcePlans().size(), workerCount));
+
+        AtomicInteger workerThreadCounter = new AtomicInteger(0);
+        ExecutorService workerPool = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread workerThread = new Thread(runnable, "imagetransform-worker-" + workerThreadCounter.incrementAndGet());
+            workerThread.setDaemon(true);
+            return workerThread;
+        });
+        // every run uses its own kernels, other tasks of the same JVM might have configured different ones, big images
+        // are scaled in bands using the same workers, so scaling stays within the configured parallelism
+        Resampler resampler = new Resampler(settings.pixelKernels, workerPool);
+        logger.info("Using " + resampler.getKernelsName() + " pixel kernels");
+        // same for the blocks of big PNG-files
+        codecRegistry.register(new PngCodec(new PngEncoder(settings.pngCompressionLevel, settings.pngFilterStrategy, settings.pngPaletteReduction, workerPool)));
+        // budget is counted in KiB to fit into the permits of the semaphore
+        int decodeMemoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, settings.getMaxDecodeMemory() / 1024));
+        Semaphore decodeMemory = new Semaphore(decodeMemoryPermits);
+        // pool and cache are shared with the other tasks of this JVM, both are bounded by the biggest running configuration
+        PixelBufferPool.Configuration bufferPoolConfiguration = PixelBufferPool.configure(settings.getBufferPoolSize(), settings.offHeapIntermediates);
+        DecodedImageCache.Configuration decodedImageCacheConfiguration = DecodedImageCache.configure(settings.getDecodedImageCacheSize());
+        try{
+            List<CompletableFuture<Void>> pendingSourceTransformations = new ArrayList<>();
+            for( SourcePlan sourcePlan : transformPlan.getSourcePlans() ){
+                // blocking here (instead of inside the workers) keeps the workers free for the already decoded sources
+                long estimatedDecodeMemory = estimateDecodeMemory(sourcePlan);
+                int sourceDecodeMemoryPermits = estimatedDecodeMemory < 0 ? decodeMemoryPermits : (int) Math.max(1, Math.min(decodeMemoryPermits, estimatedDecodeMemory / 1024));
+                decodeMemory.acquire(sourceDecodeMemoryPermits);
+                pendingSourceTransformations.add(transformSource(sourcePlan, workerPool, resampler, manifest, failures, metrics).whenComplete((result, throwable) -> {
+                    decodeMemory.release(sourceDecodeMemoryPermits);
+                }));
+            }
+
+            // wait for all sources, failures are collected instead of aborting the other workers
+            for( CompletableFuture<Void> pendingSourceTransformation : pendingSourceTransformations ){
+                try{
+                    pendingSourceTransformation.get();
+                } catch(ExecutionException ex){
+                    // already got collected as failure of that source
+                }
+            }
+        } finally{
+            workerPool.shutdownNow();
+            decodedImageCacheConfiguration.close();
+            bufferPoolConfiguration.close();
+        }
+    }
+
+    /**
+     * Creates the plan the entries are transformed with, reading the header of every source.
+     *
+     * @param transformEntries entries to transform
+     * @param metrics collects the measurements of reading the headers
+     *
+     * @return the plan
+     */
+    TransformPlan createPlan(List<ImageTransformEntry> transformEntries, TransformMetrics metrics) {
+        return TransformPlan.create(transformEntries, settings.pyramidScaling, (source, sourceFormat) -> readSourceSize(source, sourceFormat, metrics));
+    }
+
+    /**
+     * Reads the header of the source image, without decoding it.
+     *
+     * @return size of the source, or null when it could not be read
+     */
+    private Dimension readSourceSize(String source, ImageFormat sourceFormat, TransformMetrics metrics) {
+        try{
+            long readStartedNanos = System.nanoTime();
+            File sourceFile = new File(source);
+            Dimension sourceSize = codecRegistry.getReader(sourceFormat).readSize(sourceFile);
+            metrics.record(source, TransformStage.READ, sourceFormat.getName(), readStartedNanos, sourceFile.length(), (long) sourceSize.width * sourceSize.height);
+            return sourceSize;
+        } catch(IOException ex){
+            logger.info("Could not read size of source image: " + source, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Estimates the memory required while transforming the source, based on the size read from its header.
+     *
+     * @return estimated bytes, or -1 when the size of the source is unknown
+     */
+    private long estimateDecodeMemory(SourcePlan sourcePlan) {
+        Dimension decodedSize = sourcePlan.getDecodedSize();
+        if( decodedSize == null ){
+            return -1;
+        }
+        return (long) decodedSize.width * decodedSize.height * DECODE_BYTES_PER_PIXEL;
+    }
+
+    private CompletableFuture<Void> transformSource(SourcePlan sourcePlan, ExecutorService workerPool, Resampler resampler, TransformManifest manifest, List<String> failures, TransformMetrics metrics) {
+        String source = sourcePlan.getSource();
+        Dimension requiredDecodeSize = sourcePlan.getRequiredDecodeSize();
+        AtomicReference<PixelImage> decodedSourceImage = new AtomicReference<>();
+        // cached images are shared with later builds, these must not be given back to the pool
+        AtomicBoolean decodedSourceImageCached = new AtomicBoolean(false);
+        // vector sources are parsed instead of decoded, every size gets rendered from it
+        AtomicReference<VectorImage> parsedSourceImage = new AtomicReference<>();
+        // all scaled images are given back to the pool when every entry of this source is done
+        List<CompletableFuture<PixelImage>> pooledScaledImages = new ArrayList<>();
+        return CompletableFuture.runAsync(() -> {
+            try{
+                File sourceFile = new File(source);
+                if( sourcePlan.isVectorSource() ){
+                    parsedSourceImage.set(parseVectorSource(sourcePlan, sourceFile, metrics));
+                    return;
+                }
+                String decodedImageCacheKey = DecodedImageCache.createKey(sourceFile, requiredDecodeSize.width, requiredDecodeSize.height);
+                PixelImage cachedImage = DecodedImageCache.get(decodedImageCacheKey);
+                if( cachedImage != null ){
+                    logger.info(String.format("Reusing decoded source image %s with %sx%s pixels", source, cachedImage.getWidth(), cachedImage.getHeight()));
+                    decodedSourceImage.set(cachedImage);
+                    decodedSourceImageCached.set(true);
+                    return;
+                }
+                long decodeStartedNanos = System.nanoTime();
+                ImageCodec reader = codecRegistry.getReader(sourcePlan.getSourceFormat());
+                // every source gets normalized once, all scaling works on the same pixel layout
+                PixelImage decodedImage = PixelImage.takeOver(reader.read(sourceFile, requiredDecodeSize.width, requiredDecodeSize.height), resampler);
+                metrics.record(source, TransformStage.DECODE, sourcePlan.getSourceFormat().getName(), decodeStartedNanos, 0, (long) decodedImage.getWidth() * decodedImage.getHeight());
+                logger.info(String.format("Decoded source image %s using codec %s with %sx%s pixels", source, reader.getName(), decodedImage.getWidth(), decodedImage.getHeight()));
+                decodedSourceImage.set(decodedImage);
+                decodedSourceImageCached.set(DecodedImageCache.put(decodedImageCacheKey, sourceFile.getAbsolutePath(), decodedImage));
+            } catch(IOException ex){
+                throw new CompletionException(ex);
+            }
+        }, workerPool).thenCompose(decoded -> {
+            List<CompletableFuture<Void>> pendingEntries = new ArrayList<>();
+
+            sourcePlan.getInvalidTransformEntries().forEach((invalidTransformEntry, reason) -> {
+                manifest.forget(invalidTransformEntry);
+                failures.add(getFailureDescription(invalidTransformEntry, reason));
+            });
+
+            // every step waits only for its own base image, so independent sizes are scaled in parallel
+            Map<ScaledSize, CompletableFuture<PixelImage>> scaledImages = new LinkedHashMap<>();
+            AtomicReference<CompletableFuture<?>> previousRendering = new AtomicReference<>(CompletableFuture.completedFuture(null));
+            sourcePlan.getScaleSteps().forEach(scaleStep -> {
+                ScaledSize scaledSize = scaleStep.scaledSize;
+                if( sourcePlan.isVectorSource() ){
+                    // the parsed document is not thread-safe, so all sizes are rendered one after another (even when one
+                    // of them failed), while encoding and writing the already rendered sizes continues in parallel
+                    CompletableFuture<PixelImage> rendering = previousRendering.get()
+                            .handle((rendered, throwable) -> null)
+                            .thenApplyAsync(rendered -> renderVectorSource(source, parsedSourceImage.get(), scaledSize, resampler, metrics), workerPool);
+                    previousRendering.set(rendering);
+                    scaledImages.put(scaledSize, rendering);
+                    return;
+                }
+                CompletableFuture<PixelImage> baseImage = scaleStep.baseSize == null ? CompletableFuture.completedFuture(decodedSourceImage.get()) : scaledImages.get(scaleStep.baseSize);
+                scaledImages.put(scaledSize, baseImage.thenApplyAsync(imageToScale -> {
+                    long scaleStartedNanos = System.nanoTime();
+                    PixelImage scaledImage = placeOnCanvas(resampler.resample(imageToScale, scaledSize.regionX, scaledSize.regionY, scaledSize.regionWidth, scaledSize.regionHeight, scaledSize.width, scaledSize.height, scaledSize.scalingFilter), scaledSize);
+                    metrics.record(source, TransformStage.SCALE, null, scaleStartedNanos, 0, scaledSize.getPixels());
+                    return scaledImage;
+                }, workerPool));
+            });
+            pooledScaledImages.addAll(scaledImages.values());
+
+            sourcePlan.getImageTransformEntriesByScaledSize().forEach((scaledSize, imageTransformEntries) -> {
+                pendingEntries.add(writeScaledImage(scaledImages.get(scaledSize), imageTransformEntries, workerPool, resampler, manifest, failures, metrics));
+            });
+
+            // every size gets PNG-encoded only once, even when used inside multiple containers
+            Map<ScaledSize, CompletableFuture<byte[]>> encodedPngImages = new HashMap<>();
+            sourcePlan.getContainerTransformEntriesByDestination().forEach((destination, containerTransformEntries) -> {
+                pendingEntries.add(writeContainer(sourcePlan, destination, containerTransformEntries, scaledImages, encodedPngImages, workerPool, resampler, manifest, failures, metrics));
+            });
+
+            return CompletableFuture.allOf(pendingEntries.toArray(new CompletableFuture<?>[0]));
+        }).whenComplete((result, throwable) -> {
+            // release decoded image as soon as all entries of this source are done
+            PixelImage decodedImage = decodedSourceImage.getAndSet(null);
+            if( decodedImage != null && !decodedSourceImageCached.get() ){
+                decodedImage.release();
+            }
+            VectorImage parsedImage = parsedSourceImage.getAndSet(null);
+            if( parsedImage != null ){
+                parsedImage.close();
+            }
+            pooledScaledImages.stream()
+                    .filter(scaledImage -> scaledImage.isDone() && !scaledImage.isCompletedExceptionally())
+                    .forEach(scaledImage -> scaledImage.join().release());
+            if( throwable != null ){
+                logger.warn("Could not read source image: " + source, throwable.getCause());
+                sourcePlan.getTransformEntries().forEach(transformEntry -> {
+                    manifest.forget(transformEntry);
+                    failures.add(getFailureDescription(transformEntry, String.valueOf(throwable.getCause())));
+                });
+            }
+        });
+    }
+
+    private VectorImage parseVectorSource(SourcePlan sourcePlan, File sourceFile, TransformMetrics metrics) throws IOException {
+        long parseStartedNanos = System.nanoTime();
+        ImageCodec reader = codecRegistry.getReader(sourcePlan.getSourceFormat());
+        if( !(reader instanceof VectorImageCodec) ){
+            throw new IOException("Codec " + reader.getName() + " is not able to render vector format: " + sourcePlan.getSourceFormat().getName());
+        }
+        VectorImage parsedImage = ((VectorImageCodec) reader).parse(sourceFile);
+        Dimension2D size = parsedImage.getSize();
+        metrics.record(sourcePlan.getSource(), TransformStage.DECODE, sourcePlan.getSourceFormat().getName(), parseStartedNanos, 0, 0);
+        logger.info(String.format("Parsed source image %s using codec %s with %.0fx%.0f pixels", sourcePlan.getSource(), reader.getName(), size.getWidth(), size.getHeight()));
+        return parsedImage;
+    }
+
+    private PixelImage renderVectorSource(String source, VectorImage parsedImage, ScaledSize scaledSize, Resampler resampler, TransformMetrics metrics) {
+        long renderStartedNanos = System.nanoTime();
+        PixelImage renderedImage = placeOnCanvas(PixelImage.takeOver(parsedImage.render(scaledSize.regionX, scaledSize.regionY, scaledSize.regionWidth, scaledSize.regionHeight, scaledSize.width, scaledSize.height), resampler), scaledSize);
+        metrics.record(source, TransformStage.SCALE, null, renderStartedNanos, 0, scaledSize.getPixels());
+        return renderedImage;
+    }
+
+    private static PixelImage placeOnCanvas(PixelImage scaledImage, ScaledSize scaledSize) {
+        if( !scaledSize.isPadded() ){
+            return scaledImage;
+        }
+        PixelImage paddedImage = scaledImage.placeOnCanvas(scaledSize.canvasWidth, scaledSize.canvasHeight, scaledSize.offsetX, scaledSize.offsetY);
+        scaledImage.release();
+        return paddedImage;
+    }
+
+    private CompletableFuture<Void> writeContainer(SourcePlan sourcePlan, String destination, List<ImageTransformEntry> containerTransformEntries, Map<ScaledSize, CompletableFuture<PixelImage>> scaledImages, Map<ScaledSize, CompletableFuture<byte[]>> encodedPngImages, ExecutorService workerPool, Resampler resampler, TransformManifest manifest, List<String> failures, TransformMetrics metrics) {
+        String source = containerTransformEntries.get(0).source;
+        String format = containerTransformEntries.get(0).format.getName();
+        List<CompletableFuture<IconContainerImage>> containerImages = containerTransformEntries.stream()
+                .map(sourcePlan::getScaledSize)
+                .distinct()
+                .map(scaledSize -> {
+                    return encodedPngImages.computeIfAbsent(scaledSize, sizeToEncode -> {
+                        return scaledImages.get(sizeToEncode).thenApplyAsync(scaledImage -> {
+                            BufferedImage image = scaledImage.toBufferedImage(resampler);
+                            try{
+                                return encodePng(source, image, metrics);
+                            } finally{
+                                PixelBufferPool.releaseImage(image);
+                            }
+                        }, workerPool);
+                    }).thenApply(pngData -> new IconContainerImage(scaledSize.canvasWidth, scaledSize.canvasHeight, pngData));
+                })
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(containerImages.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+            File destinationFile = new File(destination);
+            logger.info("Trying to write image-file: " + destinationFile.getAbsolutePath());
+            try{
+                long encodeStartedNanos = System.nanoTime();
+                EncodedImageBuffer containerBuffer = EncodedImageBuffer.acquire();
+                try{
+                    IconContainerWriter.forFormat(containerTransformEntries.get(0).format).write(containerImages.stream().map(CompletableFuture::join).collect(Collectors.toList()), containerBuffer);
+                    metrics.record(source, TransformStage.ENCODE, format, encodeStartedNanos, containerBuffer.size(), 0);
+
+                    long writeStartedNanos = System.nanoTime();
+                    boolean written = writeDestination(containerBuffer, destinationFile);
+                    metrics.record(source, TransformStage.WRITE, format, writeStartedNanos, written ? containerBuffer.size() : 0, 0);
+                } finally{
+                    containerBuffer.release();
+                }
+                for( ImageTransformEntry containerTransformEntry : containerTransformEntries ){
+                    manifest.markTransformed(containerTransformEntry);
+                }
+            } catch(IOException ex){
+                throw new CompletionException(ex);
+            }
+        }, workerPool).exceptionally(throwable -> {
+            logger.warn(null, throwable);
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            containerTransformEntries.forEach(containerTransformEntry -> {
+                manifest.forget(containerTransformEntry);
+                failures.add(getFailureDescription(containerTransformEntry, String.valueOf(cause)));
+            });
+            return null;
+        });
+    }
+
+    private byte[] encodePng(String source, BufferedImage image, TransformMetrics metrics) {
+        try{
+            long encodeStartedNanos = System.nanoTime();
+            EncodedImageBuffer pngBuffer = EncodedImageBuffer.acquire();
+            try{
+                codecRegistry.getWriter(ImageFormats.PNG).write(image, ImageFormats.PNG, pngBuffer);
+                metrics.record(source, TransformStage.ENCODE, ImageFormats.PNG.getName(), encodeStartedNanos, pngBuffer.size(), (long) image.getWidth() * image.getHeight());
+                // might be used by multiple containers, so it can't stay inside the pooled buffer
+                return pngBuffer.toByteArray();
+            } finally{
+                pngBuffer.release();
+            }
+        } catch(IOException ex){
+            throw new CompletionException(ex);
+        }
+    }
+
+    private CompletableFuture<Void> writeScaledImage(CompletableFuture<PixelImage> scaledImage, List<ImageTransformEntry> scaledSizeTransformEntries, ExecutorService workerPool, Resampler resampler, TransformManifest manifest, List<String> failures, TransformMetrics metrics) {
+        return scaledImage.thenCompose(scaledPixelImage -> {
+            // all formats of this size are encoded from the same image
+            BufferedImage image = scaledPixelImage.toBufferedImage(resampler);
+            // every format gets encoded in parallel
+            return CompletableFuture.allOf(scaledSizeTransformEntries.stream()
+                    .map(validTransformEntry -> {
+                        return CompletableFuture.runAsync(() -> {
+                            writeImage(new File(validTransformEntry.destination), image, validTransformEntry, manifest, failures, metrics);
+                        }, workerPool).exceptionally(throwable -> {
+                            logger.warn(null, throwable);
+                            manifest.forget(validTransformEntry);
+                            failures.add(getFailureDescription(validTransformEntry, String.valueOf(throwable.getCause())));
+                            return null;
+                        });
+                    })
+                    .toArray(size -> new CompletableFuture<?>[size])).thenRun(() -> {
+                        PixelBufferPool.releaseImage(image);
+                    });
+        }).exceptionally(throwable -> {
+            // scaling failed
+            logger.warn(null, throwable);
+            scaledSizeTransformEntries.forEach(validTransformEntry -> {
+                manifest.forget(validTransformEntry);
+                failures.add(getFailureDescription(validTransformEntry, String.valueOf(throwable.getCause())));
+            });
+            return null;
+        });
+    }
+
+    private void writeImage(File destinationFile, BufferedImage scaledImage, ImageTransformEntry validTransformEntry, TransformManifest manifest, List<String> failures, TransformMetrics metrics) {
+        logger.info("Trying to write image-file: " + destinationFile.getAbsolutePath());
+        try{
+            String format = validTransformEntry.format.getName();
+            // encoding into memory first makes it possible to measure encoding and writing separately
+            long encodeStartedNanos = System.nanoTime();
+            EncodedImageBuffer encodedBuffer = EncodedImageBuffer.acquire();
+            try{
+                codecRegistry.getWriter(validTransformEntry.format).write(scaledImage, validTransformEntry.format, encodedBuffer);
+                metrics.record(validTransformEntry.source, TransformStage.ENCODE, format, encodeStartedNanos, encodedBuffer.size(), (long) scaledImage.getWidth() * scaledImage.getHeight());
+
+                long writeStartedNanos = System.nanoTime();
+                boolean written = writeDestination(encodedBuffer, destinationFile);
+                metrics.record(validTransformEntry.source, TransformStage.WRITE, format, writeStartedNanos, written ? encodedBuffer.size() : 0, 0);
+            } finally{
+                encodedBuffer.release();
+            }
+            manifest.markTransformed(validTransformEntry);
+        } catch(IOException ex){
+            logger.warn(null, ex);
+            manifest.forget(validTransformEntry);
+            failures.add(getFailureDescription(validTransformEntry, String.valueOf(ex)));
+        }
+    }
+
+    /**
+     * Unchanged destinations are not written again, keeping their modification time.
+     *
+     * @return true when written
+     */
+    private boolean writeDestination(EncodedImageBuffer encodedBuffer, File destinationFile) throws IOException {
+        boolean written = DestinationWriter.write(encodedBuffer.toByteBuffer(), destinationFile.toPath());
+        if( !written ){
+            logger.info("Image-file is unchanged: " + destinationFile.getAbsolutePath());
+        }
+        return written;
+    }
+
+    private String getFailureDescription(ImageTransformEntry transformEntry, String reason) {
+        return String.format("%s -> %s (%s, %s): %s", transformEntry.source, transformEntry.destination, transformEntry.resolution, transformEntry.format.getName(), reason);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import java.awt.Dimension;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Execution plan of all entries: one node per source, making all shared work (decoding and scaling) explicit before
+ * anything gets executed.
+ *
+ * @author Danny Althoff
+ */
+final class TransformPlan {
+
+    private final List<SourcePlan> sourcePlans;
+
+    private TransformPlan(List<SourcePlan> sourcePlans) {
+        this.sourcePlans = Collections.unmodifiableList(sourcePlans);
+    }
+
+    /**
+     * Groups all entries by their source, keeping the configured order. The size of every source gets read from its
+     * header, required for sizes relative to the source and for estimating the memory.
+     *
+     * @param transformEntries all entries to transform
+     * @param pyramidScaling true to derive smaller sizes from bigger ones
+     * @param sourceSizeReader reads the size of a source
+     *
+     * @return the plan
+     */
+    static TransformPlan create(List<ImageTransformEntry> transformEntries, boolean pyramidScaling, SourceSizeReader sourceSizeReader) {
+        return new TransformPlan(transformEntries.stream()
+                .collect(Collectors.groupingBy(transformEntry -> transformEntry.source, LinkedHashMap::new, Collectors.toList()))
+                .entrySet().stream()
+                .map(sourceWithTransformEntries -> {
+                    List<ImageTransformEntry> sourceTransformEntries = sourceWithTransformEntries.getValue();
+                    Dimension sourceSize = sourceSizeReader.readSize(sourceWithTransformEntries.getKey(), sourceTransformEntries.get(0).sourceFormat);
+                    return new SourcePlan(sourceWithTransformEntries.getKey(), sourceTransformEntries, sourceSize, pyramidScaling);
+                })
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Entries writing the same destination would overwrite each other concurrently. Only the last configured writer of
+     * every destination is kept, as writing all entries in the configured order would result in its output. All entries
+     * of one container are one writer, an entry configured multiple times is kept only once.
+     *
+     * @param transformEntries all entries in the configured order
+     * @param overwrittenEntryConsumer informed about every removed entry, together with the entry writing its destination
+     *
+     * @return remaining entries, keeping the configured order
+     */
+    static List<ImageTransformEntry> removeOverwrittenEntries(List<ImageTransformEntry> transformEntries, BiConsumer<ImageTransformEntry, ImageTransformEntry> overwrittenEntryConsumer) {
+        Map<String, ImageTransformEntry> lastTransformEntryByDestination = new HashMap<>();
+        transformEntries.forEach(transformEntry -> lastTransformEntryByDestination.put(getDestinationPath(transformEntry), transformEntry));
+        return transformEntries.stream()
+                .filter(transformEntry -> {
+                    ImageTransformEntry lastTransformEntry = lastTransformEntryByDestination.get(getDestinationPath(transformEntry));
+                    if( transformEntry == lastTransformEntry ){
+                        return true;
+                    }
+                    // the other entries of the last container are required for writing that container
+                    if( transformEntry.containerResolutions != null && getWriterFingerprint(transformEntry).equals(getWriterFingerprint(lastTransformEntry)) ){
+                        return true;
+                    }
+                    overwrittenEntryConsumer.accept(transformEntry, lastTransformEntry);
+                    return false;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Destinations might be given relative or absolute, both are pointing to the same file.
+     *
+     * @param transformEntry the entry
+     *
+     * @return normalized absolute path of the destination
+     */
+    static String getDestinationPath(ImageTransformEntry transformEntry) {
+        return new File(transformEntry.destination).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /**
+     * Entries having the same fingerprint are writing the same bytes, the entries of one container are having the
+     * same fingerprint too.
+     *
+     * @param transformEntry the entry
+     *
+     * @return all parameters having influence on the written file
+     */
+    static String getWriterFingerprint(ImageTransformEntry transformEntry) {
+        return transformEntry.source + "|" + transformEntry.getResolutionFingerprint() + "|" + transformEntry.format.getName() + "|" + transformEntry.scalingFilter;
+    }
+
+    List<SourcePlan> getSourcePlans() {
+        return sourcePlans;
+    }
+
+    int getTransformEntryCount() {
+        return sourcePlans.stream().mapToInt(sourcePlan -> sourcePlan.getTransformEntries().size()).sum();
+    }
+
+    /**
+     * Reads the size of a source without decoding it.
+     */
+    interface SourceSizeReader {
+
+        /**
+         * @param source path of the source
+         * @param sourceFormat detected format of the source
+         *
+         * @return size of the source, or null when it could not be read
+         */
+        Dimension readSize(String source, ImageFormat sourceFormat);
+    }
+}
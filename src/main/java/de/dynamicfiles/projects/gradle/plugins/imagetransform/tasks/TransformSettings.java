@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngFilterStrategy;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import java.io.Serializable;
+
+/**
+ * All settings of a {@link TransformTask} used while transforming, these are passed to the worker process when
+ * transforming isolated.
+ *
+ * @author Danny Althoff
+ */
+final class TransformSettings implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // memory limits not set explicitly are relative to the heap of the JVM doing the work
+    static final long RELATIVE_TO_HEAP = -1;
+
+    int maxParallelTransforms = Runtime.getRuntime().availableProcessors();
+    boolean pyramidScaling = false;
+    long maxDecodeMemory = RELATIVE_TO_HEAP;
+    long bufferPoolSize = RELATIVE_TO_HEAP;
+    boolean offHeapIntermediates = false;
+    // all kernels are producing the same pixels, so this is not part of the fingerprint
+    PixelKernelMode pixelKernels = PixelKernelMode.AUTO;
+    long decodedImageCacheSize = RELATIVE_TO_HEAP;
+    int pngCompressionLevel = 9;
+    PngFilterStrategy pngFilterStrategy = PngFilterStrategy.ADAPTIVE;
+    boolean pngPaletteReduction = true;
+
+    long getMaxDecodeMemory() {
+        return maxDecodeMemory == RELATIVE_TO_HEAP ? Runtime.getRuntime().maxMemory() / 2 : maxDecodeMemory;
+    }
+
+    long getBufferPoolSize() {
+        return bufferPoolSize == RELATIVE_TO_HEAP ? Runtime.getRuntime().maxMemory() / 8 : bufferPoolSize;
+    }
+
+    long getDecodedImageCacheSize() {
+        return decodedImageCacheSize == RELATIVE_TO_HEAP ? Runtime.getRuntime().maxMemory() / 8 : decodedImageCacheSize;
+    }
+
+    /**
+     * Describes the settings having influence on all generated files, used to detect changed settings between runs.
+     *
+     * @return fingerprint of these settings
+     */
+    String getFingerprint() {
+        return "png:" + pngCompressionLevel + ":" + pngFilterStrategy + ":" + pngPaletteReduction + "|pyramid:" + pyramidScaling;
+    }
+
+}
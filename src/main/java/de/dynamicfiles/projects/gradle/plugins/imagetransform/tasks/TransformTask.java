@@ -15,25 +15,50 @@
  */
 package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
 
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.SharedTransformService;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.TransformManifest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngFilterStrategy;
 import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
 import de.dynamicfiles.projects.gradle.plugins.imagetransform.ImageTransformGradlePluginExtension;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics.TransformMetrics;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
 import groovy.lang.Closure;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.image.BufferedImage;
-import java.awt.image.ImageObserver;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.ImageWriteException;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.apache.commons.imaging.Imaging;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.OutputFiles;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.incremental.IncrementalTaskInputs;
+import org.slf4j.Logger;
 
 /**
  *
@@ -44,22 +69,104 @@ public class TransformTask extends DefaultTask {
     private ImageTransformGradlePluginExtension taskSpecificExt = new ImageTransformGradlePluginExtension();
     private boolean transformGlobals = true;
     private boolean dryRun = false;
+    private boolean processIsolation = false;
+    private boolean shareTransformations = true;
+    private String processMaxHeapSize = null;
+    private final TransformSettings settings = new TransformSettings();
+
+    public TransformTask() {
+        // a dry-run does not write any destination, so the plan is printed every time, and the next real run must not
+        // be skipped because of the recorded dry-run
+        getOutputs().upToDateWhen(task -> !dryRun && !getPlanReportFile().exists());
+    }
 
     @TaskAction
-    public void performTransformations() {
+    public void performTransformations(IncrementalTaskInputs inputs) {
+        List<ImageTransformEntry> transformEntries = getTransformEntries();
+        getProject().getLogger().info(String.format("Found %s entries inside task", transformEntries.size()));
+
+        if( !inputs.isIncremental() ){
+            workOnTransformEntries(transformEntries, null, shareTransformations);
+            return;
+        }
+
+        // gradle already knows which sources got changed, all other entries can be skipped without hashing them
+        Set<String> changedSources = new HashSet<>();
+        inputs.outOfDate(changedSource -> {
+            changedSources.add(changedSource.getFile().toPath().toAbsolutePath().normalize().toString());
+        });
+        getProject().getLogger().info(String.format("Found %s changed sources", changedSources.size()));
+        workOnTransformEntries(transformEntries, changedSources, shareTransformations);
+    }
+
+    /**
+     * Transforms the outdated entries of the changed sources again, used by the watch-task. Outputs are not shared
+     * with other tasks here, as the build never finishes while watching, which would keep outdated renderings alive.
+     *
+     * @param transformEntries all entries of this task, required to detect orphaned destinations
+     * @param changedSources absolute paths of the changed sources, null for all sources
+     */
+    void transformChangedSources(List<ImageTransformEntry> transformEntries, Set<String> changedSources) {
+        workOnTransformEntries(transformEntries, changedSources, false);
+    }
+
+    @InputFiles
+    public FileCollection getSourceFiles() {
+        return getProject().files(getTransformEntries().stream()
+                .map(transformEntry -> transformEntry.source)
+                .distinct()
+                .toArray());
+    }
+
+    /**
+     * All parameters having influence on the generated files. Paths are relative to the project, moving the whole
+     * project does not require transforming again.
+     *
+     * @return one line per entry
+     */
+    @Input
+    public List<String> getTransformParameters() {
+        Project project = getProject();
+        return getTransformEntries().stream()
+                .map(transformEntry -> {
+                    return project.relativePath(transformEntry.source) + "|" + transformEntry.getResolutionFingerprint() + "|" + transformEntry.format.getName() + "|" + project.relativePath(transformEntry.destination) + "|" + transformEntry.appendResolution + "|" + transformEntry.scalingFilter;
+                })
+                .collect(Collectors.toList());
+    }
+
+    @OutputFiles
+    public List<File> getDestinationFiles() {
+        return getTransformEntries().stream()
+                .map(transformEntry -> new File(transformEntry.destination))
+                .collect(Collectors.toList());
+    }
+
+    List<ImageTransformEntry> getTransformEntries() {
         Project project = getProject();
-        // get all transformation entries
+        // get all transformation entries, these are resolved only once per extension
         ImageTransformGradlePluginExtension ext = project.getExtensions().getByType(ImageTransformGradlePluginExtension.class);
 
+        // global and task specific entries are sharing the same worker pool
+        List<ImageTransformEntry> transformEntries = new ArrayList<>();
         if( transformGlobals ){
-            List<ImageTransformEntry> globalTransformEntries = ext.getProcessedTransformEntries(project);
-            project.getLogger().info(String.format("Found %s global entries inside task", globalTransformEntries.size()));
-            workOnTransformEntries(globalTransformEntries);
+            transformEntries.addAll(ext.getProcessedTransformEntries(project));
         }
+        transformEntries.addAll(taskSpecificExt.getProcessedTransformEntries(project));
 
-        List<ImageTransformEntry> taskTransformEntries = taskSpecificExt.getProcessedTransformEntries(project);
-        project.getLogger().info(String.format("Found %s task entries inside task", taskTransformEntries.size()));
-        workOnTransformEntries(taskTransformEntries);
+        return transformEntries;
+    }
+
+    /**
+     * Checks all sources again, used by the watch-task when files got added or removed.
+     *
+     * @return all entries of this task
+     */
+    List<ImageTransformEntry> refreshTransformEntries() {
+        if( transformGlobals ){
+            getProject().getExtensions().getByType(ImageTransformGradlePluginExtension.class).refreshSources();
+        }
+        taskSpecificExt.refreshSources();
+        return getTransformEntries();
     }
 
     public ImageTransformGradlePluginExtension getTaskSpecificExt() {
@@ -72,6 +179,7 @@ public class TransformTask extends DefaultTask {
         closure.call();
     }
 
+    @Input
     public boolean isTransformGlobals() {
         return transformGlobals;
     }
@@ -88,87 +196,485 @@ public class TransformTask extends DefaultTask {
         this.dryRun = dryRun;
     }
 
-    private void workOnTransformEntries(List<ImageTransformEntry> transformEntries) {
+    public int getMaxParallelTransforms() {
+        return settings.maxParallelTransforms;
+    }
+
+    public void setMaxParallelTransforms(int maxParallelTransforms) {
+        settings.maxParallelTransforms = maxParallelTransforms;
+    }
+
+    @Input
+    public boolean isPyramidScaling() {
+        return settings.pyramidScaling;
+    }
+
+    /**
+     * When enabled, smaller sizes of one source are derived from already scaled bigger sizes instead of the full
+     * source image.
+     *
+     * @param pyramidScaling true to derive sizes from each other
+     */
+    public void setPyramidScaling(boolean pyramidScaling) {
+        settings.pyramidScaling = pyramidScaling;
+    }
+
+    public long getMaxDecodeMemory() {
+        return settings.getMaxDecodeMemory();
+    }
+
+    /**
+     * Limits the estimated memory (in bytes) all concurrently decoded source images may use, further sources have to
+     * wait until enough memory is released. A single source needing more than this budget gets decoded exclusively.
+     * Defaults to half of the max heap of the JVM doing the work.
+     *
+     * @param maxDecodeMemory memory budget in bytes
+     */
+    public void setMaxDecodeMemory(long maxDecodeMemory) {
+        settings.maxDecodeMemory = maxDecodeMemory;
+    }
+
+    public long getBufferPoolSize() {
+        return settings.getBufferPoolSize();
+    }
+
+    /**
+     * Pixel buffers are kept for reuse (even between builds inside the same gradle daemon), this limits the memory
+     * (in bytes) of all kept buffers. Buffers not used for 2 minutes are released. Defaults to 1/8 of the max heap of
+     * the JVM doing the work.
+     *
+     * @param bufferPoolSize memory limit in bytes, 0 disables reusing buffers
+     */
+    public void setBufferPoolSize(long bufferPoolSize) {
+        settings.bufferPoolSize = bufferPoolSize;
+    }
+
+    public boolean isOffHeapIntermediates() {
+        return settings.offHeapIntermediates;
+    }
+
+    /**
+     * When enabled, big intermediate results while scaling are stored outside of the java heap.
+     *
+     * @param offHeapIntermediates true to use direct buffers
+     */
+    public void setOffHeapIntermediates(boolean offHeapIntermediates) {
+        settings.offHeapIntermediates = offHeapIntermediates;
+    }
+
+    public String getPixelKernels() {
+        return settings.pixelKernels.name().toLowerCase();
+    }
+
+    /**
+     * Selects the implementation of the inner scaling loops: "vector" requires java 16+ having the
+     * jdk.incubator.vector module added, "auto" uses it when available.
+     *
+     * @param pixelKernels one of "auto", "scalar" or "vector"
+     */
+    public void setPixelKernels(String pixelKernels) {
+        settings.pixelKernels = PixelKernelMode.fromName(pixelKernels);
+    }
+
+    public long getDecodedImageCacheSize() {
+        return settings.getDecodedImageCacheSize();
+    }
+
+    /**
+     * Decoded sources are kept (even between builds inside the same gradle daemon), so unchanged sources don't need to
+     * be decoded again. This limits the memory (in bytes) of all kept images, defaults to 1/8 of the max heap of the
+     * JVM doing the work.
+     *
+     * @param decodedImageCacheSize memory limit in bytes, 0 disables caching
+     */
+    public void setDecodedImageCacheSize(long decodedImageCacheSize) {
+        settings.decodedImageCacheSize = decodedImageCacheSize;
+    }
+
+    public boolean isShareTransformations() {
+        return shareTransformations;
+    }
+
+    /**
+     * When enabled, identical outputs (same source content, resolution, format and settings) of all transform-tasks
+     * inside the same build (like in all projects of a multi-project build) are rendered only once, the other tasks
+     * are getting a hardlink (or a copy) of that file.
+     *
+     * @param shareTransformations true to share outputs between tasks
+     */
+    public void setShareTransformations(boolean shareTransformations) {
+        this.shareTransformations = shareTransformations;
+    }
+
+    public boolean isProcessIsolation() {
+        return processIsolation;
+    }
+
+    /**
+     * When enabled, all transformations are done inside a separate worker process instead of the gradle daemon. This
+     * keeps the heap of the daemon small, but the worker process can't reuse anything from previous builds.
+     *
+     * @param processIsolation true to transform inside a separate process
+     */
+    public void setProcessIsolation(boolean processIsolation) {
+        this.processIsolation = processIsolation;
+    }
+
+    public String getProcessMaxHeapSize() {
+        return processMaxHeapSize;
+    }
+
+    /**
+     * Max heap of the worker process when transforming isolated, like "2g". Defaults to the default of the JVM.
+     *
+     * @param processMaxHeapSize max heap size as passed to -Xmx
+     */
+    public void setProcessMaxHeapSize(String processMaxHeapSize) {
+        this.processMaxHeapSize = processMaxHeapSize;
+    }
+
+    @Input
+    public int getPngCompressionLevel() {
+        return settings.pngCompressionLevel;
+    }
+
+    /**
+     * Deflate-level used for writing PNG-files (as well as PNG-images inside ICO- and ICNS-containers).
+     *
+     * @param pngCompressionLevel 0 (no compression) to 9 (best compression)
+     */
+    public void setPngCompressionLevel(int pngCompressionLevel) {
+        if( pngCompressionLevel < 0 || pngCompressionLevel > 9 ){
+            throw new GradleException("PNG compression level has to be between 0 and 9, got " + pngCompressionLevel);
+        }
+        settings.pngCompressionLevel = pngCompressionLevel;
+    }
+
+    @Input
+    public String getPngFilterStrategy() {
+        return settings.pngFilterStrategy.name().toLowerCase();
+    }
+
+    /**
+     * Filter applied to every scanline of written PNG-files: "adaptive" (selected per scanline), "none", "sub", "up",
+     * "average" or "paeth".
+     *
+     * @param pngFilterStrategy name of the strategy
+     */
+    public void setPngFilterStrategy(String pngFilterStrategy) {
+        settings.pngFilterStrategy = PngFilterStrategy.fromName(pngFilterStrategy);
+    }
+
+    @Input
+    public boolean isPngPaletteReduction() {
+        return settings.pngPaletteReduction;
+    }
+
+    /**
+     * When enabled, PNG-files of images having not more than 256 colors are written as palette-images.
+     *
+     * @param pngPaletteReduction true to write palette-images when possible
+     */
+    public void setPngPaletteReduction(boolean pngPaletteReduction) {
+        settings.pngPaletteReduction = pngPaletteReduction;
+    }
+
+    private void workOnTransformEntries(List<ImageTransformEntry> configuredTransformEntries, Set<String> changedSources, boolean shareOutputs) {
         Project project = getProject();
 
-        transformEntries.stream()
-                .forEach(validTransformEntry -> {
-                    if( dryRun ){
-                        project.getLogger().info("would work on > ");
-                        project.getLogger().info("\t" + "source: " + validTransformEntry.source);
-                        project.getLogger().info("\t" + "requested target destination: " + validTransformEntry.destination);
-                        project.getLogger().info("\t" + "requested target resolution: " + validTransformEntry.resolution);
-                        project.getLogger().info("\t" + "requested target format: " + validTransformEntry.format.getName());
-                        return;
-                    }
+        if( dryRun ){
+            describeDryRun(project, configuredTransformEntries);
+            return;
+        }
+        // all entries are transformed concurrently, so the same destination must not be written by multiple entries
+        List<ImageTransformEntry> transformEntries = TransformPlan.removeOverwrittenEntries(configuredTransformEntries, (overwrittenTransformEntry, transformEntry) -> {
+            if( TransformPlan.getWriterFingerprint(overwrittenTransformEntry).equals(TransformPlan.getWriterFingerprint(transformEntry)) ){
+                project.getLogger().info(String.format("Skipping redundant entry for destination %s", transformEntry.destination));
+                return;
+            }
+            project.getLogger().warn(String.format("Skipping entry %s (%s, %s), its destination %s gets overwritten by %s (%s, %s)", overwrittenTransformEntry.source, overwrittenTransformEntry.getResolutionFingerprint(), overwrittenTransformEntry.format.getName(), overwrittenTransformEntry.destination, transformEntry.source, transformEntry.getResolutionFingerprint(), transformEntry.format.getName()));
+        });
+        try{
+            Files.deleteIfExists(getPlanReportFile().toPath());
+        } catch(IOException ex){
+            project.getLogger().warn("Could not remove dry-run report", ex);
+        }
 
-                    File sourceFile = new File(validTransformEntry.source);
-                    File destinationFile = new File(validTransformEntry.destination);
+        SharedTransformService sharedTransformService = shareOutputs ? SharedTransformService.forBuild(project.getGradle()) : null;
+        // every source gets hashed only once per build when sharing
+        TransformManifest manifest = openManifest(project, sharedTransformService == null ? null : sharedTransformService::getContentHash);
+        removeOrphanedDestinations(project, manifest, transformEntries);
 
+        // only work on entries where source or parameters changed
+        List<ImageTransformEntry> outdatedTransformEntries = transformEntries.stream()
+                .filter(transformEntry -> changedSources == null || changedSources.contains(transformEntry.source))
+                .filter(transformEntry -> {
                     try{
-                        // create parent folders if not existing
-                        Files.createDirectories(destinationFile.toPath().getParent());
-
-                        // TODO only use commons-imaging if ImageIO lacks support for target format
-                        Dimension imageSize = Imaging.getImageSize(sourceFile);
-//                        System.out.println("Source has dimention: " + imageSize.getWidth() + "x" + imageSize.getHeight());
-                        BufferedImage bufferedImage = Imaging.getBufferedImage(sourceFile);
-                        int bufferedImageType = bufferedImage.getType();
-
-                        String[] splitResolution = validTransformEntry.resolution.split("x");
-                        int width = Integer.parseUnsignedInt(splitResolution[0], 10);
-                        int height = Integer.parseUnsignedInt(splitResolution[1], 10);
-
-                        // some references for resizing images:
-                        // * http://stackoverflow.com/questions/16497853/scale-a-bufferedimage-the-fastest-and-easiest-way
-                        // * https://community.oracle.com/docs/DOC-983611
-                        // * http://stackoverflow.com/questions/4216123/how-to-scale-a-bufferedimage
-                        // * http://stackoverflow.com/questions/19212990/what-is-an-imageobserver#19213140
-                        BufferedImage scaledImage = new BufferedImage(width, height, bufferedImageType != 0 ? bufferedImageType : BufferedImage.TYPE_INT_ARGB);
-
-                        Graphics2D graphicsTarget = scaledImage.createGraphics();
-                        // drawImage works async, so make writeImage being called after that ;)
-                        boolean couldGenerateImage = graphicsTarget.drawImage(bufferedImage, 0, 0, width, height, (Image img, int infoflags, int x, int y, int width1, int height1) -> {
-                            project.getLogger().info("ImageObserver updateImage got called!");
-                            boolean abortedGeneratingImage = (infoflags & ImageObserver.ABORT) != 0;
-                            if( abortedGeneratingImage ){
-                                // skip this image-generation
-                                project.getLogger().info("Image-generation got aborted!");
-                                return false;
-                            }
-                            boolean finishedGeneratingImage = (infoflags & ImageObserver.ALLBITS) != 0;
-                            if( finishedGeneratingImage ){
-                                writeImage(graphicsTarget, project, destinationFile, scaledImage, validTransformEntry);
-                                return false;
-                            }
-                            return true;
-                        });
-                        if( couldGenerateImage ){
-                            project.getLogger().info("Image-generation completed!");
-                            writeImage(graphicsTarget, project, destinationFile, scaledImage, validTransformEntry);
-                        } else {
-                            project.getLogger().info("Image-generation did not complete!");
-                            // if could not generate image, hopefully "imageUpdate"/lambda will be called (hopefully)
-                        }
-                    } catch(NumberFormatException | IOException | ImageReadException ex){
-//                        ex.printStackTrace();
-                        if( destinationFile.exists() ){
-                            destinationFile.delete();
-                        }
+                        return !manifest.isUpToDate(transformEntry);
+                    } catch(IOException ex){
+                        project.getLogger().warn(null, ex);
+                        return true;
+                    }
+                })
+                .collect(Collectors.toList());
+        project.getLogger().info(String.format("Skipping %s unchanged entries", transformEntries.size() - outdatedTransformEntries.size()));
+
+        if( outdatedTransformEntries.isEmpty() ){
+            saveManifest(project, manifest);
+            return;
+        }
+
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        TransformMetrics metrics = new TransformMetrics();
+        if( sharedTransformService == null ){
+            transform(project, outdatedTransformEntries, manifest, failures, metrics);
+        } else {
+            // identical outputs of other tasks inside this build are linked instead of transformed again
+            SharedTransformations sharedTransformations = new SharedTransformations(sharedTransformService, settings, project.getLogger());
+            TransformManifest transformedManifest = manifest;
+            try{
+                // claimed outputs are always published, other tasks might be waiting for them already
+                List<ImageTransformEntry> claimedTransformEntries = sharedTransformations.claim(outdatedTransformEntries, manifest);
+                transformedManifest = transform(project, claimedTransformEntries, manifest, failures, metrics);
+            } finally{
+                sharedTransformations.publish(transformedManifest);
+            }
+            try{
+                List<ImageTransformEntry> unsharedTransformEntries = sharedTransformations.link(transformedManifest, metrics);
+                saveManifest(project, transformedManifest);
+                transform(project, unsharedTransformEntries, transformedManifest, failures, metrics);
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new GradleException("Got interrupted while waiting for other tasks.", ex);
+            }
+        }
+
+        metrics.finish(outdatedTransformEntries.size() - failures.size(), failures.size());
+        writeMetricsReport(project, metrics);
+
+        if( !failures.isEmpty() ){
+            StringBuilder failureMessage = new StringBuilder();
+            failureMessage.append(String.format("Could not transform %s of %s entries:", failures.size(), outdatedTransformEntries.size()));
+            failures.forEach(failure -> {
+                failureMessage.append(System.lineSeparator()).append("\t").append(failure);
+            });
+            throw new GradleException(failureMessage.toString());
+        }
+    }
+
+    /**
+     * Transforms the entries inside the gradle daemon or inside a worker process.
+     *
+     * @return the manifest containing all transformed entries, it gets written by the worker process when isolated
+     */
+    private TransformManifest transform(Project project, List<ImageTransformEntry> transformEntries, TransformManifest manifest, List<String> failures, TransformMetrics metrics) {
+        if( transformEntries.isEmpty() ){
+            return manifest;
+        }
+        if( processIsolation ){
+            // the worker process updates the manifest itself
+            saveManifest(project, manifest);
+            transformInWorkerProcess(project, transformEntries, manifest.getManifestFile(), failures, metrics);
+            return openManifest(project, manifest.getContentHasher());
+        }
+        try{
+            new TransformExecutor(settings, project.getLogger()).execute(transformEntries, manifest, failures, metrics);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new GradleException("Got interrupted while transforming images.", ex);
+        } finally{
+            saveManifest(project, manifest);
+        }
+        return manifest;
+    }
+
+    /**
+     * Prints what would be done, without reading more than the header of every source. The description is written next
+     * to the metrics-report too, making it available for CI.
+     */
+    private void describeDryRun(Project project, List<ImageTransformEntry> transformEntries) {
+        TransformPlan transformPlan = new TransformExecutor(settings, project.getLogger()).createPlan(transformEntries, new TransformMetrics());
+        DryRunReport dryRunReport = DryRunReport.create(transformPlan, settings);
+        project.getLogger().lifecycle(dryRunReport.getDescription());
+        try{
+            File planReportFile = getPlanReportFile();
+            Files.createDirectories(planReportFile.getParentFile().toPath());
+            Files.write(planReportFile.toPath(), dryRunReport.getDescription().getBytes(StandardCharsets.UTF_8));
+        } catch(IOException ex){
+            project.getLogger().warn("Could not write dry-run report", ex);
+        }
+    }
+
+    /**
+     * @return report of the last dry-run, removed by the next real run
+     */
+    private File getPlanReportFile() {
+        return new File(getProject().getBuildDir(), "reports/imagetransform/" + getName() + "-plan.txt");
+    }
+
+    /**
+     * Passes the work to a new JVM, all output of that process gets forwarded to the logger of the project.
+     */
+    @SuppressWarnings("unchecked")
+    private void transformInWorkerProcess(Project project, List<ImageTransformEntry> transformEntries, File manifestFile, List<String> failures, TransformMetrics metrics) {
+        File workFile = new File(getTemporaryDir(), "work.bin");
+        File resultFile = new File(getTemporaryDir(), "result.bin");
+        try{
+            try(ObjectOutputStream workOutputStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(workFile)))){
+                workOutputStream.writeObject(settings);
+                workOutputStream.writeObject(new ArrayList<>(transformEntries));
+                workOutputStream.writeObject(manifestFile);
+            }
+            Files.deleteIfExists(resultFile.toPath());
+
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+            command.add("-Djava.awt.headless=true");
+            if( processMaxHeapSize != null ){
+                command.add("-Xmx" + processMaxHeapSize);
+            }
+            if( settings.pixelKernels != PixelKernelMode.SCALAR && isVectorApiShipped() ){
+                command.add("--add-modules");
+                command.add("jdk.incubator.vector");
+            }
+            command.add("-cp");
+            command.add(getWorkerClasspath().stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator)));
+            command.add(TransformWorkerMain.class.getName());
+            command.add(workFile.getAbsolutePath());
+            command.add(resultFile.getAbsolutePath());
+            command.add(String.valueOf(project.getLogger().isInfoEnabled()));
+            project.getLogger().info("Starting worker process: " + String.join(" ", command));
+
+            Process workerProcess = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try(BufferedReader workerOutputReader = new BufferedReader(new InputStreamReader(workerProcess.getInputStream(), Charset.defaultCharset()))){
+                workerOutputReader.lines().forEach(line -> {
+                    if( line.startsWith(TransformWorkerMain.INFO_PREFIX) ){
+                        project.getLogger().info(line.substring(TransformWorkerMain.INFO_PREFIX.length()));
+                    } else if( line.startsWith(TransformWorkerMain.WARN_PREFIX) ){
+                        project.getLogger().warn(line.substring(TransformWorkerMain.WARN_PREFIX.length()));
+                    } else {
+                        project.getLogger().warn(line);
                     }
                 });
+            }
+            int exitCode = workerProcess.waitFor();
+            if( exitCode != 0 ){
+                throw new GradleException("Worker process for transforming images failed with exit code " + exitCode);
+            }
+
+            try(ObjectInputStream resultInputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(resultFile)))){
+                failures.addAll((List<String>) resultInputStream.readObject());
+                metrics.merge((TransformMetrics) resultInputStream.readObject());
+            }
+        } catch(IOException | ClassNotFoundException ex){
+            throw new GradleException("Could not transform images inside worker process.", ex);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new GradleException("Got interrupted while transforming images.", ex);
+        }
     }
 
-    private void writeImage(Graphics2D graphicsTarget, Project project, File destinationFile, BufferedImage scaledImage, ImageTransformEntry validTransformEntry) {
-        graphicsTarget.dispose();
+    /**
+     * The incubator module of the vector API is part of every JDK since java 16, the worker process uses the same
+     * JDK as the gradle daemon.
+     */
+    private static boolean isVectorApiShipped() {
+        String specificationVersion = System.getProperty("java.specification.version");
+        if( specificationVersion.startsWith("1.") ){
+            return false;
+        }
+        try{
+            return Integer.parseInt(specificationVersion) >= 16;
+        } catch(NumberFormatException ex){
+            return false;
+        }
+    }
+
+    /**
+     * The worker process gets the classpath of this plugin (including third-party codecs), plus the few gradle-libraries
+     * used by the plugin classes.
+     */
+    private static Set<File> getWorkerClasspath() {
+        Set<File> workerClasspath = new LinkedHashSet<>();
+        try{
+            ClassLoader pluginClassLoader = TransformWorkerMain.class.getClassLoader();
+            if( pluginClassLoader instanceof URLClassLoader ){
+                for( URL classpathEntry : ((URLClassLoader) pluginClassLoader).getURLs() ){
+                    workerClasspath.add(new File(classpathEntry.toURI()));
+                }
+            }
+            for( Class<?> requiredClass : Arrays.asList(TransformWorkerMain.class, Imaging.class, Logger.class, GradleException.class) ){
+                workerClasspath.add(new File(requiredClass.getProtectionDomain().getCodeSource().getLocation().toURI()));
+            }
+        } catch(URISyntaxException ex){
+            throw new GradleException("Could not determine classpath of worker process.", ex);
+        }
+        return workerClasspath;
+    }
 
-        project.getLogger().info("Trying to write image-file: " + destinationFile.getAbsolutePath());
+    /**
+     * Writes the collected metrics as JSON and as human-readable summary, the report is not part of the task outputs.
+     */
+    private void writeMetricsReport(Project project, TransformMetrics metrics) {
         try{
-            // TODO handle incomplete Imaging-library
-            // https://issues.apache.org/jira/browse/IMAGING-188
-            Imaging.writeImage(scaledImage, destinationFile, validTransformEntry.format, new HashMap<>());
-        } catch(IOException | ImageWriteException ex){
-            project.getLogger().warn(null, ex);
+            File reportFile = metrics.writeReport(new File(project.getBuildDir(), "reports/imagetransform"), getName());
+            project.getLogger().info(metrics.toSummary());
+            project.getLogger().lifecycle(String.format("Transformed images with %.2f megapixels/s, see report: %s", metrics.getMegapixelsPerSecond(), reportFile.getAbsolutePath()));
+        } catch(IOException ex){
+            project.getLogger().warn("Could not write metrics-report", ex);
         }
     }
+
+    @OutputFile
+    public File getManifestFile() {
+        return new File(getProject().getBuildDir(), "imagetransform/" + getName() + ".manifest");
+    }
+
+    /**
+     * @param contentHasher hasher for sources not recorded inside the manifest, null to use the default one
+     */
+    private TransformManifest openManifest(Project project, TransformManifest.ContentHasher contentHasher) {
+        TransformManifest manifest = loadManifest(project);
+        manifest.setTaskSettingsFingerprint(settings.getFingerprint());
+        if( contentHasher != null ){
+            manifest.setContentHasher(contentHasher);
+        }
+        return manifest;
+    }
+
+    /**
+     * Loads the manifest of the last run, used to skip unchanged entries.
+     *
+     * @param project the current project
+     *
+     * @return last manifest, or an empty one if none was readable
+     */
+    private TransformManifest loadManifest(Project project) {
+        try{
+            return TransformManifest.load(getManifestFile());
+        } catch(IOException ex){
+            project.getLogger().warn("Could not read manifest, all entries will be transformed", ex);
+            return new TransformManifest(getManifestFile());
+        }
+    }
+
+    private void saveManifest(Project project, TransformManifest manifest) {
+        try{
+            manifest.save();
+        } catch(IOException ex){
+            project.getLogger().warn("Could not write manifest", ex);
+        }
+    }
+
+    private void removeOrphanedDestinations(Project project, TransformManifest manifest, List<ImageTransformEntry> transformEntries) {
+        manifest.getOrphanedDestinations(transformEntries).forEach(orphanedDestination -> {
+            project.getLogger().info("Removing orphaned file: " + orphanedDestination);
+            try{
+                Files.deleteIfExists(new File(orphanedDestination).toPath());
+                manifest.forgetDestination(orphanedDestination);
+            } catch(IOException ex){
+                project.getLogger().warn(null, ex);
+            }
+        });
+    }
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Keeps running and transforms the entries of a transform-task again whenever one of their sources gets changed. The
+ * mapping of sources to their entries is resolved once (and again when files got added to a watched directory), so
+ * only the entries of the changed sources are transformed, inside the same warm JVM. Stops when the build gets
+ * cancelled.
+ *
+ * @author Danny Althoff
+ */
+public class TransformWatchTask extends DefaultTask {
+
+    // cancelling the build does not always interrupt the task, so waiting for changes gets interrupted regularly
+    private static final long CANCELLATION_CHECK_MILLIS = 250;
+
+    private TransformTask transformTask = null;
+    private long debounceMillis = 100;
+
+    @TaskAction
+    public void watchTransformations() {
+        if( transformTask == null ){
+            throw new GradleException("No transform-task configured to watch.");
+        }
+        Logger logger = getProject().getLogger();
+        BooleanSupplier buildCancellation = getBuildCancellation(logger);
+
+        List<ImageTransformEntry> transformEntries = transformTask.getTransformEntries();
+        // bring everything up to date first, unchanged entries are skipped by the manifest
+        transformQuietly(logger, transformEntries, null);
+
+        WatchedSources watchedSources;
+        try{
+            watchedSources = new WatchedSources(transformEntries);
+        } catch(IOException ex){
+            throw new GradleException("Could not watch sources.", ex);
+        }
+        try{
+            logger.lifecycle(String.format("Watching %s sources inside %s directories for changes, cancel the build to stop", watchedSources.getSources().size(), watchedSources.watchedDirectories.size()));
+            while( watchedSources.isWatching() ){
+                if( buildCancellation.getAsBoolean() || Thread.currentThread().isInterrupted() ){
+                    logger.lifecycle("Stopped watching sources");
+                    return;
+                }
+                transformNextChanges(watchedSources, logger);
+            }
+            logger.warn("All watched directories are gone, stop watching");
+        } catch(InterruptedException | ClosedWatchServiceException ex){
+            // build got cancelled, this is the regular way to stop
+            logger.lifecycle("Stopped watching sources");
+        } catch(IOException ex){
+            throw new GradleException("Could not watch sources.", ex);
+        } finally{
+            try{
+                watchedSources.close();
+            } catch(IOException ex){
+                logger.warn("Could not stop watching sources", ex);
+            }
+        }
+    }
+
+    /**
+     * Waits a short time for changes of the watched sources, collecting all further changes until nothing happened for
+     * the debounce-time, and transforms the entries of all changed sources once.
+     *
+     * @param watchedSources the sources to wait for
+     * @param logger logger of the build
+     *
+     * @return true when entries got transformed, false when no source got changed
+     *
+     * @throws IOException when new source directories could not be watched
+     * @throws InterruptedException when interrupted while waiting for changes
+     */
+    boolean transformNextChanges(WatchedSources watchedSources, Logger logger) throws IOException, InterruptedException {
+        Map<Path, List<ImageTransformEntry>> transformEntriesBySource = watchedSources.transformEntriesBySource;
+        WatchKey watchKey = watchedSources.watchService.poll(CANCELLATION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        Set<Path> changedSources = new LinkedHashSet<>();
+        boolean filesCreated = false;
+        // collect events until nothing happened for the debounce-time, saving a file often creates a burst of events
+        while( watchKey != null ){
+            filesCreated |= collectChangedSources(watchKey, watchedSources.watchedDirectories, transformEntriesBySource, changedSources, logger);
+            watchKey = watchedSources.watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+        }
+        if( filesCreated ){
+            // new files might be new sources (or sources which did not exist before)
+            Set<Path> knownSources = new HashSet<>(transformEntriesBySource.keySet());
+            watchedSources.update(transformTask.refreshTransformEntries());
+            transformEntriesBySource.keySet().stream()
+                    .filter(source -> !knownSources.contains(source))
+                    .forEach(changedSources::add);
+        }
+        changedSources.removeIf(changedSource -> !Files.isRegularFile(changedSource) || !transformEntriesBySource.containsKey(changedSource));
+        if( changedSources.isEmpty() ){
+            return false;
+        }
+
+        long start = System.nanoTime();
+        Set<String> changedSourcePaths = new LinkedHashSet<>();
+        changedSources.forEach(changedSource -> {
+            logger.lifecycle("Source changed: " + changedSource);
+            // entries are filtered by their configured source-path
+            transformEntriesBySource.get(changedSource).forEach(transformEntry -> changedSourcePaths.add(transformEntry.source));
+        });
+        transformQuietly(logger, watchedSources.transformEntries, changedSourcePaths);
+        logger.lifecycle(String.format("Transformed changed sources in %s ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return true;
+    }
+
+    /**
+     * Gradle has no public API for detecting a cancelled build, so the cancellation-token of the running build is
+     * looked up. When this is not possible, only interrupting the task stops watching.
+     */
+    private BooleanSupplier getBuildCancellation(Logger logger) {
+        try{
+            Object gradle = getProject().getGradle();
+            Object services = gradle.getClass().getMethod("getServices").invoke(gradle);
+            Class<?> cancellationTokenClass = Class.forName("org.gradle.initialization.BuildCancellationToken", true, gradle.getClass().getClassLoader());
+            Object cancellationToken = services.getClass().getMethod("get", Class.class).invoke(services, cancellationTokenClass);
+            Method isCancellationRequested = cancellationTokenClass.getMethod("isCancellationRequested");
+            return () -> {
+                try{
+                    return (Boolean) isCancellationRequested.invoke(cancellationToken);
+                } catch(ReflectiveOperationException ex){
+                    return false;
+                }
+            };
+        } catch(ReflectiveOperationException | RuntimeException ex){
+            logger.debug("Cancelling the build can't be detected, only interrupting stops watching", ex);
+            return () -> false;
+        }
+    }
+
+    /**
+     * @return true when files got created which are not known as source, or events got lost
+     */
+    private boolean collectChangedSources(WatchKey watchKey, Map<WatchKey, Path> watchedDirectories, Map<Path, List<ImageTransformEntry>> transformEntriesBySource, Set<Path> changedSources, Logger logger) {
+        Path directory = watchedDirectories.get(watchKey);
+        boolean filesCreated = false;
+        for( WatchEvent<?> watchEvent : watchKey.pollEvents() ){
+            if( watchEvent.kind() == StandardWatchEventKinds.OVERFLOW ){
+                // events got lost, consider every source of that directory as changed
+                transformEntriesBySource.keySet().stream()
+                        .filter(source -> directory.equals(source.getParent()))
+                        .forEach(changedSources::add);
+                filesCreated = true;
+                continue;
+            }
+            Path changedPath = directory.resolve((Path) watchEvent.context());
+            if( transformEntriesBySource.containsKey(changedPath) ){
+                changedSources.add(changedPath);
+            } else if( watchEvent.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isRegularFile(changedPath) ){
+                filesCreated = true;
+            }
+        }
+        if( !watchKey.reset() ){
+            logger.warn("Directory is not accessible anymore, stop watching it: " + directory);
+            watchedDirectories.remove(watchKey);
+        }
+        return filesCreated;
+    }
+
+    /**
+     * Failures are only reported, the next change of the source might fix them.
+     */
+    private void transformQuietly(Logger logger, List<ImageTransformEntry> transformEntries, Set<String> changedSources) {
+        try{
+            transformTask.transformChangedSources(transformEntries, changedSources);
+        } catch(GradleException ex){
+            logger.error(ex.getMessage());
+        }
+    }
+
+    public TransformTask getTransformTask() {
+        return transformTask;
+    }
+
+    /**
+     * @param transformTask the task whose entries and settings are used
+     */
+    public void setTransformTask(TransformTask transformTask) {
+        this.transformTask = transformTask;
+    }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    /**
+     * @param debounceMillis milliseconds without any further change before transforming, bursts of changes are
+     *                       transformed only once
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * All sources of the watched entries, together with the directories they are inside of.
+     */
+    static final class WatchedSources {
+
+        private final WatchService watchService;
+        private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+        private final List<ImageTransformEntry> transformEntries = new ArrayList<>();
+        private final Map<Path, List<ImageTransformEntry>> transformEntriesBySource = new LinkedHashMap<>();
+
+        /**
+         * @param transformEntries the entries to watch the sources of
+         *
+         * @throws IOException when the directories of the sources could not be watched
+         */
+        WatchedSources(List<ImageTransformEntry> transformEntries) throws IOException {
+            watchService = FileSystems.getDefault().newWatchService();
+            try{
+                update(transformEntries);
+            } catch(IOException ex){
+                watchService.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Replaces the watched entries, registering the directories of all sources which are not watched already.
+         */
+        void update(List<ImageTransformEntry> currentTransformEntries) throws IOException {
+            transformEntries.clear();
+            transformEntries.addAll(currentTransformEntries);
+            transformEntriesBySource.clear();
+            transformEntries.forEach(transformEntry -> {
+                Path source = Paths.get(transformEntry.source).toAbsolutePath().normalize();
+                transformEntriesBySource.computeIfAbsent(source, s -> new ArrayList<>()).add(transformEntry);
+            });
+            for( Path source : transformEntriesBySource.keySet() ){
+                Path directory = source.getParent();
+                if( directory == null || watchedDirectories.containsValue(directory) || !Files.isDirectory(directory) ){
+                    continue;
+                }
+                // editors often save by replacing the file, which creates a new one
+                WatchKey watchKey = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(watchKey, directory);
+            }
+        }
+
+        /**
+         * @return false when all watched directories are gone
+         */
+        boolean isWatching() {
+            return !watchedDirectories.isEmpty();
+        }
+
+        /**
+         * @return all sources being watched
+         */
+        Set<Path> getSources() {
+            return transformEntriesBySource.keySet();
+        }
+
+        void close() throws IOException {
+            watchService.close();
+        }
+    }
+}
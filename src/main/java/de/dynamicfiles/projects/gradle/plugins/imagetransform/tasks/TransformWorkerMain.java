@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.TransformManifest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.metrics.TransformMetrics;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+
+/**
+ * Entry point of the worker process used when transforming isolated from the gradle daemon. The work-file contains the
+ * settings, the entries to transform and the manifest file, the result-file gets the failures and metrics.
+ *
+ * All log-messages are written to stdout, every line is prefixed with its level to be forwarded by the task.
+ *
+ * @author Danny Althoff
+ */
+public final class TransformWorkerMain {
+
+    static final String INFO_PREFIX = "[info] ";
+    static final String WARN_PREFIX = "[warn] ";
+
+    private TransformWorkerMain() {
+        // utility class
+    }
+
+    /**
+     * @param args path of the work-file, path of the result-file and "true" when info-messages should be logged
+     *
+     * @throws IOException when the work could not be read, or the result could not be written
+     * @throws ClassNotFoundException when the work-file was written by another version of this plugin
+     * @throws InterruptedException when interrupted while transforming
+     */
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws IOException, ClassNotFoundException, InterruptedException {
+        Logger logger = createConsoleLogger(Boolean.parseBoolean(args[2]));
+
+        TransformSettings settings;
+        List<ImageTransformEntry> transformEntries;
+        File manifestFile;
+        try(ObjectInputStream workInputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(args[0])))){
+            settings = (TransformSettings) workInputStream.readObject();
+            transformEntries = (List<ImageTransformEntry>) workInputStream.readObject();
+            manifestFile = (File) workInputStream.readObject();
+        }
+
+        TransformManifest manifest = loadManifest(logger, manifestFile);
+        manifest.setTaskSettingsFingerprint(settings.getFingerprint());
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        TransformMetrics metrics = new TransformMetrics();
+        try{
+            new TransformExecutor(settings, logger).execute(transformEntries, manifest, failures, metrics);
+        } finally{
+            manifest.save();
+        }
+
+        try(ObjectOutputStream resultOutputStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])))){
+            resultOutputStream.writeObject(new ArrayList<>(failures));
+            resultOutputStream.writeObject(metrics);
+        }
+    }
+
+    private static TransformManifest loadManifest(Logger logger, File manifestFile) {
+        try{
+            return TransformManifest.load(manifestFile);
+        } catch(IOException ex){
+            logger.warn("Could not read manifest, all entries will be transformed", ex);
+            return new TransformManifest(manifestFile);
+        }
+    }
+
+    /**
+     * The worker process has no logging-backend, so all messages (having a level of info or above) are printed to
+     * stdout.
+     */
+    private static Logger createConsoleLogger(boolean infoEnabled) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[]{Logger.class}, (proxy, method, arguments) -> {
+            String methodName = method.getName().toLowerCase();
+            boolean warning = methodName.contains("warn") || methodName.contains("error");
+            boolean enabled = warning || (infoEnabled && methodName.contains("info"));
+            if( method.getReturnType() == boolean.class ){
+                return enabled;
+            }
+            if( method.getReturnType() == String.class ){
+                return TransformWorkerMain.class.getName();
+            }
+            if( enabled && arguments != null ){
+                printMessage(warning ? WARN_PREFIX : INFO_PREFIX, arguments);
+            }
+            return null;
+        });
+    }
+
+    private static void printMessage(String prefix, Object[] arguments) {
+        StringWriter message = new StringWriter();
+        PrintWriter messageWriter = new PrintWriter(message);
+        for( Object argument : arguments ){
+            if( argument instanceof String ){
+                messageWriter.println(argument);
+            }
+            if( argument instanceof Throwable ){
+                ((Throwable) argument).printStackTrace(messageWriter);
+            }
+        }
+        messageWriter.flush();
+        // messages of concurrent workers must not be mixed
+        synchronized( System.out ){
+            for( String line : message.toString().split("\\r?\\n") ){
+                System.out.println(prefix + line);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageFormatRequest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.ImageTransformGradlePluginExtension;
+import groovy.lang.Closure;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import javax.imageio.ImageIO;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Changes of watched sources are collected until they stopped, transforming only the entries of changed sources. Lives
+ * next to the watch-task, as watching happens inside package-private methods (the task-action blocks until the build
+ * gets cancelled).
+ *
+ * @author Danny Althoff
+ */
+public class TransformWatchTaskTest {
+
+    private Project project;
+    private TransformWatchTask watchTask;
+    private File sourceDirectory;
+    private File destinationDirectory;
+    private TransformWatchTask.WatchedSources watchedSources;
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = ProjectBuilder.builder().withProjectDir(Files.createTempDirectory("imagetransform").toFile()).build();
+        project.getExtensions().create("transformImages", ImageTransformGradlePluginExtension.class);
+        TransformTask task = project.getTasks().create("transformImagesTask", TransformTask.class);
+        task.setShareTransformations(false);
+        watchTask = project.getTasks().create("watchImagesTask", TransformWatchTask.class);
+        watchTask.setTransformTask(task);
+        // long enough for all writes of a burst, even on slow machines
+        watchTask.setDebounceMillis(500);
+
+        sourceDirectory = new File(project.getProjectDir(), "sources");
+        destinationDirectory = new File(project.getBuildDir(), "out");
+        assertTrue(sourceDirectory.mkdirs());
+        writeSource(new File(sourceDirectory, "first.png"), 0xFF000000);
+        task.getTaskSpecificExt().from((FileCollection) project.fileTree(sourceDirectory).include("*.png"), new Closure<Void>(this) {
+
+            public Void doCall() {
+                ((ImageFormatRequest) getDelegate()).toPNG("16x16", new File(destinationDirectory, "*").getAbsolutePath());
+                return null;
+            }
+        });
+        watchedSources = new TransformWatchTask.WatchedSources(task.getTransformEntries());
+    }
+
+    @AfterMethod
+    public void stopWatching() throws IOException {
+        watchedSources.close();
+    }
+
+    @Test
+    public void burstOfChangesIsTransformedOnce() throws Exception {
+        File source = new File(sourceDirectory, "first.png");
+        Thread burst = new Thread(() -> {
+            try{
+                for( int color = 0xFF000010; color <= 0xFF000050; color += 0x10 ){
+                    writeSource(source, color);
+                    Thread.sleep(50);
+                }
+            } catch(IOException | InterruptedException ex){
+                throw new IllegalStateException(ex);
+            }
+        });
+        burst.start();
+
+        assertTrue(watchTask.transformNextChanges(watchedSources, project.getLogger()));
+        burst.join();
+
+        assertEquals(ImageIO.read(new File(destinationDirectory, "first.png")).getRGB(8, 8), 0xFF000050);
+        // all changes got collected by the first transformation
+        assertFalse(watchTask.transformNextChanges(watchedSources, project.getLogger()));
+    }
+
+    @Test
+    public void newSourceInsideWatchedDirectoryIsTransformed() throws Exception {
+        File newSource = new File(sourceDirectory, "second.png");
+        writeSource(newSource, 0xFF00FF00);
+
+        assertTrue(watchTask.transformNextChanges(watchedSources, project.getLogger()));
+
+        assertTrue(watchedSources.getSources().contains(newSource.toPath().toAbsolutePath().normalize()));
+        assertEquals(ImageIO.read(new File(destinationDirectory, "second.png")).getRGB(8, 8), 0xFF00FF00);
+        // only the changed source got transformed
+        assertFalse(new File(destinationDirectory, "first.png").exists());
+    }
+
+    private static void writeSource(File source, int color) throws IOException {
+        BufferedImage sourceImage = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        for( int y = 0; y < 32; y++ ){
+            for( int x = 0; x < 32; x++ ){
+                sourceImage.setRGB(x, y, color);
+            }
+        }
+        ImageIO.write(sourceImage, "png", source);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageFormatRequest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.ImageTransformGradlePluginExtension;
+import groovy.lang.Closure;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Entries are resolved against the existing source files, which might change while watching the sources.
+ *
+ * @author Danny Althoff
+ */
+public class ImageTransformGradlePluginExtensionTest {
+
+    private Project project;
+    private ImageTransformGradlePluginExtension ext;
+    private File sourceDirectory;
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = ProjectBuilder.builder().withProjectDir(Files.createTempDirectory("imagetransform").toFile()).build();
+        ext = new ImageTransformGradlePluginExtension();
+        sourceDirectory = new File(project.getProjectDir(), "images");
+        Files.createDirectories(sourceDirectory.toPath());
+    }
+
+    @Test
+    public void fileCollectionIsResolvedWhenEntriesAreNeeded() throws Exception {
+        ext.from(getPngFiles(), configure(request -> request.toPNG("16x16", "build/out/*")));
+
+        // files created after configuring are part of the first resolution
+        writeSource("a.png");
+
+        assertEquals(getSourceNames(), "a.png");
+    }
+
+    @Test
+    public void configuredOrderIsKept() throws Exception {
+        writeSource("b.png");
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB), "png", new File(project.getProjectDir(), "a.png"));
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB), "png", new File(project.getProjectDir(), "d.png"));
+
+        ext.from("a.png", configure(request -> request.toPNG("16x16", "build/out/*")));
+        ext.from(getPngFiles(), configure(request -> request.toPNG("16x16", "build/out/*")));
+        ext.from("d.png", configure(request -> request.toPNG("16x16", "build/out/*")));
+
+        assertEquals(getSourceNames(), "a.png,b.png,d.png");
+    }
+
+    @Test
+    public void processedEntriesAreResolvedOnce() throws Exception {
+        writeSource("a.png");
+        ext.from(getPngFiles(), configure(request -> request.toPNG("16x16", "build/out/*")));
+
+        List<ImageTransformEntry> transformEntries = ext.getProcessedTransformEntries(project);
+        assertSame(ext.getProcessedTransformEntries(project), transformEntries);
+
+        // changed configuration requires resolving again
+        ext.setAppendResolution(true);
+        assertNotSame(ext.getProcessedTransformEntries(project), transformEntries);
+    }
+
+    @Test
+    public void invalidEntriesAreSkipped() throws Exception {
+        writeSource("a.png");
+        Files.write(new File(sourceDirectory, "broken.png").toPath(), new byte[]{1, 2, 3});
+        ext.from(getPngFiles(), configure(request -> {
+            request.toPNG("16x16h", "build/out/*");
+            request.toPNG("16x16", "build/out/*");
+        }));
+        ext.from("missing.png", configure(request -> request.toPNG("16x16", "build/out/*")));
+
+        assertEquals(getSourceNames(), "a.png");
+    }
+
+    @Test
+    public void addedFilesOfFileCollectionAreFound() throws Exception {
+        writeSource("a.png");
+        ext.from(getPngFiles(), configure(request -> request.toPNG("16x16", "build/out/*")));
+        ext.from("single.png", configure(request -> request.toBMP("16x16", "build/out/*")));
+        assertEquals(getSourceNames(), "a.png");
+
+        assertFalse(ext.refreshSources());
+        assertEquals(getSourceNames(), "a.png");
+
+        writeSource("b.png");
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB), "png", new File(project.getProjectDir(), "single.png"));
+        // resolved entries are remembered until refreshing
+        assertEquals(getSourceNames(), "a.png");
+
+        assertTrue(ext.refreshSources());
+        // entries of the file collection are kept before the entries configured afterwards
+        assertEquals(getSourceNames(), "a.png,b.png,single.png");
+        assertFalse(ext.refreshSources());
+    }
+
+    @Test
+    public void removedSourcesAreDropped() throws Exception {
+        File source = writeSource("a.png");
+        ext.from(getPngFiles(), configure(request -> request.toPNG("16x16", "build/out/*")));
+        assertEquals(getSourceNames(), "a.png");
+
+        Files.delete(source.toPath());
+
+        assertFalse(ext.refreshSources());
+        assertEquals(getSourceNames(), "");
+    }
+
+    private String getSourceNames() {
+        List<ImageTransformEntry> transformEntries = ext.getProcessedTransformEntries(project);
+        return transformEntries.stream()
+                .map(transformEntry -> new File(transformEntry.source).getName())
+                .collect(Collectors.joining(","));
+    }
+
+    private ConfigurableFileTree getPngFiles() {
+        ConfigurableFileTree pngFiles = project.fileTree(sourceDirectory);
+        pngFiles.include("*.png");
+        return pngFiles;
+    }
+
+    private File writeSource(String name) throws IOException {
+        File source = new File(sourceDirectory, name);
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB), "png", source);
+        return source;
+    }
+
+    private Closure<Void> configure(Consumer<ImageFormatRequest> configuration) {
+        return new Closure<Void>(this) {
+
+            public Void doCall() {
+                configuration.accept((ImageFormatRequest) getDelegate());
+                return null;
+            }
+        };
+    }
+}
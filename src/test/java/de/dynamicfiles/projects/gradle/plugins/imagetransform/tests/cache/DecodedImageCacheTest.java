@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.cache;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.DecodedImageCache;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Decoded sources are kept for the next builds inside the same JVM, until the source changes or the cache is full.
+ *
+ * @author Danny Althoff
+ */
+public class DecodedImageCacheTest {
+
+    private File source;
+
+    private DecodedImageCache.Configuration configuration;
+
+    @BeforeMethod
+    public void createSource() throws IOException {
+        // the cache is shared by the whole JVM, configuring no bytes evicts everything
+        DecodedImageCache.configure(0).close();
+        configuration = DecodedImageCache.configure(1024);
+        source = Files.createTempFile("imagetransform", ".png").toFile();
+        Files.write(source.toPath(), new byte[]{1, 2, 3});
+    }
+
+    @AfterMethod
+    public void disableCache() {
+        configuration.close();
+        DecodedImageCache.configure(0).close();
+    }
+
+    @Test
+    public void runningTasksAreBoundedByBiggestConfiguration() {
+        try(DecodedImageCache.Configuration disablingConfiguration = DecodedImageCache.configure(0);
+                DecodedImageCache.Configuration smallConfiguration = DecodedImageCache.configure(256)){
+            // disabling the cache inside another task does not affect this one
+            assertEquals(DecodedImageCache.getMaxCachedBytes(), 1024);
+            assertTrue(DecodedImageCache.put("first", "first.png", new PixelImage(8, 8, new int[64])));
+            assertTrue(DecodedImageCache.put("second", "second.png", new PixelImage(8, 8, new int[64])));
+
+            configuration.close();
+
+            assertEquals(DecodedImageCache.getMaxCachedBytes(), 256);
+            assertEquals(DecodedImageCache.getCachedBytes(), 256);
+            assertTrue(DecodedImageCache.get("second") != null);
+        }
+        // the small configuration finished first, the remaining one stays for the next builds
+        assertEquals(DecodedImageCache.getMaxCachedBytes(), 0);
+        assertEquals(DecodedImageCache.getCachedBytes(), 0);
+    }
+
+    @Test
+    public void cachedImageIsFound() {
+        String key = DecodedImageCache.createKey(source, 16, 16);
+        PixelImage image = new PixelImage(8, 8, new int[64]);
+
+        assertNull(DecodedImageCache.get(key));
+        assertTrue(DecodedImageCache.put(key, source.getAbsolutePath(), image));
+
+        assertSame(DecodedImageCache.get(DecodedImageCache.createKey(source, 16, 16)), image);
+        assertEquals(DecodedImageCache.getCachedBytes(), 256);
+    }
+
+    @Test
+    public void keyDependsOnSourceStateAndDecodeSize() throws Exception {
+        String key = DecodedImageCache.createKey(source, 16, 16);
+        assertNotEquals(DecodedImageCache.createKey(source, 32, 32), key);
+
+        assertTrue(source.setLastModified(source.lastModified() + 2000));
+        assertNotEquals(DecodedImageCache.createKey(source, 16, 16), key);
+    }
+
+    @Test
+    public void changedSourceReplacesCachedImage() throws Exception {
+        String key = DecodedImageCache.createKey(source, 16, 16);
+        DecodedImageCache.put(key, source.getAbsolutePath(), new PixelImage(8, 8, new int[64]));
+
+        Files.write(source.toPath(), new byte[]{1, 2, 3, 4});
+        String changedKey = DecodedImageCache.createKey(source, 16, 16);
+        PixelImage changedImage = new PixelImage(4, 4, new int[16]);
+        DecodedImageCache.put(changedKey, source.getAbsolutePath(), changedImage);
+
+        assertNull(DecodedImageCache.get(key));
+        assertSame(DecodedImageCache.get(changedKey), changedImage);
+        assertEquals(DecodedImageCache.getCachedBytes(), 64);
+    }
+
+    @Test
+    public void leastRecentlyUsedImageIsEvicted() {
+        DecodedImageCache.put("first", "first.png", new PixelImage(8, 8, new int[64]));
+        DecodedImageCache.put("second", "second.png", new PixelImage(8, 8, new int[64]));
+        DecodedImageCache.put("third", "third.png", new PixelImage(8, 8, new int[64]));
+        DecodedImageCache.put("fourth", "fourth.png", new PixelImage(8, 8, new int[64]));
+        assertEquals(DecodedImageCache.getCachedBytes(), 1024);
+        // using it keeps it inside the cache
+        DecodedImageCache.get("first");
+
+        DecodedImageCache.put("fifth", "fifth.png", new PixelImage(8, 8, new int[64]));
+
+        assertEquals(DecodedImageCache.getCachedBytes(), 1024);
+        assertNull(DecodedImageCache.get("second"));
+        assertTrue(DecodedImageCache.get("first") != null);
+    }
+
+    @Test
+    public void tooBigImageIsNotCached() {
+        assertFalse(DecodedImageCache.put("big", "big.png", new PixelImage(32, 32, new int[1024])));
+
+        assertNull(DecodedImageCache.get("big"));
+        assertEquals(DecodedImageCache.getCachedBytes(), 0);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.cache;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.SharedTransformService;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Every output gets rendered by the first task claiming it, all other tasks are waiting for that rendering and must
+ * never wait forever.
+ *
+ * @author Danny Althoff
+ */
+public class SharedTransformServiceTest {
+
+    private Project project;
+    private SharedTransformService service;
+
+    @BeforeMethod
+    public void createService() throws IOException {
+        project = ProjectBuilder.builder().withProjectDir(Files.createTempDirectory("imagetransform").toFile()).build();
+        service = SharedTransformService.forBuild(project.getGradle());
+    }
+
+    @Test
+    public void completedRenderingIsShared() throws Exception {
+        File renderedFile = new File(project.getProjectDir(), "rendered.png");
+        Files.write(renderedFile.toPath(), new byte[]{1, 2, 3});
+
+        assertNull(service.claimRendering("output"));
+        CompletableFuture<File> waitingRendering = service.claimRendering("output");
+        assertNotNull(waitingRendering);
+        assertFalse(waitingRendering.isDone());
+
+        service.completeRendering("output", renderedFile);
+
+        assertSame(waitingRendering.get(), renderedFile);
+        assertSame(service.claimRendering("output").get(), renderedFile);
+    }
+
+    @Test
+    public void renderingIsSharedWithOtherProjectsOfSameBuild() throws Exception {
+        File renderedFile = new File(project.getProjectDir(), "rendered.png");
+        Files.write(renderedFile.toPath(), new byte[]{1, 2, 3});
+        Project subProject = ProjectBuilder.builder().withName("sub").withParent(project).build();
+        Project otherBuildProject = ProjectBuilder.builder().withProjectDir(Files.createTempDirectory("imagetransform").toFile()).build();
+
+        assertNull(service.claimRendering("output"));
+        service.completeRendering("output", renderedFile);
+
+        // every project gets its own service instance (like when loaded by its own classloader), sharing the state
+        assertSame(SharedTransformService.forBuild(subProject.getGradle()).claimRendering("output").get(), renderedFile);
+        assertNull(SharedTransformService.forBuild(otherBuildProject.getGradle()).claimRendering("output"));
+    }
+
+    @Test
+    public void failedRenderingIsClaimedAgain() throws Exception {
+        assertNull(service.claimRendering("output"));
+        CompletableFuture<File> waitingRendering = service.claimRendering("output");
+
+        service.completeRendering("output", null);
+
+        assertNull(waitingRendering.get());
+        assertNull(service.claimRendering("output"));
+    }
+
+    @Test
+    public void abortedRenderingReleasesWaitingTasks() throws Exception {
+        assertNull(service.claimRendering("output"));
+        CompletableFuture<File> waitingRendering = service.claimRendering("output");
+
+        IllegalStateException cause = new IllegalStateException("aborted");
+        service.abortRendering("output", cause);
+
+        assertTrue(waitingRendering.isCompletedExceptionally());
+        try{
+            waitingRendering.get();
+            fail("Aborted rendering got completed");
+        } catch(ExecutionException ex){
+            assertSame(ex.getCause(), cause);
+        }
+        // the next task renders it itself
+        assertNull(service.claimRendering("output"));
+    }
+
+    @Test
+    public void abortingCompletedRenderingKeepsIt() throws Exception {
+        File renderedFile = new File(project.getProjectDir(), "rendered.png");
+        Files.write(renderedFile.toPath(), new byte[]{1, 2, 3});
+        assertNull(service.claimRendering("output"));
+        service.completeRendering("output", renderedFile);
+
+        service.abortRendering("output", new IllegalStateException("aborted"));
+
+        assertEquals(service.claimRendering("output").get(), renderedFile);
+    }
+}
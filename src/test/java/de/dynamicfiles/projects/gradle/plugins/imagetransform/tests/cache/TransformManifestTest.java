@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.cache;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.cache.TransformManifest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.Resolution;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.imaging.ImageFormats;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Entries are only transformed again when their source content, their parameters or the task settings got changed,
+ * or when their destination is missing.
+ *
+ * @author Danny Althoff
+ */
+public class TransformManifestTest {
+
+    private File directory;
+    private File manifestFile;
+    private File source;
+    private ImageTransformEntry transformEntry;
+
+    @BeforeMethod
+    public void createFiles() throws IOException {
+        directory = Files.createTempDirectory("imagetransform").toFile();
+        manifestFile = new File(directory, "build/imagetransform/task.manifest");
+        source = new File(directory, "source.png");
+        Files.write(source.toPath(), new byte[]{1, 2, 3, 4});
+        transformEntry = createTransformEntry("64x64", new File(directory, "source-64x64.png"));
+    }
+
+    @Test
+    public void transformedEntryIsUpToDate() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        assertFalse(manifest.isUpToDate(transformEntry));
+
+        manifest.markTransformed(transformEntry);
+
+        assertTrue(manifest.isUpToDate(transformEntry));
+    }
+
+    @Test
+    public void savedManifestIsLoadedAgain() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(transformEntry);
+        manifest.save();
+
+        TransformManifest loadedManifest = TransformManifest.load(manifestFile);
+
+        assertTrue(loadedManifest.isUpToDate(transformEntry));
+        assertEquals(loadedManifest.getOrphanedDestinations(Collections.singletonList(transformEntry)), Collections.emptySet());
+    }
+
+    @Test
+    public void sourceHashOfPathWithSeparatorIsKept() throws Exception {
+        File pipeDirectory = new File(directory, "with|pipe");
+        assertTrue(pipeDirectory.mkdir());
+        source = new File(pipeDirectory, "source.png");
+        Files.write(source.toPath(), new byte[]{1, 2, 3, 4});
+        ImageTransformEntry pipeTransformEntry = createTransformEntry("64x64", new File(pipeDirectory, "source-64x64.png"));
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(pipeTransformEntry);
+        manifest.save();
+
+        TransformManifest loadedManifest = TransformManifest.load(manifestFile);
+        AtomicInteger hashedFiles = new AtomicInteger();
+        loadedManifest.setContentHasher(file -> {
+            hashedFiles.incrementAndGet();
+            return TransformManifest.hashFileContent(file);
+        });
+
+        assertTrue(loadedManifest.isUpToDate(pipeTransformEntry));
+        assertEquals(hashedFiles.get(), 0);
+    }
+
+    @Test
+    public void savedManifestIsReplaced() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.save();
+        byte[] previousContent = Files.readAllBytes(manifestFile.toPath());
+        // a writer overwriting the manifest in place would change the linked file too
+        Path previousManifest = Files.createLink(new File(directory, "previous.manifest").toPath(), manifestFile.toPath());
+
+        manifest.markTransformed(transformEntry);
+        manifest.save();
+
+        assertEquals(Files.readAllBytes(previousManifest), previousContent);
+        assertTrue(TransformManifest.load(manifestFile).isUpToDate(transformEntry));
+        assertEquals(manifestFile.getParentFile().list(), new String[]{manifestFile.getName()});
+    }
+
+    @Test
+    public void changedSourceContentIsOutdated() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(transformEntry);
+
+        Files.write(source.toPath(), new byte[]{4, 3, 2, 1});
+        source.setLastModified(source.lastModified() + 2000);
+
+        assertFalse(manifest.isUpToDate(transformEntry));
+    }
+
+    @Test
+    public void touchedSourceWithSameContentIsUpToDate() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(transformEntry);
+
+        source.setLastModified(source.lastModified() + 2000);
+
+        assertTrue(manifest.isUpToDate(transformEntry));
+    }
+
+    @Test
+    public void changedParametersAreOutdated() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(transformEntry);
+
+        assertFalse(manifest.isUpToDate(createTransformEntry("32x32", new File(transformEntry.destination))));
+        transformEntry.scalingFilter = ScalingFilter.BILINEAR;
+        assertFalse(manifest.isUpToDate(transformEntry));
+    }
+
+    @Test
+    public void changedTaskSettingsAreOutdated() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.setTaskSettingsFingerprint("png:9");
+        manifest.markTransformed(transformEntry);
+
+        manifest.setTaskSettingsFingerprint("png:1");
+
+        assertFalse(manifest.isUpToDate(transformEntry));
+    }
+
+    @Test
+    public void missingDestinationIsOutdated() throws Exception {
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(transformEntry);
+
+        Files.delete(new File(transformEntry.destination).toPath());
+
+        assertFalse(manifest.isUpToDate(transformEntry));
+    }
+
+    @Test
+    public void removedEntriesAreOrphaned() throws Exception {
+        ImageTransformEntry otherTransformEntry = createTransformEntry("32x32", new File(directory, "source-32x32.png"));
+        TransformManifest manifest = TransformManifest.load(manifestFile);
+        manifest.markTransformed(transformEntry);
+        manifest.markTransformed(otherTransformEntry);
+        assertEquals(manifest.getOrphanedDestinations(Arrays.asList(transformEntry, otherTransformEntry)), Collections.emptySet());
+
+        assertEquals(manifest.getOrphanedDestinations(Collections.singletonList(transformEntry)), Collections.singleton(otherTransformEntry.destination));
+
+        manifest.forgetDestination(otherTransformEntry.destination);
+        assertEquals(manifest.getOrphanedDestinations(Collections.singletonList(transformEntry)), Collections.emptySet());
+    }
+
+    private ImageTransformEntry createTransformEntry(String resolution, File destination) throws IOException {
+        Files.write(destination.toPath(), new byte[]{5});
+        ImageTransformEntry createdTransformEntry = new ImageTransformEntry();
+        createdTransformEntry.source = source.getAbsolutePath();
+        createdTransformEntry.sourceFormat = ImageFormats.PNG;
+        createdTransformEntry.destination = destination.getAbsolutePath();
+        createdTransformEntry.resolution = resolution;
+        createdTransformEntry.parsedResolution = Resolution.parse(resolution);
+        createdTransformEntry.format = ImageFormats.PNG;
+        createdTransformEntry.scalingFilter = ScalingFilter.LANCZOS3;
+        return createdTransformEntry;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.codecs;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.CommonsImagingCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodecRegistry;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageIOCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngEncoder;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngFilterStrategy;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageFormats;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Every format gets read and written by the codec having the highest priority, ImageIO is preferred over
+ * commons-imaging where it supports the format.
+ *
+ * @author Danny Althoff
+ */
+public class ImageCodecRegistryTest {
+
+    @Test
+    public void imageIOIsPreferredWhereSupported() throws Exception {
+        ImageCodecRegistry codecRegistry = new ImageCodecRegistry();
+
+        assertTrue(codecRegistry.getReader(ImageFormats.PNG) instanceof ImageIOCodec);
+        assertTrue(codecRegistry.getWriter(ImageFormats.PNG) instanceof ImageIOCodec);
+        assertTrue(codecRegistry.getReader(ImageFormats.BMP) instanceof ImageIOCodec);
+        assertTrue(codecRegistry.getWriter(ImageFormats.BMP) instanceof ImageIOCodec);
+        assertTrue(codecRegistry.getReader(ImageFormats.ICO) instanceof CommonsImagingCodec);
+        assertTrue(codecRegistry.getWriter(ImageFormats.ICNS) instanceof CommonsImagingCodec);
+    }
+
+    @Test
+    public void registeredCodecWithHigherPriorityWins() throws Exception {
+        ImageCodecRegistry codecRegistry = new ImageCodecRegistry();
+        // resolved codecs are remembered, registering must not keep the old ones
+        assertTrue(codecRegistry.getWriter(ImageFormats.PNG) instanceof ImageIOCodec);
+        ImageCodec customCodec = new CustomBmpReader();
+
+        codecRegistry.register(new PngCodec(new PngEncoder(9, PngFilterStrategy.ADAPTIVE, true)));
+        codecRegistry.register(customCodec);
+
+        assertTrue(codecRegistry.getWriter(ImageFormats.PNG) instanceof PngCodec);
+        // the PNG-codec is only writing
+        assertTrue(codecRegistry.getReader(ImageFormats.PNG) instanceof ImageIOCodec);
+        assertSame(codecRegistry.getReader(ImageFormats.BMP), customCodec);
+        assertTrue(codecRegistry.getWriter(ImageFormats.BMP) instanceof ImageIOCodec);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void unsupportedFormatIsRejected() throws Exception {
+        new ImageCodecRegistry().getWriter(VectorImageFormats.SVG);
+    }
+
+    @DataProvider(name = "rasterFormats")
+    public Object[][] rasterFormats() {
+        return new Object[][]{
+            {ImageFormats.PNG},
+            {ImageFormats.BMP},
+            {ImageFormats.ICO},
+            {ImageFormats.ICNS}
+        };
+    }
+
+    @Test(dataProvider = "rasterFormats")
+    public void writtenImageIsReadAgain(ImageFormat format) throws Exception {
+        ImageCodecRegistry codecRegistry = new ImageCodecRegistry();
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for( int y = 0; y < 16; y++ ){
+            for( int x = 0; x < 16; x++ ){
+                image.setRGB(x, y, 0xFF000000 | (x * 16) << 16 | (y * 16));
+            }
+        }
+        File file = Files.createTempFile("imagetransform", "." + format.getExtension().toLowerCase()).toFile();
+        try(OutputStream outputStream = Files.newOutputStream(file.toPath())){
+            codecRegistry.getWriter(format).write(image, format, outputStream);
+        }
+
+        ImageCodec reader = codecRegistry.getReader(format);
+        assertEquals(reader.readSize(file), new Dimension(16, 16));
+        BufferedImage readImage = reader.read(file);
+        for( int y = 0; y < 16; y++ ){
+            for( int x = 0; x < 16; x++ ){
+                assertEquals(readImage.getRGB(x, y), image.getRGB(x, y), format.getName() + " at " + x + "," + y);
+            }
+        }
+    }
+
+    private static class CustomBmpReader implements ImageCodec {
+
+        @Override
+        public int getPriority() {
+            return ImageIOCodec.PRIORITY + 1;
+        }
+
+        @Override
+        public String getName() {
+            return "custom";
+        }
+
+        @Override
+        public boolean canRead(ImageFormat format) {
+            return format == ImageFormats.BMP;
+        }
+
+        @Override
+        public boolean canWrite(ImageFormat format) {
+            return false;
+        }
+
+        @Override
+        public BufferedImage read(File source) throws IOException {
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public Dimension readSize(File source) throws IOException {
+            return new Dimension(1, 1);
+        }
+
+        @Override
+        public void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException {
+            throw new IOException("Writing is not supported");
+        }
+    }
+}
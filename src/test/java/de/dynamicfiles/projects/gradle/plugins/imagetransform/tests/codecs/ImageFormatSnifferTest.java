@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.codecs;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageFormatSniffer;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageFormats;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.imaging.ImageFormat;
+import org.apache.commons.imaging.ImageFormats;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Formats are detected by the first bytes of the file, without decoding it.
+ *
+ * @author Danny Althoff
+ */
+public class ImageFormatSnifferTest {
+
+    @DataProvider
+    public Object[][] headers() {
+        return new Object[][]{
+            {bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D), ImageFormats.PNG},
+            {bytes(0xFF, 0xD8, 0xFF, 0xE0, 0, 0x10), ImageFormats.JPEG},
+            {"GIF89a\u0001\u0000\u0001\u0000".getBytes(StandardCharsets.ISO_8859_1), ImageFormats.GIF},
+            {bytes('B', 'M', 0x3A, 0, 0, 0, 0, 0, 0, 0, 0x36, 0, 0, 0), ImageFormats.BMP},
+            {bytes('i', 'c', 'n', 's', 0, 0, 0, 8), ImageFormats.ICNS},
+            {bytes('I', 'I', 0x2A, 0, 8, 0, 0, 0), ImageFormats.TIFF},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8), VectorImageFormats.SVG},
+            {("\uFEFF<?xml version=\"1.0\"?>\n<!-- icon -->\n<svg:svg xmlns:svg=\"http://www.w3.org/2000/svg\">"
+              + "</svg:svg>").getBytes(StandardCharsets.UTF_8), VectorImageFormats.SVG},
+            {"<html><body>no image</body></html>".getBytes(StandardCharsets.UTF_8), ImageFormats.UNKNOWN},
+            {"just some text".getBytes(StandardCharsets.UTF_8), ImageFormats.UNKNOWN}
+        };
+    }
+
+    @Test(dataProvider = "headers")
+    public void formatIsDetectedByHeader(byte[] content, ImageFormat expectedFormat) throws Exception {
+        assertSame(ImageFormatSniffer.guessFormat(write(content)), expectedFormat);
+    }
+
+    @Test
+    public void changedFileIsDetectedAgain() throws Exception {
+        File file = write(bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A));
+        assertSame(ImageFormatSniffer.guessFormat(file), ImageFormats.PNG);
+
+        Files.write(file.toPath(), bytes('B', 'M', 0x3A, 0, 0, 0, 0, 0, 0, 0, 0x36, 0, 0, 0));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+        assertEquals(ImageFormatSniffer.guessFormat(file), ImageFormats.BMP);
+    }
+
+    @Test
+    public void leastRecentlyCheckedFileIsForgotten() throws Exception {
+        File directory = Files.createTempDirectory("imagetransform").toFile();
+        byte[] pngHeader = bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+        File first = new File(directory, "first.img");
+        File second = new File(directory, "second.img");
+        Files.write(first.toPath(), pngHeader);
+        Files.write(second.toPath(), pngHeader);
+        ImageFormatSniffer.guessFormat(first);
+        ImageFormatSniffer.guessFormat(second);
+        for( int index = 0; index < ImageFormatSniffer.MAX_SNIFFED_FORMATS - 2; index++ ){
+            File other = new File(directory, index + ".img");
+            Files.write(other.toPath(), pngHeader);
+            ImageFormatSniffer.guessFormat(other);
+        }
+        // using it keeps it remembered
+        ImageFormatSniffer.guessFormat(first);
+
+        File last = new File(directory, "last.img");
+        Files.write(last.toPath(), pngHeader);
+        ImageFormatSniffer.guessFormat(last);
+
+        assertEquals(ImageFormatSniffer.getSniffedFormatCount(), ImageFormatSniffer.MAX_SNIFFED_FORMATS);
+        // same size and modification, only files being checked again notice the new content
+        byte[] bmpHeader = bytes('B', 'M', 0x3A, 0, 0, 0, 0, 0);
+        for( File file : new File[]{first, second} ){
+            long lastModified = file.lastModified();
+            Files.write(file.toPath(), bmpHeader);
+            assertTrue(file.setLastModified(lastModified));
+        }
+        assertSame(ImageFormatSniffer.guessFormat(first), ImageFormats.PNG);
+        assertSame(ImageFormatSniffer.guessFormat(second), ImageFormats.BMP);
+    }
+
+    private static File write(byte[] content) throws IOException {
+        File file = Files.createTempFile("imagetransform", ".img").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for( int index = 0; index < values.length; index++ ){
+            bytes[index] = (byte) values[index];
+        }
+        return bytes;
+    }
+}
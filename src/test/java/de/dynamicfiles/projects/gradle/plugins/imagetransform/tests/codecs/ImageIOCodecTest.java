@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.codecs;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.ImageIOCodec;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import javax.imageio.ImageIO;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Big sources are decoded subsampled, never allocating the full raster when a smaller image is enough.
+ *
+ * @author Danny Althoff
+ */
+public class ImageIOCodecTest {
+
+    private static final int SOURCE_WIDTH = 1000;
+    private static final int SOURCE_HEIGHT = 800;
+
+    private final ImageIOCodec codec = new ImageIOCodec();
+    private BufferedImage sourceImage;
+    private File source;
+
+    @BeforeClass
+    public void writeSource() throws IOException {
+        sourceImage = new BufferedImage(SOURCE_WIDTH, SOURCE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for( int y = 0; y < SOURCE_HEIGHT; y++ ){
+            for( int x = 0; x < SOURCE_WIDTH; x++ ){
+                sourceImage.setRGB(x, y, 0xFF000000 | (x & 0xFF) << 16 | (y & 0xFF) << 8 | (x + y) & 0xFF);
+            }
+        }
+        source = Files.createTempFile("imagetransform", ".png").toFile();
+        ImageIO.write(sourceImage, "png", source);
+    }
+
+    @Test
+    public void sizeIsReadFromHeader() throws Exception {
+        assertEquals(codec.readSize(source), new Dimension(SOURCE_WIDTH, SOURCE_HEIGHT));
+    }
+
+    @Test
+    public void bigSourceIsDecodedSubsampled() throws Exception {
+        BufferedImage image = codec.read(source, 100, 100);
+
+        // both axis are using the same factor (8), keeping the aspect ratio and the required height
+        assertEquals(image.getWidth(), 125);
+        assertEquals(image.getHeight(), 100);
+        for( int y = 0; y < image.getHeight(); y++ ){
+            for( int x = 0; x < image.getWidth(); x++ ){
+                assertEquals(image.getRGB(x, y), sourceImage.getRGB(x * 8, y * 8), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void sourceIsDecodedFullyWhenRequired() throws Exception {
+        BufferedImage image = codec.read(source, 600, 300);
+
+        assertEquals(image.getWidth(), SOURCE_WIDTH);
+        assertEquals(image.getHeight(), SOURCE_HEIGHT);
+    }
+
+    @DataProvider(name = "subsamplings")
+    public Object[][] subsamplings() {
+        return new Object[][]{
+            // source width, source height, required width, required height, subsampling
+            {8000, 8000, 1024, 1024, 7},
+            {8000, 8000, 8000, 8000, 1},
+            {8000, 4000, 1000, 1000, 4},
+            {100, 100, 200, 200, 1},
+            {100, 100, 0, 0, 1}
+        };
+    }
+
+    @Test(dataProvider = "subsamplings")
+    public void subsamplingKeepsRequiredSize(int sourceWidth, int sourceHeight, int requiredWidth, int requiredHeight, int subsampling) {
+        assertEquals(ImageCodec.getSubsampling(sourceWidth, sourceHeight, requiredWidth, requiredHeight), subsampling);
+    }
+}
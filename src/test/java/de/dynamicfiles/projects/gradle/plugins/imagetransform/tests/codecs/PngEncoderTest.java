@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.codecs;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngEncoder;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.PngFilterStrategy;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Encoding has to be lossless and deterministic for every filter strategy, with and without palette-reduction.
+ *
+ * @author Danny Althoff
+ */
+public class PngEncoderTest {
+
+    @DataProvider
+    public Object[][] encodings() {
+        List<Object[]> encodings = new ArrayList<>();
+        for( PngFilterStrategy filterStrategy : PngFilterStrategy.values() ){
+            for( boolean paletteReduction : new boolean[]{true, false} ){
+                encodings.add(new Object[]{filterStrategy, paletteReduction, "opaque"});
+                encodings.add(new Object[]{filterStrategy, paletteReduction, "translucent"});
+                encodings.add(new Object[]{filterStrategy, paletteReduction, "few-colors"});
+            }
+        }
+        // big enough to get compressed in multiple blocks
+        encodings.add(new Object[]{PngFilterStrategy.ADAPTIVE, false, "big"});
+        return encodings.toArray(new Object[encodings.size()][]);
+    }
+
+    @Test(dataProvider = "encodings")
+    public void sameImageResultsInSameBytes(PngFilterStrategy filterStrategy, boolean paletteReduction, String imageKind) throws IOException {
+        BufferedImage image = createImage(imageKind);
+        PngEncoder pngEncoder = new PngEncoder(9, filterStrategy, paletteReduction);
+
+        byte[] firstEncoding = encode(pngEncoder, image);
+        byte[] secondEncoding = encode(new PngEncoder(9, filterStrategy, paletteReduction), image);
+
+        assertEquals(secondEncoding, firstEncoding);
+    }
+
+    @Test(dataProvider = "encodings")
+    public void decodedImageHasSamePixels(PngFilterStrategy filterStrategy, boolean paletteReduction, String imageKind) throws IOException {
+        BufferedImage image = createImage(imageKind);
+
+        BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(encode(new PngEncoder(6, filterStrategy, paletteReduction), image)));
+
+        assertEquals(decodedImage.getWidth(), image.getWidth());
+        assertEquals(decodedImage.getHeight(), image.getHeight());
+        int width = image.getWidth();
+        int height = image.getHeight();
+        assertEquals(decodedImage.getRGB(0, 0, width, height, null, 0, width), image.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    @Test
+    public void blocksAreCompressedByGivenExecutorOnly() throws Exception {
+        BufferedImage image = createImage("big");
+        byte[] sequentialEncoding = encode(new PngEncoder(9, PngFilterStrategy.ADAPTIVE, false), image);
+        ExecutorService blockExecutor = Executors.newFixedThreadPool(2);
+        AtomicInteger executedBlocks = new AtomicInteger();
+        try{
+            PngEncoder pngEncoder = new PngEncoder(9, PngFilterStrategy.ADAPTIVE, false, block -> {
+                executedBlocks.incrementAndGet();
+                blockExecutor.execute(block);
+            });
+
+            assertEquals(encode(pngEncoder, image), sequentialEncoding);
+        } finally{
+            blockExecutor.shutdownNow();
+        }
+        // every block except the first one got handed to the executor
+        assertTrue(executedBlocks.get() > 1);
+    }
+
+    @Test
+    public void blocksAreCompressedWithoutFreeWorker() throws Exception {
+        BufferedImage image = createImage("big");
+        // the only worker is busy (like encoding this image), waiting must not need it
+        ExecutorService blockExecutor = Executors.newSingleThreadExecutor();
+        CountDownLatch encoded = new CountDownLatch(1);
+        try{
+            blockExecutor.execute(() -> {
+                try{
+                    encoded.await();
+                } catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            byte[] encoding = encode(new PngEncoder(9, PngFilterStrategy.ADAPTIVE, false, blockExecutor), image);
+            encoded.countDown();
+
+            assertEquals(encoding, encode(new PngEncoder(9, PngFilterStrategy.ADAPTIVE, false), image));
+        } finally{
+            blockExecutor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidCompressionLevelIsRejected() {
+        new PngEncoder(10, PngFilterStrategy.ADAPTIVE, true);
+    }
+
+    private static byte[] encode(PngEncoder pngEncoder, BufferedImage image) throws IOException {
+        ByteArrayOutputStream pngData = new ByteArrayOutputStream();
+        pngEncoder.encode(image, pngData);
+        return pngData.toByteArray();
+    }
+
+    private static BufferedImage createImage(String imageKind) {
+        int size = "big".equals(imageKind) ? 700 : 97;
+        Random random = new Random(size);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for( int y = 0; y < size; y++ ){
+            for( int x = 0; x < size; x++ ){
+                int pixel;
+                switch( imageKind ){
+                    case "translucent":
+                        pixel = (((x + y) & 0xFF) << 24) | (x * 2 << 16) | (y * 2 << 8) | random.nextInt(4);
+                        break;
+                    case "few-colors":
+                        // palette having transparent and translucent entries
+                        pixel = new int[]{0x00000000, 0x80FF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF}[(x / 10 + y / 7) % 5];
+                        break;
+                    default:
+                        pixel = 0xFF000000 | ((x & 0xFF) << 16) | ((y & 0xFF) << 8) | random.nextInt(16);
+                }
+                image.setRGB(x, y, pixel);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.codecs;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.SvgCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageFormats;
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.imaging.ImageFormats;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * The size of SVG-documents is read from the attributes of the root-element, without rendering them (which requires
+ * Batik inside the buildscript-classpath).
+ *
+ * @author Danny Althoff
+ */
+public class SvgCodecTest {
+
+    private final SvgCodec svgCodec = new SvgCodec();
+
+    @DataProvider
+    public Object[][] documents() {
+        // root element, expected width, expected height
+        return new Object[][]{
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"48\" height=\"32\">", 48, 32},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"48px\" height=\"32.2px\">", 48, 33},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"1in\" height=\"72pt\">", 96, 96},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"25.4mm\" height=\"2.54cm\">", 96, 96},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 512 256\">", 512, 256},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0,0,512,256\" width=\"50%\" height=\"100%\">", 256, 256},
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 512 256\" width=\"64\">", 64, 256},
+            // same as browsers, when there is neither a size nor a viewBox
+            {"<svg xmlns=\"http://www.w3.org/2000/svg\">", 300, 150}
+        };
+    }
+
+    @Test(dataProvider = "documents")
+    public void sizeIsReadFromRootElement(String rootElement, int expectedWidth, int expectedHeight) throws Exception {
+        File source = write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- icon -->\n" + rootElement + "<rect width=\"10\" height=\"10\"/></svg>");
+
+        assertEquals(svgCodec.readSize(source), new Dimension(expectedWidth, expectedHeight));
+    }
+
+    @Test
+    public void externalEntitiesAreNotLoaded() throws Exception {
+        File missingFile = new File(Files.createTempDirectory("imagetransform").toFile(), "missing.dtd");
+        File source = write("<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE svg [<!ENTITY % external SYSTEM \"" + missingFile.toURI() + "\"> %external; <!ENTITY size \"16\">]>\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"&size;\" height=\"&size;\"/>");
+
+        // loading the external entity would fail, the internal one is still resolved
+        assertEquals(svgCodec.readSize(source), new Dimension(16, 16));
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ".*root element.*")
+    public void otherDocumentFails() throws Exception {
+        svgCodec.readSize(write("<html><body/></html>"));
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Invalid viewBox.*")
+    public void malformedViewBoxFails() throws Exception {
+        svgCodec.readSize(write("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 512\"/>"));
+    }
+
+    @Test
+    public void onlyReadsSvg() {
+        assertTrue(svgCodec.canRead(VectorImageFormats.SVG));
+        assertFalse(svgCodec.canRead(ImageFormats.PNG));
+        assertFalse(svgCodec.canWrite(VectorImageFormats.SVG));
+    }
+
+    private static File write(String content) throws IOException {
+        File file = Files.createTempFile("imagetransform", ".svg").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.containers;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.containers.IconContainerImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.containers.IconContainerWriter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.apache.commons.imaging.ImageFormats;
+import org.apache.commons.imaging.Imaging;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * ICNS-files are written with PNG-compressed entries, only 48x48 (having no PNG-compressed type) is written using the
+ * legacy types.
+ *
+ * @author Danny Althoff
+ */
+public class IcnsContainerWriterTest {
+
+    @Test
+    public void pngImagesAreEmbedded() throws IOException {
+        byte[] icnsData = write(createImage(16), createImage(32));
+
+        ByteBuffer icns = ByteBuffer.wrap(icnsData);
+        assertEquals(readType(icns), "icns");
+        assertEquals(icns.getInt(), icnsData.length);
+        List<String> iconTypes = new ArrayList<>();
+        while( icns.hasRemaining() ){
+            iconTypes.add(readType(icns));
+            int entryLength = icns.getInt();
+            byte[] pngSignature = new byte[4];
+            icns.get(pngSignature);
+            assertEquals(pngSignature, new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+            icns.position(icns.position() + entryLength - 12);
+        }
+        assertEquals(iconTypes, Arrays.asList("icp4", "icp5", "ic11"));
+    }
+
+    @Test
+    public void legacySizeIsReadable() throws Exception {
+        BufferedImage image = createImage(48);
+
+        List<BufferedImage> readImages = Imaging.getAllBufferedImages(write(image));
+
+        assertEquals(readImages.size(), 1);
+        BufferedImage readImage = readImages.get(0);
+        assertEquals(readImage.getWidth(), 48);
+        assertEquals(readImage.getHeight(), 48);
+        assertEquals(readImage.getRGB(0, 0, 48, 48, null, 0, 48), image.getRGB(0, 0, 48, 48, null, 0, 48));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void unsupportedSizeIsRejected() throws IOException {
+        write(createImage(20));
+    }
+
+    private static byte[] write(BufferedImage... images) throws IOException {
+        List<IconContainerImage> containerImages = new ArrayList<>();
+        for( BufferedImage image : images ){
+            ByteArrayOutputStream pngData = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", pngData);
+            containerImages.add(new IconContainerImage(image.getWidth(), image.getHeight(), pngData.toByteArray()));
+        }
+        ByteArrayOutputStream icnsData = new ByteArrayOutputStream();
+        IconContainerWriter.forFormat(ImageFormats.ICNS).write(containerImages, icnsData);
+        return icnsData.toByteArray();
+    }
+
+    private static String readType(ByteBuffer icns) {
+        byte[] type = new byte[4];
+        icns.get(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Flat areas (compressed as runs) next to gradients (stored as literals), having opaque and translucent parts.
+     */
+    private static BufferedImage createImage(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for( int y = 0; y < size; y++ ){
+            for( int x = 0; x < size; x++ ){
+                int alpha = y < size / 2 ? 255 : x * 255 / size;
+                int red = x < size / 3 ? 200 : x * 5;
+                int green = (x + y) % 7 == 0 ? 10 : 120;
+                int blue = y * 5;
+                image.setRGB(x, y, (alpha << 24) | (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+}
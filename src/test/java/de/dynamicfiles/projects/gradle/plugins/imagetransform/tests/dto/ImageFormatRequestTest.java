@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.dto;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageFormatRequest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageTransformEntry;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.commons.imaging.ImageFormats;
+import org.gradle.api.GradleException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Requesting multiple formats and resolutions at once creates the same entries as requesting them one by one.
+ *
+ * @author Danny Althoff
+ */
+public class ImageFormatRequestTest {
+
+    private ImageFormatRequest request;
+
+    @BeforeMethod
+    public void createRequest() {
+        request = new ImageFormatRequest();
+        request.setSource("src/main/images/source.png");
+    }
+
+    @Test
+    public void everyFormatIsRequestedInEveryResolution() {
+        request.to(options("formats", Arrays.asList("png", "ICO", ImageFormats.BMP), "resolutions", Arrays.asList("64x64", "128x128"), "destination", "build/out/*"));
+
+        List<ImageTransformEntry> transformEntries = request.getTransformEntries();
+        assertEquals(transformEntries.stream().map(entry -> entry.format.getName() + " " + entry.resolution).collect(Collectors.toList()),
+                Arrays.asList("PNG 64x64", "PNG 128x128", "ICO 64x64", "ICO 128x128", "BMP 64x64", "BMP 128x128"));
+        transformEntries.forEach(transformEntry -> {
+            assertEquals(transformEntry.source, "src/main/images/source.png");
+            assertEquals(transformEntry.destination, "build/out/*");
+            assertTrue(transformEntry.parsedResolution != null);
+            assertNull(transformEntry.containerResolutions);
+            // multiple resolutions would overwrite each other otherwise
+            assertTrue(transformEntry.appendResolution);
+        });
+    }
+
+    @Test
+    public void singleResolutionIsNotAppendedByDefault() {
+        request.to(options("formats", "png", "resolutions", "64x64", "destination", "build/out/icon.png"));
+        request.to(options("formats", "bmp", "resolutions", "64x64", "destination", "build/out/*", "appendResolution", true));
+
+        List<ImageTransformEntry> transformEntries = request.getTransformEntries();
+        assertEquals(transformEntries.size(), 2);
+        assertFalse(transformEntries.get(0).appendResolution);
+        assertTrue(transformEntries.get(1).appendResolution);
+    }
+
+    @Test
+    public void containerGetsAllResolutions() {
+        request.to(options("formats", Arrays.asList("ico", "icns"), "resolutions", Arrays.asList("16x16", "32x32"), "destination", "build/out/*", "container", true));
+
+        List<ImageTransformEntry> transformEntries = request.getTransformEntries();
+        assertEquals(transformEntries.size(), 4);
+        transformEntries.forEach(transformEntry -> {
+            assertEquals(transformEntry.containerResolutions, Arrays.asList("16x16", "32x32"));
+            assertFalse(transformEntry.appendResolution);
+        });
+        assertEquals(transformEntries.get(0).format, ImageFormats.ICO);
+        assertEquals(transformEntries.get(3).format, ImageFormats.ICNS);
+    }
+
+    @Test(expectedExceptions = GradleException.class)
+    public void unknownOptionFails() {
+        request.to(options("formats", "png", "resolutions", "64x64", "destinations", "build/out/*"));
+    }
+
+    @Test(expectedExceptions = GradleException.class)
+    public void unsupportedFormatFails() {
+        request.to(options("formats", "tiff", "resolutions", "64x64", "destination", "build/out/*"));
+    }
+
+    @Test(expectedExceptions = GradleException.class)
+    public void missingResolutionsFail() {
+        request.to(options("formats", "png", "destination", "build/out/*"));
+    }
+
+    @Test(expectedExceptions = GradleException.class, expectedExceptionsMessageRegExp = ".*PNG.*")
+    public void containerOfSingleImageFormatFails() {
+        request.to(options("formats", Arrays.asList("ico", "png"), "resolutions", "16x16", "destination", "build/out/*", "container", true));
+    }
+
+    private static Map<String, Object> options(Object... keysAndValues) {
+        Map<String, Object> options = new HashMap<>();
+        for( int index = 0; index < keysAndValues.length; index += 2 ){
+            options.put(String.valueOf(keysAndValues[index]), keysAndValues[index + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.dto;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.Resolution;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Parsing of all supported resolution specifications, and the sizes resulting from them.
+ *
+ * @author Danny Althoff
+ */
+public class ResolutionTest {
+
+    @DataProvider
+    public Object[][] validSpecifications() {
+        // specification, source width, source height, expected width, expected height, expected filename token
+        return new Object[][]{
+            {"64x64", 300, 200, 64, 64, "64x64"},
+            {"64x64x", 300, 200, 64, 64, "64x64"},
+            {" 64 X 48 ", 300, 200, 64, 48, "64x48"},
+            {"64x*", 300, 200, 64, 43, "64w"},
+            {"*x64", 300, 200, 96, 64, "64h"},
+            {"50%", 301, 201, 151, 101, "50pct"},
+            {"1%", 10, 10, 1, 1, "1pct"},
+            {"64x64@2x", 300, 200, 128, 128, "64x64@2x"},
+            {"64x64@1.5x", 300, 200, 96, 96, "64x64@1.5x"},
+            {"50%@2x", 300, 200, 300, 200, "50pct@2x"},
+            {"128x64:fit", 300, 200, 128, 64, "128x64-fit"},
+            {"128x64:CROP", 300, 200, 128, 64, "128x64-crop"},
+            {"32x32@2x:fill", 300, 200, 64, 64, "32x32@2x"}
+        };
+    }
+
+    @Test(dataProvider = "validSpecifications")
+    public void validSpecificationIsParsed(String specification, int sourceWidth, int sourceHeight, int expectedWidth, int expectedHeight, String expectedFilenameToken) {
+        Resolution resolution = Resolution.parse(specification);
+
+        assertEquals(resolution.getSize(sourceWidth, sourceHeight), new Dimension(expectedWidth, expectedHeight));
+        assertEquals(resolution.toFilenameToken(), expectedFilenameToken);
+        // the normalized specification describes the same resolution
+        assertEquals(Resolution.parse(resolution.toString()), resolution);
+    }
+
+    @DataProvider
+    public Object[][] invalidSpecifications() {
+        return new Object[][]{
+            {"64x64h"},
+            {""},
+            {"64"},
+            {"x64"},
+            {"64xx64"},
+            {"*x*"},
+            {"0x64"},
+            {"64x0"},
+            {"0%"},
+            {"-64x64"},
+            {"64x64@0x"},
+            {"64x64@2"},
+            {"64x*:fit"},
+            {"*x64:crop"},
+            {"64x64:stretch"},
+            {"99999999999x64"},
+            {"2000000000x64@2x"}
+        };
+    }
+
+    @Test(dataProvider = "invalidSpecifications", expectedExceptions = IllegalArgumentException.class)
+    public void invalidSpecificationIsRejected(String specification) {
+        Resolution.parse(specification);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void missingSpecificationIsRejected() {
+        Resolution.parse(null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*too big.*")
+    public void tooBigRelativeSizeIsRejected() {
+        Resolution.parse("200%@1000000x").getSize(100000, 100000);
+    }
+
+    @Test
+    public void relativeResolutionsAreDetected() {
+        assertFalse(Resolution.parse("64x64@2x").isRelative());
+        assertTrue(Resolution.parse("64x*").isRelative());
+        assertTrue(Resolution.parse("*x64").isRelative());
+        assertTrue(Resolution.parse("50%").isRelative());
+    }
+
+    @Test
+    public void sameSpecificationIsParsedOnce() {
+        assertSame(Resolution.parse("48x48@2x"), Resolution.parse("48x48@2x"));
+        assertEquals(Resolution.parse("48x48@2x"), Resolution.parse(" 48x48 @2x"));
+    }
+
+    @Test
+    public void parsedSpecificationsAreBounded() {
+        Resolution firstResolution = Resolution.parse("1x1");
+        for( int size = 2; size < 2000; size++ ){
+            Resolution.parse(size + "x" + size);
+        }
+
+        // got evicted, but is still equal
+        Resolution parsedAgain = Resolution.parse("1x1");
+        assertEquals(parsedAgain, firstResolution);
+        assertFalse(parsedAgain == firstResolution, "Every parsed specification is kept forever");
+    }
+
+    @Test
+    public void deserializedResolutionIsEqual() throws Exception {
+        Resolution resolution = Resolution.parse("64x*@2x");
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try(ObjectOutputStream objectOutputStream = new ObjectOutputStream(serialized)){
+            objectOutputStream.writeObject(resolution);
+        }
+        try(ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray()))){
+            assertEquals(objectInputStream.readObject(), resolution);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.output;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.output.DestinationWriter;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.output.EncodedImageBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Destinations are only replaced when their content changed, and never left half-written.
+ *
+ * @author Danny Althoff
+ */
+public class DestinationWriterTest {
+
+    private static final FileTime OLD_MODIFICATION = FileTime.fromMillis(1000000000000L);
+
+    private Path folder;
+
+    @BeforeMethod
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("imagetransform");
+    }
+
+    @DataProvider
+    public Object[][] contentSizes() {
+        // small files are read, big ones are compared through a mapping
+        return new Object[][]{
+            {1024},
+            {512 * 1024}
+        };
+    }
+
+    @Test(dataProvider = "contentSizes")
+    public void destinationIsCreatedWithParentFolders(int contentSize) throws Exception {
+        Path destination = folder.resolve("out/icons/icon.png");
+        byte[] content = createContent(contentSize);
+
+        assertTrue(DestinationWriter.write(ByteBuffer.wrap(content), destination));
+
+        assertEquals(Files.readAllBytes(destination), content);
+        // no temporary file is left behind
+        assertEquals(destination.getParent().toFile().list(), new String[]{"icon.png"});
+    }
+
+    @Test(dataProvider = "contentSizes")
+    public void identicalDestinationIsNotTouched(int contentSize) throws Exception {
+        Path destination = folder.resolve("icon.png");
+        byte[] content = createContent(contentSize);
+        DestinationWriter.write(ByteBuffer.wrap(content), destination);
+        Files.setLastModifiedTime(destination, OLD_MODIFICATION);
+
+        assertFalse(DestinationWriter.write(ByteBuffer.wrap(content.clone()), destination));
+
+        assertEquals(Files.getLastModifiedTime(destination), OLD_MODIFICATION);
+    }
+
+    @Test(dataProvider = "contentSizes")
+    public void changedDestinationIsReplaced(int contentSize) throws Exception {
+        Path destination = folder.resolve("icon.png");
+        byte[] content = createContent(contentSize);
+        DestinationWriter.write(ByteBuffer.wrap(content), destination);
+        Files.setLastModifiedTime(destination, OLD_MODIFICATION);
+
+        // same size, only the last byte differs
+        byte[] changedContent = content.clone();
+        changedContent[contentSize - 1]++;
+        assertTrue(DestinationWriter.write(ByteBuffer.wrap(changedContent), destination));
+
+        assertEquals(Files.readAllBytes(destination), changedContent);
+        assertFalse(Files.getLastModifiedTime(destination).equals(OLD_MODIFICATION));
+    }
+
+    @Test
+    public void onlyRemainingContentIsWritten() throws Exception {
+        Path destination = folder.resolve("icon.png");
+        ByteBuffer content = ByteBuffer.wrap(createContent(100));
+        content.position(10).limit(20);
+
+        DestinationWriter.write(content, destination);
+
+        assertEquals(Files.readAllBytes(destination), Arrays.copyOfRange(content.array(), 10, 20));
+        assertEquals(content.position(), 10);
+        assertEquals(content.limit(), 20);
+        assertTrue(DestinationWriter.hasContent(destination, content));
+    }
+
+    @Test
+    public void linkedDestinationStaysIndependent() throws Exception {
+        Path existingFile = folder.resolve("shared.png");
+        byte[] content = createContent(1024);
+        Files.write(existingFile, content);
+        Path destination = folder.resolve("other/icon.png");
+
+        assertTrue(DestinationWriter.link(existingFile, destination));
+        assertFalse(DestinationWriter.link(existingFile, destination));
+        assertEquals(Files.readAllBytes(destination), content);
+
+        // replacing the shared file must not change the linked one
+        DestinationWriter.write(ByteBuffer.wrap(createContent(10)), existingFile);
+        assertEquals(Files.readAllBytes(destination), content);
+    }
+
+    @Test
+    public void releasedBufferIsReusedEmpty() {
+        EncodedImageBuffer encodedImageBuffer = EncodedImageBuffer.acquire();
+        encodedImageBuffer.write(42);
+        assertEquals(encodedImageBuffer.toByteBuffer().remaining(), 1);
+        encodedImageBuffer.release();
+
+        EncodedImageBuffer reusedBuffer = EncodedImageBuffer.acquire();
+
+        assertSame(reusedBuffer, encodedImageBuffer);
+        assertEquals(reusedBuffer.size(), 0);
+        reusedBuffer.release();
+    }
+
+    private static byte[] createContent(int size) {
+        byte[] content = new byte[size];
+        for( int index = 0; index < size; index++ ){
+            content[index] = (byte) (index * 31);
+        }
+        return content;
+    }
+}
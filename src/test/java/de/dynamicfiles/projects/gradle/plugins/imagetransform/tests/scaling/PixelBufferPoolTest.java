@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.scaling;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelBufferPool;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Released buffers are reused for the same size, without ever keeping more than the configured amount of bytes.
+ *
+ * @author Danny Althoff
+ */
+public class PixelBufferPoolTest {
+
+    private static final long POOL_SIZE = 1024 * 1024;
+
+    private PixelBufferPool.Configuration configuration;
+
+    @BeforeMethod
+    public void emptyPool() {
+        // the pool is shared by the whole JVM, configuring no bytes evicts everything
+        PixelBufferPool.configure(0, false).close();
+        configuration = PixelBufferPool.configure(POOL_SIZE, false);
+    }
+
+    @AfterMethod
+    public void disablePool() {
+        configuration.close();
+        PixelBufferPool.configure(0, false).close();
+    }
+
+    @Test
+    public void runningTasksAreBoundedByBiggestConfiguration() {
+        try(PixelBufferPool.Configuration disablingConfiguration = PixelBufferPool.configure(0, false);
+                PixelBufferPool.Configuration smallConfiguration = PixelBufferPool.configure(4 * 1024, false)){
+            // disabling the pool inside another task does not affect this one
+            assertEquals(PixelBufferPool.getMaxPooledBytes(), POOL_SIZE);
+            PixelBufferPool.releasePixels(new int[1024], 32, 32);
+            PixelBufferPool.releasePixels(new int[1024], 32, 32);
+            assertEquals(PixelBufferPool.getPooledBytes(), 8 * 1024);
+
+            configuration.close();
+
+            assertEquals(PixelBufferPool.getMaxPooledBytes(), 4 * 1024);
+            assertEquals(PixelBufferPool.getPooledBytes(), 4 * 1024);
+        }
+        // the small configuration finished first, the remaining one stays for the next builds
+        assertEquals(PixelBufferPool.getMaxPooledBytes(), 0);
+        assertEquals(PixelBufferPool.getPooledBytes(), 0);
+    }
+
+    @Test
+    public void releasedPixelsAreReused() {
+        int[] pixels = PixelBufferPool.acquirePixels(10, 20);
+        assertEquals(pixels.length, 200);
+
+        PixelBufferPool.releasePixels(pixels, 10, 20);
+        assertEquals(PixelBufferPool.getPooledBytes(), 800);
+
+        assertSame(PixelBufferPool.acquirePixels(10, 20), pixels);
+        assertEquals(PixelBufferPool.getPooledBytes(), 0);
+    }
+
+    @Test
+    public void pixelsAreOnlyReusedForSameSize() {
+        int[] pixels = PixelBufferPool.acquirePixels(10, 20);
+        PixelBufferPool.releasePixels(pixels, 10, 20);
+
+        assertNotSame(PixelBufferPool.acquirePixels(20, 10), pixels);
+        assertEquals(PixelBufferPool.getPooledBytes(), 800);
+    }
+
+    @Test
+    public void foreignArraysAreNotPooled() {
+        PixelBufferPool.releasePixels(new int[201], 10, 20);
+
+        assertEquals(PixelBufferPool.getPooledBytes(), 0);
+    }
+
+    @Test
+    public void pooledBytesAreLimited() {
+        reconfigure(2 * 1024, false);
+        int[] oldestPixels = new int[256];
+        PixelBufferPool.releasePixels(oldestPixels, 16, 16);
+        PixelBufferPool.releasePixels(new int[256], 16, 16);
+        // bigger than the whole pool
+        PixelBufferPool.releasePixels(new int[1024], 32, 32);
+        assertEquals(PixelBufferPool.getPooledBytes(), 2 * 1024);
+
+        // the longest unused buffer gets evicted
+        PixelBufferPool.releasePixels(new int[256], 16, 16);
+        assertEquals(PixelBufferPool.getPooledBytes(), 2 * 1024);
+        for( int acquired = 0; acquired < 2; acquired++ ){
+            assertNotSame(PixelBufferPool.acquirePixels(16, 16), oldestPixels);
+        }
+        assertEquals(PixelBufferPool.getPooledBytes(), 0);
+
+        PixelBufferPool.releasePixels(new int[256], 16, 16);
+        reconfigure(0, false);
+        assertEquals(PixelBufferPool.getPooledBytes(), 0);
+    }
+
+    @Test
+    public void imagesAreBackedByPooledPixels() {
+        BufferedImage image = PixelBufferPool.acquireImage(8, 4);
+        assertEquals(image.getType(), BufferedImage.TYPE_INT_ARGB);
+        int[] imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        PixelBufferPool.releaseImage(image);
+
+        assertSame(PixelBufferPool.acquirePixels(8, 4), imagePixels);
+    }
+
+    @Test
+    public void bigIntermediatesAreOffHeapWhenEnabled() {
+        reconfigure(16 * 1024 * 1024, true);
+        IntBuffer smallIntermediate = PixelBufferPool.acquireIntermediate(16, 16);
+        IntBuffer bigIntermediate = PixelBufferPool.acquireIntermediate(1024, 1024);
+
+        assertTrue(smallIntermediate.hasArray());
+        assertFalse(bigIntermediate.hasArray());
+        assertTrue(bigIntermediate.isDirect());
+        assertEquals(bigIntermediate.capacity(), 1024 * 1024);
+
+        PixelBufferPool.releaseIntermediate(bigIntermediate, 1024, 1024);
+        assertSame(PixelBufferPool.acquireIntermediate(1024, 1024), bigIntermediate);
+
+        reconfigure(16 * 1024 * 1024, false);
+        assertTrue(PixelBufferPool.acquireIntermediate(1024, 1024).hasArray());
+    }
+
+    /**
+     * Like this task finished and the next one started.
+     */
+    private void reconfigure(long maxPooledBytes, boolean offHeapIntermediates) {
+        configuration.close();
+        configuration = PixelBufferPool.configure(maxPooledBytes, offHeapIntermediates);
+    }
+}
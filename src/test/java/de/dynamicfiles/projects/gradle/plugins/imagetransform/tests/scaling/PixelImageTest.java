@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.scaling;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Every decoded image gets normalized into premultiplied ARGB pixels synchronously, without drawing it.
+ *
+ * @author Danny Althoff
+ */
+public class PixelImageTest {
+
+    private static final int SIZE = 16;
+
+    private final Resampler resampler = new Resampler(PixelKernelMode.SCALAR);
+
+    @DataProvider(name = "imageTypes")
+    public Object[][] imageTypes() {
+        return new Object[][]{
+            {BufferedImage.TYPE_INT_ARGB},
+            {BufferedImage.TYPE_INT_ARGB_PRE},
+            {BufferedImage.TYPE_INT_RGB},
+            {BufferedImage.TYPE_INT_BGR},
+            {BufferedImage.TYPE_4BYTE_ABGR},
+            {BufferedImage.TYPE_3BYTE_BGR},
+            {BufferedImage.TYPE_USHORT_565_RGB},
+            {BufferedImage.TYPE_BYTE_GRAY},
+            {BufferedImage.TYPE_USHORT_GRAY},
+            {BufferedImage.TYPE_BYTE_INDEXED},
+            {BufferedImage.TYPE_BYTE_BINARY}
+        };
+    }
+
+    @Test(dataProvider = "imageTypes")
+    public void everyImageTypeKeepsItsColors(int imageType) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, imageType);
+        for( int y = 0; y < SIZE; y++ ){
+            for( int x = 0; x < SIZE; x++ ){
+                image.setRGB(x, y, 0xFF000000 | (x * 16) << 16 | (y * 16) << 8 | (x * y) & 0xFF);
+            }
+        }
+        // the color model of the image defines the colors it is able to store
+        int[] expectedPixels = image.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+
+        BufferedImage convertedImage = PixelImage.takeOver(image, resampler).toBufferedImage(resampler);
+
+        assertEquals(convertedImage.getType(), BufferedImage.TYPE_INT_ARGB);
+        assertEquals(convertedImage.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE), expectedPixels);
+    }
+
+    @Test
+    public void translucentPixelsArePremultiplied() {
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_4BYTE_ABGR);
+        image.setRGB(0, 0, 0x80FF8000);
+        image.setRGB(1, 0, 0x00FFFFFF);
+
+        int[] pixels = PixelImage.takeOver(image, resampler).getPixels();
+
+        assertEquals(pixels[0], 0x80804000);
+        assertEquals(pixels[1], 0);
+    }
+
+    @Test
+    public void intPixelsAreTakenOverWithoutCopy() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        int[] imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        assertSame(PixelImage.takeOver(image, resampler).getPixels(), imagePixels);
+    }
+
+    @Test
+    public void scaledImageIsAvailableImmediately() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setSample(0, 0, 0, 255);
+
+        PixelImage scaledImage = resampler.resample(PixelImage.takeOver(image, resampler), 4, 4, ScalingFilter.AREA_AVERAGE);
+
+        assertEquals(scaledImage.getWidth(), 4);
+        assertEquals(scaledImage.getHeight(), 4);
+        assertEquals(scaledImage.getPixels()[1], 0xFF000000);
+    }
+
+    @Test
+    public void imageIsPlacedOnTransparentCanvas() {
+        int[] pixels = {0xFF112233, 0xFF445566};
+        PixelImage canvas = new PixelImage(2, 1, pixels).placeOnCanvas(4, 3, 1, 1);
+
+        int[] expectedPixels = new int[12];
+        expectedPixels[5] = 0xFF112233;
+        expectedPixels[6] = 0xFF445566;
+        int[] canvasPixels = new int[12];
+        System.arraycopy(canvas.getPixels(), 0, canvasPixels, 0, 12);
+        assertEquals(canvasPixels, expectedPixels);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void imageNotFittingOnCanvasIsRejected() {
+        new PixelImage(2, 1, new int[2]).placeOnCanvas(2, 1, 1, 0);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.scaling;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * The scalar kernels are checked against the plain math they implement, the vector kernels have to produce exactly the
+ * same pixels as the scalar kernels. Tests of the vector kernels are skipped when these are not available (like
+ * running on java 8).
+ *
+ * @author Danny Althoff
+ */
+public class PixelKernelsTest {
+
+    private final Resampler scalarResampler = new Resampler(PixelKernelMode.SCALAR);
+
+    @DataProvider
+    public Object[][] scalings() {
+        // typical icon downscales, upscaling and sizes not being a multiple of the vector lanes
+        int[][] sizes = {
+            {1024, 1024, 256, 256},
+            {1024, 1024, 16, 16},
+            {1024, 768, 48, 36},
+            {257, 131, 100, 33},
+            {64, 64, 512, 512},
+            {333, 77, 333, 13}
+        };
+        List<Object[]> scalings = new ArrayList<>();
+        for( ScalingFilter filter : ScalingFilter.values() ){
+            for( int[] size : sizes ){
+                scalings.add(new Object[]{filter, size[0], size[1], size[2], size[3]});
+            }
+        }
+        return scalings.toArray(new Object[scalings.size()][]);
+    }
+
+    @Test
+    public void scalarPremultiplyRoundsEveryChannel() {
+        int[] pixels = createAllAlphaChannelCombinations();
+        int[] premultipliedPixels = pixels.clone();
+
+        scalarResampler.premultiply(premultipliedPixels);
+
+        for( int index = 0; index < pixels.length; index++ ){
+            int alpha = pixels[index] >>> 24;
+            for( int shift = 0; shift < 24; shift += 8 ){
+                int channel = (pixels[index] >> shift) & 0xFF;
+                assertEquals((premultipliedPixels[index] >> shift) & 0xFF, (int) Math.round(channel * alpha / 255.0), "Channel of pixel " + Integer.toHexString(pixels[index]));
+            }
+            assertEquals(premultipliedPixels[index] >>> 24, alpha);
+        }
+    }
+
+    @Test
+    public void scalarUnpremultiplyRestoresPremultipliedPixels() {
+        int[] pixels = createAllAlphaChannelCombinations();
+        int[] restoredPixels = pixels.clone();
+
+        scalarResampler.premultiply(restoredPixels);
+        scalarResampler.unpremultiply(restoredPixels);
+
+        for( int index = 0; index < pixels.length; index++ ){
+            int alpha = pixels[index] >>> 24;
+            assertEquals(restoredPixels[index] >>> 24, alpha);
+            if( alpha == 0 ){
+                // fully transparent pixels have no color
+                assertEquals(restoredPixels[index], 0);
+                continue;
+            }
+            // premultiplying loses precision, the less opaque the more
+            double maxDeviation = 255.0 / (2 * alpha) + 1;
+            for( int shift = 0; shift < 24; shift += 8 ){
+                int channel = (pixels[index] >> shift) & 0xFF;
+                int restoredChannel = (restoredPixels[index] >> shift) & 0xFF;
+                assertTrue(Math.abs(restoredChannel - channel) <= maxDeviation, "Channel of pixel " + Integer.toHexString(pixels[index]) + " got restored as " + restoredChannel);
+            }
+        }
+    }
+
+    @Test(dataProvider = "scalings")
+    public void scalarScalingKeepsUniformColor(ScalingFilter filter, int sourceWidth, int sourceHeight, int width, int height) {
+        int[] sourcePixels = new int[sourceWidth * sourceHeight];
+        Arrays.fill(sourcePixels, 0x80402010);
+
+        int[] scaledPixels = Arrays.copyOf(scalarResampler.resample(sourcePixels, sourceWidth, sourceHeight, width, height, filter), width * height);
+
+        int[] expectedPixels = new int[width * height];
+        Arrays.fill(expectedPixels, 0x80402010);
+        assertEquals(scaledPixels, expectedPixels);
+    }
+
+    @Test
+    public void scalarScalingToSameSizeCopiesPixels() {
+        int[] sourcePixels = createPixels(257 * 131);
+        scalarResampler.premultiply(sourcePixels);
+
+        for( ScalingFilter filter : ScalingFilter.values() ){
+            int[] scaledPixels = Arrays.copyOf(scalarResampler.resample(sourcePixels, 257, 131, 257, 131, filter), sourcePixels.length);
+            assertEquals(scaledPixels, sourcePixels);
+        }
+    }
+
+    @Test(dataProvider = "scalings")
+    public void scalingProducesSamePixels(ScalingFilter filter, int sourceWidth, int sourceHeight, int width, int height) {
+        Resampler vectorResampler = createVectorResampler();
+        int[] sourcePixels = createPixels(sourceWidth * sourceHeight);
+        scalarResampler.premultiply(sourcePixels);
+
+        int[] expectedPixels = Arrays.copyOf(scalarResampler.resample(sourcePixels, sourceWidth, sourceHeight, width, height, filter), width * height);
+        int[] actualPixels = Arrays.copyOf(vectorResampler.resample(sourcePixels, sourceWidth, sourceHeight, width, height, filter), width * height);
+
+        assertEquals(actualPixels, expectedPixels);
+    }
+
+    @Test(dataProvider = "scalings")
+    public void scalingOfRegionProducesSamePixels(ScalingFilter filter, int sourceWidth, int sourceHeight, int width, int height) {
+        Resampler vectorResampler = createVectorResampler();
+        int[] sourcePixels = createPixels(sourceWidth * sourceHeight);
+        scalarResampler.premultiply(sourcePixels);
+        PixelImage source = new PixelImage(sourceWidth, sourceHeight, sourcePixels);
+
+        int[] expectedPixels = Arrays.copyOf(scalarResampler.resample(source, 0.1, 0.25, 0.7, 0.5, width, height, filter).getPixels(), width * height);
+        int[] actualPixels = Arrays.copyOf(vectorResampler.resample(source, 0.1, 0.25, 0.7, 0.5, width, height, filter).getPixels(), width * height);
+
+        assertEquals(actualPixels, expectedPixels);
+    }
+
+    @Test
+    public void premultiplyProducesSamePixels() {
+        Resampler vectorResampler = createVectorResampler();
+        int[] expectedPixels = createAllAlphaChannelCombinations();
+        int[] actualPixels = expectedPixels.clone();
+
+        scalarResampler.premultiply(expectedPixels);
+        vectorResampler.premultiply(actualPixels);
+
+        assertEquals(actualPixels, expectedPixels);
+    }
+
+    @Test
+    public void unpremultiplyProducesSamePixels() {
+        Resampler vectorResampler = createVectorResampler();
+        // includes invalid premultiplied pixels having channels bigger than alpha
+        int[] expectedPixels = createAllAlphaChannelCombinations();
+        int[] actualPixels = expectedPixels.clone();
+
+        scalarResampler.unpremultiply(expectedPixels);
+        vectorResampler.unpremultiply(actualPixels);
+
+        assertEquals(actualPixels, expectedPixels);
+    }
+
+    private static Resampler createVectorResampler() {
+        try{
+            return new Resampler(PixelKernelMode.VECTOR);
+        } catch(IllegalStateException ex){
+            throw new SkipException(ex.getMessage());
+        }
+    }
+
+    private static int[] createPixels(int pixelCount) {
+        Random random = new Random(pixelCount);
+        int[] pixels = new int[pixelCount];
+        for( int index = 0; index < pixelCount; index++ ){
+            // mostly opaque like real icons, but with enough transparent parts
+            int alpha = random.nextInt(4) == 0 ? random.nextInt(256) : 255;
+            pixels[index] = (alpha << 24) | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    private static int[] createAllAlphaChannelCombinations() {
+        // some more pixels to not end at a multiple of the vector lanes
+        int[] pixels = new int[256 * 256 + 3];
+        for( int index = 0; index < pixels.length; index++ ){
+            int alpha = (index >> 8) & 0xFF;
+            int channel = index & 0xFF;
+            pixels[index] = (alpha << 24) | (channel << 16) | ((255 - channel) << 8) | ((channel * 7) & 0xFF);
+        }
+        return pixels;
+    }
+}
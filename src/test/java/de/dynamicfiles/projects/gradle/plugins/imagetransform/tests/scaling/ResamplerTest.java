@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.scaling;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.PixelKernelMode;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.Resampler;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling.ScalingFilter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Big images are scaled in bands, these bands have to be processed by the executor given to the resampler (and the
+ * calling thread), producing the same pixels as scaling all bands within the calling thread.
+ *
+ * @author Danny Althoff
+ */
+public class ResamplerTest {
+
+    @Test
+    public void bandsAreScaledByGivenExecutor() {
+        int[] sourcePixels = new int[1024 * 1024];
+        for( int index = 0; index < sourcePixels.length; index++ ){
+            sourcePixels[index] = 0xFF000000 | (index * 31);
+        }
+        AtomicInteger executedBands = new AtomicInteger(0);
+        ExecutorService bandPool = Executors.newFixedThreadPool(2);
+        try{
+            Resampler sequentialResampler = new Resampler(PixelKernelMode.SCALAR);
+            Resampler bandedResampler = new Resampler(PixelKernelMode.SCALAR, bandTask -> {
+                executedBands.incrementAndGet();
+                bandPool.execute(bandTask);
+            });
+            for( ScalingFilter filter : ScalingFilter.values() ){
+                int[] expectedPixels = Arrays.copyOf(sequentialResampler.resample(sourcePixels, 1024, 1024, 300, 200, filter), 300 * 200);
+                int[] actualPixels = Arrays.copyOf(bandedResampler.resample(sourcePixels, 1024, 1024, 300, 200, filter), 300 * 200);
+                assertEquals(actualPixels, expectedPixels, "Pixels scaled using " + filter);
+            }
+        } finally{
+            bandPool.shutdownNow();
+        }
+        assertTrue(executedBands.get() > 0, "No band was given to the executor");
+    }
+
+    @Test
+    public void bandsAreScaledWithoutFreeWorker() {
+        int[] sourcePixels = new int[1024 * 1024];
+        Arrays.fill(sourcePixels, 0xFF336699);
+        // an executor never running anything, like a pool having all workers busy
+        Resampler resampler = new Resampler(PixelKernelMode.SCALAR, bandTask -> {
+            // never started
+        });
+
+        int[] scaledPixels = Arrays.copyOf(resampler.resample(sourcePixels, 1024, 1024, 512, 512, ScalingFilter.BICUBIC), 512 * 512);
+
+        int[] expectedPixels = new int[512 * 512];
+        Arrays.fill(expectedPixels, 0xFF336699);
+        assertEquals(scaledPixels, expectedPixels);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.SvgCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImage;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageCodec;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.codecs.VectorImageFormats;
+import java.awt.Dimension;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.imaging.ImageFormat;
+
+/**
+ * Renders SVG-documents as plain color instead of using Batik, recording how many renderings were running at once. It
+ * gets registered via META-INF/services for all tests, having a higher priority than the built-in SVG-codec.
+ *
+ * @author Danny Althoff
+ */
+public class RecordingVectorCodec implements VectorImageCodec {
+
+    private static final AtomicInteger RUNNING_RENDERINGS = new AtomicInteger();
+    private static final AtomicInteger MAX_RUNNING_RENDERINGS = new AtomicInteger();
+    private static final AtomicInteger RENDERINGS = new AtomicInteger();
+
+    private final SvgCodec svgCodec = new SvgCodec();
+
+    public static void reset() {
+        MAX_RUNNING_RENDERINGS.set(0);
+        RENDERINGS.set(0);
+    }
+
+    public static int getRenderings() {
+        return RENDERINGS.get();
+    }
+
+    public static int getMaxRunningRenderings() {
+        return MAX_RUNNING_RENDERINGS.get();
+    }
+
+    @Override
+    public int getPriority() {
+        return SvgCodec.PRIORITY + 1;
+    }
+
+    @Override
+    public String getName() {
+        return "recording";
+    }
+
+    @Override
+    public boolean canRead(ImageFormat format) {
+        return format == VectorImageFormats.SVG;
+    }
+
+    @Override
+    public boolean canWrite(ImageFormat format) {
+        return false;
+    }
+
+    @Override
+    public Dimension readSize(File source) throws IOException {
+        return svgCodec.readSize(source);
+    }
+
+    @Override
+    public VectorImage parse(File source) throws IOException {
+        Dimension size = readSize(source);
+        return new VectorImage() {
+
+            @Override
+            public Dimension2D getSize() {
+                return new Dimension(size);
+            }
+
+            @Override
+            public BufferedImage render(double regionX, double regionY, double regionWidth, double regionHeight, int width, int height) {
+                MAX_RUNNING_RENDERINGS.accumulateAndGet(RUNNING_RENDERINGS.incrementAndGet(), Math::max);
+                try{
+                    // long enough for other renderings to overlap, when these are not waiting
+                    Thread.sleep(50);
+                } catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                } finally{
+                    RUNNING_RENDERINGS.decrementAndGet();
+                }
+                RENDERINGS.incrementAndGet();
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+                int[] pixels = new int[width * height];
+                Arrays.fill(pixels, 0xFF0000FF);
+                image.setRGB(0, 0, width, height, pixels, 0, width);
+                return image;
+            }
+
+            @Override
+            public void close() {
+                // nothing to free
+            }
+        };
+    }
+
+    @Override
+    public void write(BufferedImage image, ImageFormat format, OutputStream outputStream) throws IOException {
+        throw new IOException("Writing is not supported by codec " + getName());
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.tests.tasks;
+
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.dto.ImageFormatRequest;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.ImageTransformGradlePluginExtension;
+import de.dynamicfiles.projects.gradle.plugins.imagetransform.tasks.TransformTask;
+import groovy.json.JsonSlurper;
+import groovy.lang.Closure;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.imageio.ImageIO;
+import org.apache.commons.imaging.Imaging;
+import org.gradle.api.Action;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.incremental.IncrementalTaskInputs;
+import org.gradle.api.tasks.incremental.InputFileDetails;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the transform-task inside a project created by the {@link ProjectBuilder}, checking the written files.
+ *
+ * @author Danny Althoff
+ */
+public class TransformTaskTest {
+
+    // deriving from an already scaled size differs slightly from scaling the source directly
+    private static final int PYRAMID_TOLERANCE = 4;
+
+    private static final IncrementalTaskInputs NON_INCREMENTAL_INPUTS = new IncrementalTaskInputs() {
+
+        @Override
+        public boolean isIncremental() {
+            return false;
+        }
+
+        @Override
+        public void outOfDate(Action<? super InputFileDetails> outOfDateAction) {
+            // every source is out of date
+        }
+
+        @Override
+        public void removed(Action<? super InputFileDetails> removedAction) {
+            // no source got removed
+        }
+    };
+
+    private Project project;
+    private TransformTask task;
+    private File source;
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = ProjectBuilder.builder().withProjectDir(Files.createTempDirectory("imagetransform").toFile()).build();
+        project.getExtensions().create("transformImages", ImageTransformGradlePluginExtension.class);
+        task = project.getTasks().create("transformImagesTask", TransformTask.class);
+        task.setShareTransformations(false);
+
+        BufferedImage sourceImage = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        for( int y = 0; y < 64; y++ ){
+            for( int x = 0; x < 64; x++ ){
+                sourceImage.setRGB(x, y, 0xFF000000 | (x * 4) << 16 | (y * 4) << 8);
+            }
+        }
+        source = new File(project.getProjectDir(), "source.png");
+        ImageIO.write(sourceImage, "png", source);
+    }
+
+    @Test
+    public void lastConflictingEntryWritesDestination() throws Exception {
+        File destination = new File(project.getBuildDir(), "out/icon.img");
+        addTransformations(request -> {
+            request.toPNG("16x16", destination.getAbsolutePath());
+            request.toBMP("32x32", destination.getAbsolutePath());
+        });
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        byte[] written = Files.readAllBytes(destination.toPath());
+        assertEquals(new String(written, 0, 2, "US-ASCII"), "BM");
+        assertEquals(ImageIO.read(destination).getWidth(), 32);
+
+        // the manifest must describe the written entry, so running again does not change anything
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+        assertEquals(Files.readAllBytes(destination.toPath()), written);
+    }
+
+    @Test
+    public void lastContainerWritesDestination() throws Exception {
+        File destination = new File(project.getBuildDir(), "out/icon.ico");
+        addTransformations(request -> {
+            request.toICO("64x64", destination.getAbsolutePath());
+            request.toICOContainer(Arrays.asList("16x16", "32x32"), destination.getAbsolutePath());
+        });
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertEquals(Imaging.getAllBufferedImages(destination).size(), 2);
+    }
+
+    @Test
+    public void entryAfterContainerWritesDestination() throws Exception {
+        File destination = new File(project.getBuildDir(), "out/icon.ico");
+        addTransformations(request -> {
+            request.toICOContainer(Arrays.asList("16x16", "32x32"), destination.getAbsolutePath());
+            request.toICO("64x64", destination.getAbsolutePath());
+        });
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertEquals(Imaging.getAllBufferedImages(destination).size(), 1);
+        assertEquals(Imaging.getBufferedImage(destination).getWidth(), 64);
+    }
+
+    @Test
+    public void sourceIsDecodedOnceForAllEntries() throws Exception {
+        File destinationDirectory = new File(project.getBuildDir(), "out");
+        List<String> resolutions = Arrays.asList("8x8", "16x16", "24x24", "32x32");
+        String destination = new File(destinationDirectory, "*").getAbsolutePath();
+        addTransformations(request -> {
+            request.toPNG(resolutions, destination);
+            request.toBMP(resolutions, destination);
+            request.toICO(resolutions, destination);
+        });
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertEquals(destinationDirectory.list().length, 12);
+        Map<?, ?> stages = (Map<?, ?>) readReport().get("stages");
+        assertEquals(((Map<?, ?>) stages.get("READ")).get("count"), 1);
+        assertEquals(((Map<?, ?>) stages.get("DECODE")).get("count"), 1);
+        // every distinct size gets scaled once, for all formats
+        assertEquals(((Map<?, ?>) stages.get("SCALE")).get("count"), 4);
+        assertEquals(((Map<?, ?>) stages.get("WRITE")).get("count"), 12);
+    }
+
+    @Test
+    public void sourcesBiggerThanDecodeMemoryAreTransformed() throws Exception {
+        File otherSource = new File(project.getProjectDir(), "other.png");
+        ImageIO.write(new BufferedImage(512, 512, BufferedImage.TYPE_INT_ARGB), "png", otherSource);
+        File destinationDirectory = new File(project.getBuildDir(), "out");
+        addTransformations(request -> request.toPNG(Arrays.asList("16x16", "32x32"), new File(destinationDirectory, "*").getAbsolutePath()));
+        task.getTaskSpecificExt().from(otherSource.getAbsolutePath(), configure(request -> request.toBMP("16x16", new File(destinationDirectory, "*").getAbsolutePath())));
+        // every source gets decoded alone, one after another
+        task.setMaxDecodeMemory(1);
+        task.setMaxParallelTransforms(2);
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertEquals(destinationDirectory.list().length, 3);
+        assertEquals(ImageIO.read(new File(destinationDirectory, "other.bmp")).getWidth(), 16);
+    }
+
+    @Test
+    public void unchangedEntriesAreSkippedAndRemovedOnesDeleted() throws Exception {
+        File keptDestination = new File(project.getBuildDir(), "out/kept.png");
+        File removedDestination = new File(project.getBuildDir(), "out/removed.png");
+        addTransformations(request -> {
+            request.toPNG("16x16", keptDestination.getAbsolutePath());
+            request.toPNG("32x32", removedDestination.getAbsolutePath());
+        });
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+        assertTrue(keptDestination.exists());
+        assertTrue(removedDestination.exists());
+
+        // the metrics-report is only written when something got transformed
+        File reportFile = new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + ".json");
+        Files.delete(reportFile.toPath());
+        task.getTaskSpecificExt().getTransformEntries().remove(1);
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertTrue(keptDestination.exists());
+        assertFalse(removedDestination.exists());
+        assertFalse(reportFile.exists());
+
+        // changing the source makes the entry outdated
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB), "png", source);
+        source.setLastModified(source.lastModified() + 2000);
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertTrue(reportFile.exists());
+        assertEquals(ImageIO.read(keptDestination).getRGB(8, 8), 0);
+    }
+
+    @Test
+    public void onlyEntriesOfChangedSourcesAreTransformedIncrementally() throws Exception {
+        // sources of other projects are often configured relative to the project
+        File sharedDirectory = Files.createTempDirectory(project.getProjectDir().getParentFile().toPath(), "shared").toFile();
+        File sharedSource = new File(sharedDirectory, "icon.png");
+        Files.copy(source.toPath(), sharedSource.toPath());
+        File sharedDestination = new File(project.getBuildDir(), "out/shared.png");
+        File destination = new File(project.getBuildDir(), "out/icon.png");
+        task.getTaskSpecificExt().from("../" + sharedDirectory.getName() + "/icon.png", configure(request -> request.toPNG("16x16", sharedDestination.getAbsolutePath())));
+        addTransformations(request -> request.toPNG("16x16", destination.getAbsolutePath()));
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+        byte[] written = Files.readAllBytes(destination.toPath());
+
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB), "png", sharedSource);
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB), "png", source);
+        // gradle only reports the shared source as changed
+        task.performTransformations(incrementalInputs(sharedSource));
+
+        assertEquals(ImageIO.read(sharedDestination).getRGB(8, 8), 0);
+        assertEquals(Files.readAllBytes(destination.toPath()), written);
+    }
+
+    @Test
+    public void decodedSourceIsReusedByNextRun() throws Exception {
+        File destination = new File(project.getBuildDir(), "out/icon.png");
+        addTransformations(request -> request.toPNG("16x16", destination.getAbsolutePath()));
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        Files.delete(destination.toPath());
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertTrue(destination.exists());
+        Map<?, ?> stages = (Map<?, ?>) readReport().get("stages");
+        assertEquals(((Map<?, ?>) stages.get("DECODE")).get("count"), 0);
+    }
+
+    @Test
+    public void entriesAreTransformedInsideWorkerProcess() throws Exception {
+        File destinationDirectory = new File(project.getBuildDir(), "out");
+        addTransformations(request -> {
+            request.toPNG(Arrays.asList("16x16", "32x32"), new File(destinationDirectory, "*").getAbsolutePath());
+            request.toICOContainer(Arrays.asList("16x16", "32x32"), new File(destinationDirectory, "*").getAbsolutePath());
+        });
+        task.setProcessIsolation(true);
+        task.setProcessMaxHeapSize("64m");
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertEquals(ImageIO.read(new File(destinationDirectory, "source-32x32.png")).getWidth(), 32);
+        assertEquals(Imaging.getAllBufferedImages(new File(destinationDirectory, "source.ico")).size(), 2);
+        // metrics and manifest are taken over from the worker process
+        assertEquals(readReport().get("transformedEntries"), 4);
+        task.setProcessIsolation(false);
+        Files.delete(new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + ".json").toPath());
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+        assertFalse(new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + ".json").exists());
+    }
+
+    @Test
+    public void dryRunOnlyWritesPlan() throws Exception {
+        File destination = new File(project.getBuildDir(), "out/icon.img");
+        addTransformations(request -> {
+            request.toPNG("16x16", destination.getAbsolutePath());
+            request.toBMP("32x32", destination.getAbsolutePath());
+        });
+        File planReportFile = new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + "-plan.txt");
+        task.setDryRun(true);
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertFalse(destination.exists());
+        String plan = new String(Files.readAllBytes(planReportFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(plan.contains("Conflicting entries for destination " + destination.getAbsolutePath()), plan);
+        assertFalse(isUpToDate());
+
+        // the real run must not be skipped because of the dry-run
+        task.setDryRun(false);
+        assertFalse(isUpToDate());
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        assertTrue(destination.exists());
+        assertFalse(planReportFile.exists());
+        assertTrue(isUpToDate());
+    }
+
+    @Test
+    public void pyramidScaledSizesMatchDirectlyScaledOnes() throws Exception {
+        List<String> resolutions = Arrays.asList("48x48", "32x32", "20x20", "12x12");
+        File directDestinationDirectory = new File(project.getBuildDir(), "direct");
+        addTransformations(request -> request.toPNG(resolutions, new File(directDestinationDirectory, "*").getAbsolutePath()));
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        File pyramidDestinationDirectory = new File(project.getBuildDir(), "pyramid");
+        task = project.getTasks().create("transformImagesPyramidTask", TransformTask.class);
+        task.setShareTransformations(false);
+        task.setPyramidScaling(true);
+        addTransformations(request -> request.toPNG(resolutions, new File(pyramidDestinationDirectory, "*").getAbsolutePath()));
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        Map<?, ?> stages = (Map<?, ?>) readReport().get("stages");
+        assertEquals(((Map<?, ?>) stages.get("SCALE")).get("count"), 4);
+        for( String resolution : resolutions ){
+            BufferedImage directImage = ImageIO.read(new File(directDestinationDirectory, "source-" + resolution + ".png"));
+            BufferedImage pyramidImage = ImageIO.read(new File(pyramidDestinationDirectory, "source-" + resolution + ".png"));
+            assertEquals(pyramidImage.getWidth(), directImage.getWidth());
+            assertEquals(pyramidImage.getHeight(), directImage.getHeight());
+            for( int y = 0; y < directImage.getHeight(); y++ ){
+                for( int x = 0; x < directImage.getWidth(); x++ ){
+                    int directPixel = directImage.getRGB(x, y);
+                    int pyramidPixel = pyramidImage.getRGB(x, y);
+                    for( int shift = 0; shift < 32; shift += 8 ){
+                        int channelDifference = Math.abs((directPixel >>> shift & 0xFF) - (pyramidPixel >>> shift & 0xFF));
+                        assertTrue(channelDifference <= PYRAMID_TOLERANCE, resolution + " differs by " + channelDifference + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pyramidSizesAreScaledFromSmallestCoveringLevel() throws Exception {
+        File destinationDirectory = new File(project.getBuildDir(), "out");
+        addTransformations(request -> request.toPNG(Arrays.asList("12x12", "48x48", "20x20", "32x32"), new File(destinationDirectory, "*").getAbsolutePath()));
+        task.setPyramidScaling(true);
+        task.setDryRun(true);
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        String plan = new String(Files.readAllBytes(new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + "-plan.txt").toPath()), StandardCharsets.UTF_8);
+        assertTrue(plan.contains("scale 48x48 (lanczos3) from decoded source"), plan);
+        assertTrue(plan.contains("scale 32x32 (lanczos3) from 48x48 (lanczos3)"), plan);
+        assertTrue(plan.contains("scale 20x20 (lanczos3) from 32x32 (lanczos3)"), plan);
+        assertTrue(plan.contains("scale 12x12 (lanczos3) from 20x20 (lanczos3)"), plan);
+    }
+
+    @Test
+    public void vectorSourceIsRenderedAtEverySize() throws Exception {
+        File vectorSource = new File(project.getProjectDir(), "source.svg");
+        Files.write(vectorSource.toPath(), "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 100 50\"/>".getBytes(StandardCharsets.UTF_8));
+        File destinationDirectory = new File(project.getBuildDir(), "out");
+        task.getTaskSpecificExt().from(vectorSource.getAbsolutePath(), configure(request -> request.toPNG(Arrays.asList("16x16", "50%", "64x64"), new File(destinationDirectory, "*").getAbsolutePath())));
+        task.setDryRun(true);
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        String plan = new String(Files.readAllBytes(new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + "-plan.txt").toPath()), StandardCharsets.UTF_8);
+        assertTrue(plan.contains("source " + vectorSource.getAbsolutePath() + " (SVG, 100x50)"), plan);
+        assertTrue(plan.contains("parse, rendering up to 64x64"), plan);
+        assertFalse(plan.contains("scale "), plan);
+        // the biggest size goes first, all others are rendered directly instead of being scaled from it
+        int renderIndex64 = plan.indexOf("render 64x64");
+        int renderIndex50 = plan.indexOf("render 50x25");
+        int renderIndex16 = plan.indexOf("render 16x16");
+        assertTrue(renderIndex64 >= 0 && renderIndex64 < renderIndex50 && renderIndex50 < renderIndex16, plan);
+    }
+
+    @Test
+    public void vectorSourceIsRenderedOneSizeAfterAnother() throws Exception {
+        File vectorSource = new File(project.getProjectDir(), "source.svg");
+        Files.write(vectorSource.toPath(), "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"64\" height=\"64\"/>".getBytes(StandardCharsets.UTF_8));
+        File destinationDirectory = new File(project.getBuildDir(), "out");
+        task.getTaskSpecificExt().from(vectorSource.getAbsolutePath(), configure(request -> request.toPNG(Arrays.asList("16x16", "24x24", "32x32", "48x48"), new File(destinationDirectory, "*").getAbsolutePath())));
+        task.setMaxParallelTransforms(4);
+        RecordingVectorCodec.reset();
+
+        task.performTransformations(NON_INCREMENTAL_INPUTS);
+
+        // the parsed document is not thread-safe
+        assertEquals(RecordingVectorCodec.getRenderings(), 4);
+        assertEquals(RecordingVectorCodec.getMaxRunningRenderings(), 1);
+        assertEquals(destinationDirectory.list().length, 4);
+        assertEquals(ImageIO.read(new File(destinationDirectory, "source-48x48.png")).getRGB(24, 24), 0xFF0000FF);
+    }
+
+    private boolean isUpToDate() {
+        return ((TaskOutputsInternal) task.getOutputs()).getUpToDateSpec().isSatisfiedBy((TaskInternal) task);
+    }
+
+    private static IncrementalTaskInputs incrementalInputs(File... changedFiles) {
+        return new IncrementalTaskInputs() {
+
+            @Override
+            public boolean isIncremental() {
+                return true;
+            }
+
+            @Override
+            public void outOfDate(Action<? super InputFileDetails> outOfDateAction) {
+                Arrays.stream(changedFiles).forEach(changedFile -> outOfDateAction.execute(new InputFileDetails() {
+
+                    @Override
+                    public boolean isAdded() {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean isModified() {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isRemoved() {
+                        return false;
+                    }
+
+                    @Override
+                    public File getFile() {
+                        return changedFile;
+                    }
+                }));
+            }
+
+            @Override
+            public void removed(Action<? super InputFileDetails> removedAction) {
+                // no source got removed
+            }
+        };
+    }
+
+    private Map<?, ?> readReport() {
+        return (Map<?, ?>) new JsonSlurper().parse(new File(project.getBuildDir(), "reports/imagetransform/" + task.getName() + ".json"));
+    }
+
+    private void addTransformations(Consumer<ImageFormatRequest> configuration) {
+        task.getTaskSpecificExt().from(source.getAbsolutePath(), configure(configuration));
+    }
+
+    private Closure<Void> configure(Consumer<ImageFormatRequest> configuration) {
+        return new Closure<Void>(this) {
+
+            public Void doCall() {
+                configuration.accept((ImageFormatRequest) getDelegate());
+                return null;
+            }
+        };
+    }
+}
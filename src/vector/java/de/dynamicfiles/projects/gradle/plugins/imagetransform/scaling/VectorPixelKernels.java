@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Danny Althoff
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dynamicfiles.projects.gradle.plugins.imagetransform.scaling;
+
+import java.nio.IntBuffer;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels using the JDK vector API, producing exactly the same pixels as the {@link ScalarPixelKernels}: all sums are
+ * calculated using the same int-arithmetic, only in a different order.
+ *
+ * This class is compiled separately (requiring java 16+) and only loaded via reflection by the {@link Resampler}, it
+ * must not be referenced directly.
+ *
+ * @author Danny Althoff
+ */
+final class VectorPixelKernels implements PixelKernels {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    // having the same size as the int-species, so both have the same amount of lanes
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    // x / 255 == (x * DIVIDE_BY_255) >>> 23 for all 0 <= x <= 255 * 255 + 127
+    private static final int DIVIDE_BY_255 = 0x8081;
+    // adding 2^23 to a float between 0 and 2^23 leaves the rounded integer inside the mantissa
+    private static final float ROUNDING_MAGIC = 8388608f;
+    private static final int ROUNDING_MAGIC_BITS = Float.floatToIntBits(ROUNDING_MAGIC);
+
+    VectorPixelKernels() {
+        if( SPECIES.length() != FLOAT_SPECIES.length() ){
+            throw new UnsupportedOperationException("Vector species of int and float are not matching");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + " bit)";
+    }
+
+    @Override
+    public int getLanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Vectorized over the taps of every output pixel, which is worth it for downscaling only.
+     */
+    @Override
+    public void horizontalPass(int[] input, int inputWidth, IntBuffer output, int outputWidth, int rowStart, int rowEnd, int outputFirstRow, ResamplingCoefficients coefficients) {
+        int lanes = SPECIES.length();
+        if( coefficients.kernelSize < lanes ){
+            // short filters would leave most of the lanes unused
+            ScalarPixelKernels.INSTANCE.horizontalPass(input, inputWidth, output, outputWidth, rowStart, rowEnd, outputFirstRow, coefficients);
+            return;
+        }
+        int[] weights = coefficients.weights;
+        int kernelSize = coefficients.kernelSize;
+        for( int row = rowStart; row < rowEnd; row++ ){
+            int inputRowOffset = row * inputWidth;
+            int outputRowOffset = (row - outputFirstRow) * outputWidth;
+            for( int x = 0; x < outputWidth; x++ ){
+                int inputOffset = inputRowOffset + coefficients.min[x];
+                int weightOffset = x * kernelSize;
+                int count = coefficients.count[x];
+                int vectorEnd = SPECIES.loopBound(count);
+                IntVector alpha = IntVector.zero(SPECIES);
+                IntVector red = IntVector.zero(SPECIES);
+                IntVector green = IntVector.zero(SPECIES);
+                IntVector blue = IntVector.zero(SPECIES);
+                for( int tap = 0; tap < count; tap += lanes ){
+                    IntVector pixel;
+                    IntVector weight;
+                    if( tap < vectorEnd ){
+                        pixel = IntVector.fromArray(SPECIES, input, inputOffset + tap);
+                        weight = IntVector.fromArray(SPECIES, weights, weightOffset + tap);
+                    } else {
+                        // the window might end at the last pixel of the input, so do not read beyond it
+                        VectorMask<Integer> remainingTaps = SPECIES.indexInRange(tap, count);
+                        pixel = IntVector.fromArray(SPECIES, input, inputOffset + tap, remainingTaps);
+                        weight = IntVector.fromArray(SPECIES, weights, weightOffset + tap, remainingTaps);
+                    }
+                    alpha = alpha.add(pixel.lanewise(VectorOperators.LSHR, 24).mul(weight));
+                    red = red.add(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(weight));
+                    green = green.add(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(weight));
+                    blue = blue.add(pixel.and(0xFF).mul(weight));
+                }
+                output.put(outputRowOffset + x, ScalarPixelKernels.pack(alpha.reduceLanes(VectorOperators.ADD), red.reduceLanes(VectorOperators.ADD), green.reduceLanes(VectorOperators.ADD), blue.reduceLanes(VectorOperators.ADD)));
+            }
+        }
+    }
+
+    /**
+     * Vectorized over neighbouring output pixels of the same row, as all of them are using the same weights.
+     */
+    @Override
+    public void verticalPass(IntBuffer input, int inputFirstRow, int[] output, int width, int rowStart, int rowEnd, ResamplingCoefficients coefficients) {
+        if( !input.hasArray() ){
+            // off-heap intermediates
+            ScalarPixelKernels.INSTANCE.verticalPass(input, inputFirstRow, output, width, rowStart, rowEnd, coefficients);
+            return;
+        }
+        int[] inputPixels = input.array();
+        int inputArrayOffset = input.arrayOffset();
+        int[] weights = coefficients.weights;
+        int kernelSize = coefficients.kernelSize;
+        int lanes = SPECIES.length();
+        int vectorEnd = SPECIES.loopBound(width);
+        for( int row = rowStart; row < rowEnd; row++ ){
+            int inputRowStart = coefficients.min[row] - inputFirstRow;
+            int weightOffset = row * kernelSize;
+            int count = coefficients.count[row];
+            int outputRowOffset = row * width;
+            for( int x = 0; x < vectorEnd; x += lanes ){
+                IntVector alpha = IntVector.zero(SPECIES);
+                IntVector red = IntVector.zero(SPECIES);
+                IntVector green = IntVector.zero(SPECIES);
+                IntVector blue = IntVector.zero(SPECIES);
+                for( int tap = 0; tap < count; tap++ ){
+                    IntVector pixel = IntVector.fromArray(SPECIES, inputPixels, inputArrayOffset + (inputRowStart + tap) * width + x);
+                    int weight = weights[weightOffset + tap];
+                    alpha = alpha.add(pixel.lanewise(VectorOperators.LSHR, 24).mul(weight));
+                    red = red.add(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(weight));
+                    green = green.add(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(weight));
+                    blue = blue.add(pixel.and(0xFF).mul(weight));
+                }
+                pack(alpha, red, green, blue).intoArray(output, outputRowOffset + x);
+            }
+        }
+        if( vectorEnd < width ){
+            ScalarPixelKernels.INSTANCE.verticalPass(input, inputFirstRow, output, width, vectorEnd, width, rowStart, rowEnd, coefficients);
+        }
+    }
+
+    private static IntVector pack(IntVector alphaSum, IntVector redSum, IntVector greenSum, IntVector blueSum) {
+        IntVector alpha = clamp(alphaSum);
+        // negative lobes might produce colors brighter than allowed for premultiplied pixels
+        IntVector red = clamp(redSum).min(alpha);
+        IntVector green = clamp(greenSum).min(alpha);
+        IntVector blue = clamp(blueSum).min(alpha);
+        return alpha.lanewise(VectorOperators.LSHL, 24)
+                .or(red.lanewise(VectorOperators.LSHL, 16))
+                .or(green.lanewise(VectorOperators.LSHL, 8))
+                .or(blue);
+    }
+
+    private static IntVector clamp(IntVector fixedPointValues) {
+        return fixedPointValues.add(ResamplingCoefficients.ROUNDING)
+                .lanewise(VectorOperators.ASHR, ResamplingCoefficients.PRECISION_BITS)
+                .lanewise(VectorOperators.MAX, 0)
+                .lanewise(VectorOperators.MIN, 255);
+    }
+
+    @Override
+    public void premultiply(int[] pixels) {
+        int lanes = SPECIES.length();
+        int vectorEnd = SPECIES.loopBound(pixels.length);
+        for( int index = 0; index < vectorEnd; index += lanes ){
+            premultiply(IntVector.fromArray(SPECIES, pixels, index)).intoArray(pixels, index);
+        }
+        if( vectorEnd < pixels.length ){
+            VectorMask<Integer> remainingPixels = SPECIES.indexInRange(vectorEnd, pixels.length);
+            premultiply(IntVector.fromArray(SPECIES, pixels, vectorEnd, remainingPixels)).intoArray(pixels, vectorEnd, remainingPixels);
+        }
+    }
+
+    /**
+     * Same as the scalar kernel without branches per pixel: fully opaque pixels are staying the same, fully transparent
+     * ones are getting zero.
+     */
+    private static IntVector premultiply(IntVector pixel) {
+        IntVector alpha = pixel.lanewise(VectorOperators.LSHR, 24);
+        if( alpha.eq(255).allTrue() ){
+            // most pixels of icons are opaque
+            return pixel;
+        }
+        IntVector red = divideBy255(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(alpha).add(127));
+        IntVector green = divideBy255(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(alpha).add(127));
+        IntVector blue = divideBy255(pixel.and(0xFF).mul(alpha).add(127));
+        return alpha.lanewise(VectorOperators.LSHL, 24)
+                .or(red.lanewise(VectorOperators.LSHL, 16))
+                .or(green.lanewise(VectorOperators.LSHL, 8))
+                .or(blue);
+    }
+
+    @Override
+    public void unpremultiply(int[] pixels) {
+        int lanes = SPECIES.length();
+        int vectorEnd = SPECIES.loopBound(pixels.length);
+        for( int index = 0; index < vectorEnd; index += lanes ){
+            unpremultiply(IntVector.fromArray(SPECIES, pixels, index)).intoArray(pixels, index);
+        }
+        if( vectorEnd < pixels.length ){
+            VectorMask<Integer> remainingPixels = SPECIES.indexInRange(vectorEnd, pixels.length);
+            unpremultiply(IntVector.fromArray(SPECIES, pixels, vectorEnd, remainingPixels)).intoArray(pixels, vectorEnd, remainingPixels);
+        }
+    }
+
+    /**
+     * Same as the scalar kernel, fully transparent pixels are kept as they are.
+     */
+    private static IntVector unpremultiply(IntVector pixel) {
+        IntVector alpha = pixel.lanewise(VectorOperators.LSHR, 24);
+        if( alpha.eq(255).allTrue() ){
+            return pixel;
+        }
+        IntVector halfAlpha = alpha.lanewise(VectorOperators.LSHR, 1);
+        FloatVector floatAlpha = (FloatVector) alpha.convert(VectorOperators.I2F, 0);
+        IntVector red = divide(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(255).add(halfAlpha), alpha, floatAlpha).min(255);
+        IntVector green = divide(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(255).add(halfAlpha), alpha, floatAlpha).min(255);
+        IntVector blue = divide(pixel.and(0xFF).mul(255).add(halfAlpha), alpha, floatAlpha).min(255);
+        IntVector unpremultiplied = alpha.lanewise(VectorOperators.LSHL, 24)
+                .or(red.lanewise(VectorOperators.LSHL, 16))
+                .or(green.lanewise(VectorOperators.LSHL, 8))
+                .or(blue);
+        return unpremultiplied.blend(pixel, alpha.eq(0));
+    }
+
+    private static IntVector divideBy255(IntVector dividend) {
+        return dividend.mul(DIVIDE_BY_255).lanewise(VectorOperators.LSHR, 23);
+    }
+
+    /**
+     * Integer division of non-negative values below 2^16, using floats as there is no SIMD-instruction for dividing
+     * integers. Converting the quotient via F2I is not accelerated on all platforms, so it gets rounded to the nearest
+     * integer instead, which is one too big when rounded up.
+     */
+    private static IntVector divide(IntVector dividend, IntVector divisor, FloatVector floatDivisor) {
+        FloatVector quotient = ((FloatVector) dividend.convert(VectorOperators.I2F, 0)).div(floatDivisor);
+        IntVector roundedQuotient = quotient.add(ROUNDING_MAGIC).reinterpretAsInts().sub(ROUNDING_MAGIC_BITS);
+        return roundedQuotient.lanewise(VectorOperators.SUB, 1, roundedQuotient.mul(divisor).compare(VectorOperators.GT, dividend));
+    }
+}